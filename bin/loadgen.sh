@@ -0,0 +1,36 @@
+#!/bin/bash
+#----------------------------------------------------------------
+#- Copyright (C) 2018 Intel Corporation
+#- SPDX-License-Identifier: BSD-3-Clause
+#----------------------------------------------------------------
+#- Simulates RSPs against the broker of a running controller,
+#- raising the inventory data rate until the controller drops
+#- messages, i.e.
+#-   loadgen.sh --sensors 300 --tags 50000
+#-   loadgen.sh --broker tcp://10.0.0.5:1883 --movement conveyor
+#- loadgen.sh --help lists all of the options
+#----------------------------------------------------------------
+
+home_dir="$( cd -P "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+keep_going="true"
+
+while [ $keep_going = "true" ]; do
+    if [[ -d ${home_dir}/lib && -d ${home_dir}/config ]]; then
+        keep_going="false"
+    else
+        home_dir=${home_dir%/*}
+    fi
+
+    if [[ $home_dir = "/" ]]; then
+        echo "walked up the entire path without finding home directory"
+        exit
+    fi
+done;
+
+# the config directory is left out so nothing is logged
+# into the files of the controller
+CLASSPATH="-classpath ${home_dir}/lib/*"
+MAIN_CLASS="com.intel.rfid.sim.LoadGenerator"
+
+java ${JAVA_OPTS} -server ${CLASSPATH} ${MAIN_CLASS} "$@"
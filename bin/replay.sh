@@ -0,0 +1,69 @@
+#!/bin/bash
+#----------------------------------------------------------------
+#- Copyright (C) 2018 Intel Corporation
+#- SPDX-License-Identifier: BSD-3-Clause
+#----------------------------------------------------------------
+#- Replays the tag read archives into a scratch copy of the
+#- controller home (config and cache) so the inventory of the
+#- installed controller is left alone, i.e.
+#-   replay.sh --speed 10
+#-   replay.sh --max tagread/tagreads-2019-03-01_14.json.gz
+#----------------------------------------------------------------
+
+home_dir="$( cd -P "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+
+keep_going="true"
+
+while [ $keep_going = "true" ]; do
+    if [[ -d ${home_dir}/lib && -d ${home_dir}/config ]]; then
+        keep_going="false"
+    else
+        home_dir=${home_dir%/*}
+    fi
+
+    if [[ $home_dir = "/" ]]; then
+        echo "walked up the entire path without finding home directory"
+        exit
+    fi
+done;
+
+replay_home=$(mktemp -d -t rsp-replay.XXXXXX)
+trap 'rm -rf ${replay_home}' EXIT
+cp -r ${home_dir}/config ${replay_home}/
+if [[ -d ${home_dir}/cache ]]; then
+    cp -r ${home_dir}/cache ${replay_home}/
+fi
+
+# archives given relative to the controller home, or none at all,
+# are found in the installed tagread directory
+args=()
+have_archive="false"
+while [[ $# -gt 0 ]]; do
+    case "$1" in
+        --speed)
+            args+=("$1" "$2")
+            shift
+            ;;
+        -*)
+            args+=("$1")
+            ;;
+        *)
+            have_archive="true"
+            if [[ -e ${home_dir}/$1 && ! -e $1 ]]; then
+                args+=("${home_dir}/$1")
+            else
+                args+=("$1")
+            fi
+            ;;
+    esac
+    shift
+done
+if [[ $have_archive = "false" ]]; then
+    args+=("${home_dir}/tagread")
+fi
+
+ADDITIONAL_OPTS="-server -Drsp.controller.home=${replay_home}"
+CLASSPATH="-classpath ${home_dir}/lib/*:${replay_home}/config"
+MAIN_CLASS="com.intel.rfid.inventory.TagReadReplay"
+
+java ${JAVA_OPTS} ${ADDITIONAL_OPTS} ${CLASSPATH} ${MAIN_CLASS} "${args[@]}"
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.downstream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.Jackson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the databind path used previously by the data handler
+ * with the streaming InventoryDataParser. Run with -prof gc to
+ * see the difference in allocation rate per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryDataParserBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int readsPerMessage;
+
+    ObjectMapper mapper = Jackson.getMapper();
+    InventoryDataParser parser = new InventoryDataParser();
+    byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        InventoryDataNotification idn = new InventoryDataNotification();
+        idn.params.device_id = "RSP-150000";
+        idn.params.facility_id = "DEFAULT_FACILITY";
+        for (int i = 0; i < readsPerMessage; i++) {
+            TagRead tr = new TagRead();
+            tr.epc = String.format("3014%020X", i);
+            tr.antenna_id = i % 4;
+            tr.last_read_on = idn.params.sent_on;
+            tr.rssi = -400 - (i % 300);
+            tr.phase = i % 64;
+            tr.frequency = 902750 + (i % 50) * 500;
+            idn.params.data.add(tr);
+        }
+        payload = mapper.writeValueAsBytes(idn);
+    }
+
+    @Benchmark
+    public void databind(Blackhole _bh) throws IOException {
+        InventoryDataNotification idn = mapper.readValue(payload, InventoryDataNotification.class);
+        for (TagRead tr : idn.params.data) {
+            _bh.consume(tr.epc);
+            _bh.consume(tr.rssi);
+        }
+    }
+
+    @Benchmark
+    public int streaming(Blackhole _bh) throws IOException {
+        return parser.parse(payload, read -> {
+            _bh.consume(read.epc);
+            _bh.consume(read.rssi);
+        });
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.data.InventoryEventItem;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.api.upstream.InventoryEventNotification;
+import com.intel.rfid.upstream.UpstreamInventoryEventInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trips of the two highest volume messages,
+ * inventory data coming down and inventory events going up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JacksonBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int itemsPerMessage;
+
+    ObjectMapper mapper = Jackson.getMapper();
+    InventoryDataNotification inventoryData;
+    InventoryEventNotification inventoryEvent;
+
+    @Setup
+    public void setup() throws IOException {
+        SyntheticFleet fleet = new SyntheticFleet(itemsPerMessage, 1);
+        SyntheticFleet.Reads reads = fleet.reads(0);
+
+        inventoryData = new InventoryDataNotification();
+        inventoryData.params.device_id = fleet.sensors[0].getDeviceId();
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        for (int i = 0; i < itemsPerMessage; i++) {
+            TagRead read = reads.next();
+            TagRead tr = new TagRead();
+            tr.epc = read.epc;
+            tr.antenna_id = read.antenna_id;
+            tr.rssi = read.rssi;
+            tr.phase = read.phase;
+            tr.frequency = read.frequency;
+            tr.last_read_on = read.last_read_on;
+            inventoryData.params.data.add(tr);
+
+            InventoryEventItem item = new InventoryEventItem();
+            item.epc_code = read.epc;
+            item.facility_id = "SalesFloor";
+            item.location = reads.sensor.getAlias(read.antenna_id);
+            item.event_type = "arrival";
+            item.timestamp = read.last_read_on;
+            uie.data.add(item);
+        }
+        inventoryEvent = new InventoryEventNotification(uie);
+    }
+
+    @Benchmark
+    public InventoryDataNotification inventoryDataRoundTrip() throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(inventoryData);
+        return mapper.readValue(bytes, InventoryDataNotification.class);
+    }
+
+    @Benchmark
+    public InventoryEventNotification inventoryEventRoundTrip() throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(inventoryEvent);
+        return mapper.readValue(bytes, InventoryEventNotification.class);
+    }
+
+}
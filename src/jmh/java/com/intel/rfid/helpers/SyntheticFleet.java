@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.controller.MockRspController;
+import com.intel.rfid.sensor.MockSensorPlatform;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A synthetic store used to drive the benchmarks, built the same way as
+ * TestStore but scaled out to a configurable number of EPCs and sensors.
+ * The sensors are spread round robin over the TestStore facilities.
+ * <p>
+ * Reads are generated into a single reused TagRead, the same way
+ * the streaming data parser hands them out, along with the sensor
+ * that read it.
+ */
+public class SyntheticFleet {
+
+    private static boolean envReady = false;
+
+    public static synchronized void ensureEnv() throws IOException {
+        if (!envReady) {
+            EnvHelper.beforeBasicTests();
+            envReady = true;
+        }
+    }
+
+    public final MockRspController rspController;
+    public final MockSensorPlatform[] sensors;
+    public final String[] epcs;
+
+    public SyntheticFleet(int _numEpcs, int _numSensors) throws IOException {
+        ensureEnv();
+        rspController = new MockRspController();
+
+        TestStore.Facility[] facilities = TestStore.Facility.values();
+        sensors = new MockSensorPlatform[_numSensors];
+        for (int i = 0; i < _numSensors; i++) {
+            MockSensorPlatform msp = rspController.getMockSensorManager()
+                                                  .establish(String.format("RSP-%06d", 150000 + i));
+            msp.setFacilityId(facilities[i % facilities.length].toString());
+            sensors[i] = msp;
+        }
+
+        epcs = new String[_numEpcs];
+        for (int i = 0; i < _numEpcs; i++) {
+            epcs[i] = String.format("3014%020X", i);
+        }
+    }
+
+    public Reads reads(int _seed) {
+        return new Reads(_seed);
+    }
+
+    /**
+     * Generates reads walking the EPCs in order, starting at an offset
+     * based on the seed, with a random sensor, antenna and rssi and a clock
+     * advancing 1 ms per read. Not thread safe, use one per thread.
+     */
+    public class Reads {
+
+        private final TagRead read = new TagRead();
+        private final Random random;
+        private long clock = System.currentTimeMillis();
+        private int next;
+
+        private int minRSSI = -95 * 10;
+        private int maxRSSI = -55 * 10;
+
+        public MockSensorPlatform sensor;
+
+        protected Reads(int _seed) {
+            random = new Random(_seed);
+            next = random.nextInt(epcs.length);
+        }
+
+        public TagRead next() {
+            sensor = sensors[random.nextInt(sensors.length)];
+            read.epc = epcs[next];
+            read.tid = null;
+            read.antenna_id = random.nextInt(4);
+            read.rssi = minRSSI + random.nextInt(maxRSSI - minRSSI);
+            read.phase = random.nextInt(64);
+            read.frequency = 902750 + random.nextInt(50) * 500;
+            read.last_read_on = ++clock;
+            if (++next == epcs.length) {
+                next = 0;
+            }
+            return read;
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.StringCache;
+import com.intel.rfid.helpers.SyntheticFleet;
+import com.intel.rfid.tag.EpcKey;
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.upstream.UpstreamInventoryEventInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of the inventory state machine against a pre populated
+ * inventory, single threaded and with several data handler threads
+ * feeding reads from different sensors at the same time, and of the
+ * lookup of a tag by EPC on its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InventoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Store {
+
+        @Param({"10000", "100000", "1000000"})
+        public int numEpcs;
+
+        @Param({"10", "50", "200"})
+        public int numSensors;
+
+        SyntheticFleet fleet;
+        InventoryManager invMgr;
+        AtomicInteger seeds = new AtomicInteger(0);
+
+        @Setup
+        public void setup() throws IOException {
+            fleet = new SyntheticFleet(numEpcs, numSensors);
+            invMgr = fleet.rspController.getMockInventoryManager();
+            invMgr.unload();
+            // every tag has arrived before measuring
+            UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+            SyntheticFleet.Reads reads = fleet.reads(-1);
+            for (int i = 0; i < numEpcs; i++) {
+                TagRead read = reads.next();
+                invMgr.processReadData(uie, reads.sensor, read);
+                uie.data.clear();
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            invMgr.unload();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Feed {
+
+        SyntheticFleet.Reads reads;
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+
+        @Setup
+        public void setup(Store _store) {
+            reads = _store.fleet.reads(_store.seeds.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    public int processReadData(Store _store, Feed _feed) {
+        TagRead read = _feed.reads.next();
+        _store.invMgr.processReadData(_feed.uie, _feed.reads.sensor, read);
+        int n = _feed.uie.data.size();
+        _feed.uie.data.clear();
+        return n;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int processReadDataContended(Store _store, Feed _feed) {
+        return processReadData(_store, _feed);
+    }
+
+    /**
+     * The lookup done for every read, with EPC Strings other than the
+     * ones the tags were stored under, as when the reads come through a
+     * different data handler, and so a different EPC cache, than the one
+     * that created the tag.
+     */
+    @State(Scope.Thread)
+    public static class Lookup {
+
+        @Param({"64000", "1000000"})
+        public int numKeys;
+
+        InventoryStore store = new InventoryStore();
+        String[] keys;
+        // the EPCs as the parser sees them, inside the message text
+        char[][] parsed;
+        StringCache epcCache = new StringCache();
+        int next = 0;
+
+        @Setup
+        public void setup() {
+            keys = new String[numKeys];
+            for (int i = 0; i < numKeys; i++) {
+                String epc = String.format("3014%020X", i);
+                store.put(new Tag(epc));
+                keys[i] = new String(epc.toCharArray());
+                // cached by the String, the same as for the EPC cache
+                keys[i].hashCode();
+            }
+            Random random = new Random(7919);
+            for (int i = numKeys - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                String k = keys[i];
+                keys[i] = keys[j];
+                keys[j] = k;
+            }
+            parsed = new char[numKeys][];
+            for (int i = 0; i < numKeys; i++) {
+                parsed[i] = ("{\"epc\":\"" + keys[i] + "\"}").toCharArray();
+            }
+        }
+    }
+
+    @Benchmark
+    public Tag get(Lookup _lookup) {
+        if (++_lookup.next == _lookup.keys.length) {
+            _lookup.next = 0;
+        }
+        return _lookup.store.get(_lookup.keys[_lookup.next]);
+    }
+
+    /**
+     * The lookup as done for a read from a data handler, from the
+     * characters of the message through the EPC cache and the key packed
+     * by the parser.
+     */
+    @Benchmark
+    public Tag getParsed(Lookup _lookup) {
+        if (++_lookup.next == _lookup.parsed.length) {
+            _lookup.next = 0;
+        }
+        char[] chars = _lookup.parsed[_lookup.next];
+        int offset = 8;
+        int len = chars.length - offset - 2;
+        String epc = _lookup.epcCache.intern(chars, offset, len);
+        if (!EpcKey.isPackable(chars, offset, len)) {
+            return _lookup.store.getOrCreate(epc);
+        }
+        return _lookup.store.getOrCreate(epc,
+                                         EpcKey.high(chars, offset, len),
+                                         EpcKey.low(chars, offset, len),
+                                         len);
+    }
+
+}
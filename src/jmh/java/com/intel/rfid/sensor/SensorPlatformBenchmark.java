@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.sensor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.sensor.SensorHeartbeatNotification;
+import com.intel.rfid.helpers.Jackson;
+import com.intel.rfid.helpers.SyntheticFleet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per sensor message handling path (tree parse, method
+ * dispatch and typed conversion) for the traffic every sensor sends
+ * regardless of reading, heartbeats and unsolicited responses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensorPlatformBenchmark {
+
+    @Param({"10", "200"})
+    public int numSensors;
+
+    SensorPlatform[] sensors;
+    byte[][] heartbeats;
+    byte[] response;
+    int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = Jackson.getMapper();
+        SyntheticFleet fleet = new SyntheticFleet(1, numSensors);
+        sensors = fleet.sensors;
+        heartbeats = new byte[numSensors][];
+        for (int i = 0; i < numSensors; i++) {
+            SensorHeartbeatNotification hb = new SensorHeartbeatNotification(sensors[i].getDeviceId());
+            hb.params.facility_id = sensors[i].getFacilityId();
+            heartbeats[i] = mapper.writeValueAsBytes(hb);
+        }
+        // a response for a request that is no longer outstanding
+        response = "{\"jsonrpc\":\"2.0\",\"id\":\"999999\",\"result\":true}".getBytes();
+    }
+
+    @Benchmark
+    public SensorPlatform heartbeat() {
+        int idx = next;
+        next = (next + 1) % sensors.length;
+        SensorPlatform rsp = sensors[idx];
+        rsp.handleMessage(heartbeats[idx]);
+        return rsp;
+    }
+
+    @Benchmark
+    public SensorPlatform response() {
+        SensorPlatform rsp = sensors[next];
+        next = (next + 1) % sensors.length;
+        rsp.handleMessage(response);
+        return rsp;
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.tag;
+
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.SyntheticFleet;
+import com.intel.rfid.inventory.RssiAdjuster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per read cost of updating a single tag, including the per sensor
+ * alias statistics and the location / weighting decision.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TagBenchmark {
+
+    @Param({"10000", "100000"})
+    public int numEpcs;
+
+    @Param({"10", "200"})
+    public int numSensors;
+
+    SyntheticFleet.Reads reads;
+    Tag[] tags;
+    TagStats[] stats;
+    RssiAdjuster rssiAdjuster;
+    int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        SyntheticFleet fleet = new SyntheticFleet(numEpcs, numSensors);
+        reads = fleet.reads(0);
+        rssiAdjuster = new RssiAdjuster();
+        tags = new Tag[numEpcs];
+        stats = new TagStats[numEpcs];
+        for (int i = 0; i < numEpcs; i++) {
+            tags[i] = new Tag(fleet.epcs[i]);
+            stats[i] = new TagStats();
+        }
+        // prime every tag with a few reads so the rolling stats are full
+        for (int i = 0; i < numEpcs * 4; i++) {
+            tagUpdate();
+        }
+    }
+
+    @Benchmark
+    public Tag tagUpdate() {
+        TagRead read = reads.next();
+        Tag tag = tags[next];
+        next = (next + 1) % numEpcs;
+        tag.update(reads.sensor, read, rssiAdjuster);
+        return tag;
+    }
+
+    @Benchmark
+    public TagStats tagStatsUpdate() {
+        TagRead read = reads.next();
+        TagStats ts = stats[next];
+        next = (next + 1) % numEpcs;
+        ts.update(read);
+        return ts;
+    }
+
+}
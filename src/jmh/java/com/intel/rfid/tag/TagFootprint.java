@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.tag;
+
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.SyntheticFleet;
+import com.intel.rfid.inventory.RssiAdjuster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the approximate retained heap per Tag, including its stats and
+ * history, by measuring the used heap before and after building a fleet.
+ * Read tags are read 25 times by each of 4 aliases so every stats window
+ * and the history are full. Restored tags are created from the cache form
+ * as they are at startup, with distinct String instances as they would
+ * come out of the JSON cache file.
+ * <p>
+ * Not a JMH benchmark, run it with
+ * java -cp [jmh runtime classpath] com.intel.rfid.tag.TagFootprint [numTags]
+ */
+public class TagFootprint {
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // a few rounds to let the collector settle
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+        }
+        return used;
+    }
+
+    private static String copy(String _s) {
+        return new String(_s.toCharArray());
+    }
+
+    public static void main(String[] _args) throws Exception {
+        int numTags = _args.length > 0 ? Integer.parseInt(_args[0]) : 100000;
+        int numAliases = 4;
+
+        SyntheticFleet fleet = new SyntheticFleet(numTags, numAliases);
+        RssiAdjuster rssiAdjuster = new RssiAdjuster();
+        SyntheticFleet.Reads reads = fleet.reads(0);
+        TagRead read = new TagRead();
+
+        long before = usedHeap();
+        List<Tag> readTags = new ArrayList<>(numTags);
+        for (int i = 0; i < numTags; i++) {
+            Tag tag = new Tag(copy(fleet.epcs[i]));
+            for (int r = 0; r < 25; r++) {
+                for (int a = 0; a < numAliases; a++) {
+                    TagRead next = reads.next();
+                    read.epc = tag.getEPC();
+                    read.rssi = next.rssi;
+                    read.last_read_on = next.last_read_on;
+                    tag.update(fleet.sensors[a], read, rssiAdjuster);
+                }
+            }
+            readTags.add(tag);
+        }
+        long afterRead = usedHeap();
+
+        List<Tag> restoredTags = new ArrayList<>(numTags);
+        for (Tag t : readTags) {
+            Tag.Cached ct = t.toCached();
+            ct.epc = copy(ct.epc);
+            ct.location = copy(ct.location);
+            ct.deviceLocation = copy(ct.deviceLocation);
+            ct.facility = copy(ct.facility);
+            restoredTags.add(Tag.fromCached(ct));
+        }
+        long afterRestored = usedHeap();
+
+        // keep both sets reachable until after the last measurement
+        System.out.println(String.format("tags: %d read, %d restored", readTags.size(), restoredTags.size()));
+        System.out.println(String.format("bytes/tag read:     ~%d", (afterRead - before) / numTags));
+        System.out.println(String.format("bytes/tag restored: ~%d", (afterRestored - afterRead) / numTags));
+
+        // the mock controller leaves non daemon threads running
+        System.exit(0);
+    }
+
+}
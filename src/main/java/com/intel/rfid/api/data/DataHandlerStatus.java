@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.data;
+
+public class DataHandlerStatus {
+
+    public int shard;
+    public int queue_depth;
+    public int queue_capacity;
+    public long num_queued;
+    public long num_dropped;
+
+    public DataHandlerStatus() { }
+
+    public DataHandlerStatus(int _shard, int _queueDepth, int _queueCapacity, long _numQueued, long _numDropped) {
+        shard = _shard;
+        queue_depth = _queueDepth;
+        queue_capacity = _queueCapacity;
+        num_queued = _numQueued;
+        num_dropped = _numDropped;
+    }
+
+}
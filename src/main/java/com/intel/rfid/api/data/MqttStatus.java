@@ -4,6 +4,8 @@
  */
 package com.intel.rfid.api.data;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,5 +15,8 @@ public class MqttStatus {
     public String broker_uri = "unknown";
     public List<String> subscribes = new ArrayList<>();
     public List<String> publishes = new ArrayList<>();
+    // inventory data handlers, only reported for the downstream
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<DataHandlerStatus> data_handlers = new ArrayList<>();
 
 }
@@ -0,0 +1,17 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TagInfoPage {
+
+    public List<TagInfo> tags = new ArrayList<>();
+    // the number of tags in this page, or sent in the chunks of a stream
+    public int count = 0;
+    // the cursor for the next page, null on the last one
+    public String next_cursor;
+}
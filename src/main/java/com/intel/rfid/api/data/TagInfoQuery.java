@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.data;
+
+/**
+ * A filter pattern with optional paging. With no limit, cursor or stream
+ * the whole result is returned as a single list, as it always has been.
+ * <p>
+ * The cursor is the next_cursor of a previous page and is opaque to the
+ * caller. Pages are taken from the EPC sort order so a query can be
+ * resumed after tags have come and gone in between.
+ * <p>
+ * With stream set, the results are sent as a sequence of tag info chunk
+ * notifications of at most limit tags each.
+ */
+public class TagInfoQuery extends FilterPattern {
+
+    public int limit = 0;
+    public String cursor;
+    public boolean stream = false;
+
+    public TagInfoQuery() {}
+
+    public TagInfoQuery(String _filterPattern) {
+        super(_filterPattern);
+    }
+
+    public TagInfoQuery(String _filterPattern, int _limit, String _cursor) {
+        super(_filterPattern);
+        limit = _limit;
+        cursor = _cursor;
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.data;
+
+/**
+ * A subscribe topic given as an object rather than a plain name, to
+ * narrow down what the topic sends. The inventory_delta topic can be
+ * filtered by facility and / or EPC filter pattern.
+ */
+public class TopicSubscription {
+
+    public String topic;
+    public String facility_id;
+    public String filter_pattern;
+
+    public TopicSubscription() {}
+
+    public TopicSubscription(String _topic, String _facilityId, String _filterPattern) {
+        topic = _topic;
+        facility_id = _facilityId;
+        filter_pattern = _filterPattern;
+    }
+}
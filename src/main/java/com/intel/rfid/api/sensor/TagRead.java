@@ -5,6 +5,8 @@
 
 package com.intel.rfid.api.sensor;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class TagRead {
 
     public String epc;
@@ -15,6 +17,15 @@ public class TagRead {
     public int phase = 0;
     public int frequency = 0;
 
+    // the epc packed by the streaming parser (see EpcKey) so the inventory
+    // is looked up without the String, 0 digits when it was not packed
+    @JsonIgnore
+    public long epc_high = 0;
+    @JsonIgnore
+    public long epc_low = 0;
+    @JsonIgnore
+    public int epc_digits = 0;
+
     @Override
     public String toString() {
         return "epc ='" + epc + '\'' +
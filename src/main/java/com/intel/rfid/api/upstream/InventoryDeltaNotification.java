@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.upstream;
+
+import com.intel.rfid.api.JsonNotification;
+import com.intel.rfid.api.data.InventoryEventInfo;
+
+public class InventoryDeltaNotification extends JsonNotification {
+
+    public static final String METHOD_NAME = "inventory_delta";
+
+    public InventoryEventInfo params;
+
+    public InventoryDeltaNotification() {
+        method = METHOD_NAME;
+    }
+
+    public InventoryDeltaNotification(InventoryEventInfo _info) {
+        this();
+        params = _info;
+    }
+}
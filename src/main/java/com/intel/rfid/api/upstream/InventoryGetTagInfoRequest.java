@@ -6,12 +6,13 @@ package com.intel.rfid.api.upstream;
 
 import com.intel.rfid.api.JsonRequest;
 import com.intel.rfid.api.data.FilterPattern;
+import com.intel.rfid.api.data.TagInfoQuery;
 
 public class InventoryGetTagInfoRequest extends JsonRequest {
 
     public static final String METHOD_NAME = "inventory_get_tag_info";
 
-    public FilterPattern params;
+    public TagInfoQuery params;
 
     // keep default for Jackson mapper
     public InventoryGetTagInfoRequest() {
@@ -20,6 +21,11 @@ public class InventoryGetTagInfoRequest extends JsonRequest {
 
     public InventoryGetTagInfoRequest(FilterPattern _pattern) {
         this();
-        params = _pattern;
+        params = new TagInfoQuery(_pattern.filter_pattern);
+    }
+
+    public InventoryGetTagInfoRequest(TagInfoQuery _query) {
+        this();
+        params = _query;
     }
 }
@@ -6,6 +6,7 @@ package com.intel.rfid.api.upstream;
 
 import com.intel.rfid.api.JsonResponseOK;
 import com.intel.rfid.api.data.TagInfo;
+import com.intel.rfid.api.data.TagInfoPage;
 
 import java.util.List;
 
@@ -16,5 +17,9 @@ public class InventoryGetTagInfoResponse extends JsonResponseOK {
         result = _infoList;
     }
 
+    public InventoryGetTagInfoResponse(String _id, TagInfoPage _page) {
+        super(_id, Boolean.TRUE);
+        result = _page;
+    }
 
 }
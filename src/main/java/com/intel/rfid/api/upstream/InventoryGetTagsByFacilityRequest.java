@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.upstream;
+
+import com.intel.rfid.api.JsonRequest;
+
+public class InventoryGetTagsByFacilityRequest extends JsonRequest {
+
+    public static final String METHOD_NAME = "inventory_get_tags_by_facility";
+
+    public InventoryGetTagsByFacilityRequest() {
+        method = METHOD_NAME;
+    }
+
+    public InventoryGetTagsByFacilityRequest(String _facilityId) {
+        this();
+        params.facility_id = _facilityId;
+    }
+
+    public class Params {
+        public String facility_id;
+    }
+
+    public Params params = new Params();
+
+}
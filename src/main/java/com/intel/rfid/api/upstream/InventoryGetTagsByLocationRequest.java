@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.upstream;
+
+import com.intel.rfid.api.JsonRequest;
+
+public class InventoryGetTagsByLocationRequest extends JsonRequest {
+
+    public static final String METHOD_NAME = "inventory_get_tags_by_location";
+
+    public InventoryGetTagsByLocationRequest() {
+        method = METHOD_NAME;
+    }
+
+    public InventoryGetTagsByLocationRequest(String _location) {
+        this();
+        params.location = _location;
+    }
+
+    public class Params {
+        public String location;
+    }
+
+    public Params params = new Params();
+
+}
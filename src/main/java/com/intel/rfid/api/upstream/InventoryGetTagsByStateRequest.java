@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.upstream;
+
+import com.intel.rfid.api.JsonRequest;
+import com.intel.rfid.tag.TagState;
+
+public class InventoryGetTagsByStateRequest extends JsonRequest {
+
+    public static final String METHOD_NAME = "inventory_get_tags_by_state";
+
+    public InventoryGetTagsByStateRequest() {
+        method = METHOD_NAME;
+    }
+
+    public InventoryGetTagsByStateRequest(TagState _state) {
+        this();
+        params.state = _state;
+    }
+
+    public class Params {
+        public TagState state;
+    }
+
+    public Params params = new Params();
+
+}
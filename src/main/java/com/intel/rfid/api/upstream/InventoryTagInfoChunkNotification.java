@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.api.upstream;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.intel.rfid.api.JsonNotification;
+
+/**
+ * One chunk of a streamed inventory_get_tag_info result. The tags are
+ * serialized as they are visited and carried here as raw JSON.
+ */
+public class InventoryTagInfoChunkNotification extends JsonNotification {
+
+    public static final String METHOD_NAME = "inventory_tag_info_chunk";
+
+    public InventoryTagInfoChunkNotification() {
+        method = METHOD_NAME;
+    }
+
+    public InventoryTagInfoChunkNotification(String _requestId, int _seq, boolean _last, int _count, String _tagsJson) {
+        this();
+        params.request_id = _requestId;
+        params.seq = _seq;
+        params.last = _last;
+        params.count = _count;
+        params.tags = _tagsJson;
+    }
+
+    public Params params = new Params();
+
+    public class Params {
+        public String request_id;
+        public int seq;
+        public boolean last;
+        public int count;
+        @JsonRawValue
+        public String tags;
+    }
+}
@@ -14,14 +14,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class ConfigManager {
 
@@ -29,19 +36,134 @@ public class ConfigManager {
 
     protected Logger log = LoggerFactory.getLogger(getClass());
 
-    protected Properties properties;
+    public static final String CONFIG_FILE = "controller.cfg";
+
+    // replaced as a whole on reload, never modified
+    protected volatile Properties properties;
+    private volatile ConfigSnapshot snapshot;
+
+    private WatchService watchService;
+    private Thread watchThread;
 
     ConfigManager() {
-        properties = new Properties();
         // Default config is in lib folder, as it is meant to be immutable
-        Path p = Env.resolveConfig("controller.cfg");
-        try (InputStream is = Files.newInputStream(p)) {
-            properties.load(is);
-            log.info("loaded default configuration from: " + p);
+        Properties p = load(Env.resolveConfig(CONFIG_FILE));
+        properties = p != null ? p : new Properties();
+        snapshot = new ConfigSnapshot(this);
+    }
+
+    /**
+     * @return null if the file could not be read
+     */
+    private Properties load(Path _path) {
+        Properties p = new Properties();
+        try (InputStream is = Files.newInputStream(_path)) {
+            p.load(is);
+            log.info("loaded default configuration from: " + _path);
         } catch (Exception e) {
             log.error("Unable to load default configuration {}", e.getMessage());
+            return null;
+        }
+        return p;
+    }
+
+    /**
+     * @return the values parsed at the last (re)load, for the code that
+     * runs for every tag read
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Reads the configuration file again and swaps in the new values.
+     * Values already read by the managers keep until they read them again.
+     * The current values are kept if the file cannot be read or is empty,
+     * as it is for a moment while an editor rewrites it.
+     *
+     * @return true if the new values were swapped in
+     */
+    public synchronized boolean reload() {
+        Path path = Env.resolveConfig(CONFIG_FILE);
+        Properties p = load(path);
+        if (p == null || p.isEmpty()) {
+            log.warn("keeping the current configuration, nothing could be read from {}", path);
+            return false;
+        }
+        properties = p;
+        snapshot = new ConfigSnapshot(this);
+        return true;
+    }
+
+    // an editor saving the file fires several events, reload once they stop
+    private static final long RELOAD_QUIET_MILLIS = 500;
+
+    /**
+     * Reloads the configuration whenever the file changes.
+     */
+    public synchronized void startWatching() {
+        if (watchThread != null) {
+            return;
+        }
+        Path dir = Env.resolveConfig(CONFIG_FILE).toAbsolutePath().getParent();
+        try {
+            watchService = dir.getFileSystem().newWatchService();
+            dir.register(watchService,
+                         StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.error("unable to watch {} for changes: {}", dir, e.getMessage());
+            return;
+        }
+        watchThread = new Thread(this::watch, "config watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("watching {} for changes", dir);
+    }
+
+    public synchronized void stopWatching() {
+        if (watchThread == null) {
+            return;
         }
+        watchThread.interrupt();
+        watchThread = null;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("error closing the config watcher: {}", e.getMessage());
+        }
+        watchService = null;
+    }
 
+    private void watch() {
+        WatchService ws = watchService;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!changed(ws.take())) {
+                    continue;
+                }
+                WatchKey key;
+                while ((key = ws.poll(RELOAD_QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed(key);
+                }
+                log.info("{} changed, reloading", CONFIG_FILE);
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped watching
+        }
+    }
+
+    private boolean changed(WatchKey _key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : _key.pollEvents()) {
+            if (event.context() instanceof Path &&
+                    CONFIG_FILE.equals(((Path) event.context()).toString())) {
+                changed = true;
+            }
+        }
+        _key.reset();
+        return changed;
     }
 
     public SensorCredentials getSensorCredentials() {
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.controller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The configuration values read for every tag, parsed once each time the
+ * configuration is loaded. A snapshot never changes, ConfigManager swaps
+ * in a new one when controller.cfg is reloaded, so the values read from
+ * one snapshot are always consistent with each other.
+ */
+public class ConfigSnapshot {
+
+    public static final String CFG_KEY_AGGREGATE_DEPARTED_THRESHOLD = "inventory.aggregate.departed.threshold.millis";
+    public static final long DEFAULT_AGGREGATE_DEPARTED_THRESHOLD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    public static final String CFG_KEY_POS_DEPARTED_THRESHOLD = "inventory.POS.departed.threshold.millis";
+    public static final long DEFAULT_POS_DEPARTED_THRESHOLD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    public static final String CFG_KEY_POS_RETURN_THRESHOLD = "inventory.POS.return.threshold.millis";
+    public static final long DEFAULT_POS_RETURN_THRESHOLD_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    public final long aggregateDepartedThresholdMillis;
+    public final long posDepartedThresholdMillis;
+    public final long posReturnThresholdMillis;
+
+    ConfigSnapshot(ConfigManager _cm) {
+        aggregateDepartedThresholdMillis = _cm.getOptLong(CFG_KEY_AGGREGATE_DEPARTED_THRESHOLD,
+                                                          DEFAULT_AGGREGATE_DEPARTED_THRESHOLD_MILLIS);
+        posDepartedThresholdMillis = _cm.getOptLong(CFG_KEY_POS_DEPARTED_THRESHOLD,
+                                                    DEFAULT_POS_DEPARTED_THRESHOLD_MILLIS);
+        posReturnThresholdMillis = _cm.getOptLong(CFG_KEY_POS_RETURN_THRESHOLD,
+                                                  DEFAULT_POS_RETURN_THRESHOLD_MILLIS);
+    }
+
+}
@@ -4,6 +4,7 @@
  */
 package com.intel.rfid.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -21,6 +22,9 @@ import com.intel.rfid.api.data.SensorConnectionStateInfo;
 import com.intel.rfid.api.data.SensorReadStateInfo;
 import com.intel.rfid.api.data.SensorSoftwareRepoVersions;
 import com.intel.rfid.api.data.TagInfo;
+import com.intel.rfid.api.data.TagInfoPage;
+import com.intel.rfid.api.data.TagInfoQuery;
+import com.intel.rfid.api.data.TopicSubscription;
 import com.intel.rfid.api.sensor.Behavior;
 import com.intel.rfid.api.sensor.DeviceAlertNotification;
 import com.intel.rfid.api.sensor.GeoRegion;
@@ -44,13 +48,18 @@ import com.intel.rfid.api.upstream.DownstreamMqttStatusNotification;
 import com.intel.rfid.api.upstream.GpioClearMappingsRequest;
 import com.intel.rfid.api.upstream.GpioSetMappingRequest;
 import com.intel.rfid.api.upstream.InventoryActivateMobilityProfileRequest;
+import com.intel.rfid.api.upstream.InventoryDeltaNotification;
 import com.intel.rfid.api.upstream.InventoryGetActiveMobilityProfileIdRequest;
 import com.intel.rfid.api.upstream.InventoryGetActiveMobilityProfileIdResponse;
 import com.intel.rfid.api.upstream.InventoryGetTagInfoRequest;
 import com.intel.rfid.api.upstream.InventoryGetTagInfoResponse;
 import com.intel.rfid.api.upstream.InventoryGetTagStatsInfoRequest;
 import com.intel.rfid.api.upstream.InventoryGetTagStatsInfoResponse;
+import com.intel.rfid.api.upstream.InventoryGetTagsByFacilityRequest;
+import com.intel.rfid.api.upstream.InventoryGetTagsByLocationRequest;
+import com.intel.rfid.api.upstream.InventoryGetTagsByStateRequest;
 import com.intel.rfid.api.upstream.InventorySummaryNotification;
+import com.intel.rfid.api.upstream.InventoryTagInfoChunkNotification;
 import com.intel.rfid.api.upstream.InventoryUnloadRequest;
 import com.intel.rfid.api.upstream.MobilityProfileDeleteRequest;
 import com.intel.rfid.api.upstream.MobilityProfileGetAllRequest;
@@ -106,14 +115,16 @@ import com.intel.rfid.sensor.ReadStateEvent;
 import com.intel.rfid.sensor.ResponseHandler;
 import com.intel.rfid.sensor.SensorManager;
 import com.intel.rfid.sensor.SensorPlatform;
-import com.intel.rfid.tag.Tag;
+import com.intel.rfid.upstream.UpstreamEventBatcher;
+import com.intel.rfid.upstream.UpstreamEventFilter;
 import com.intel.rfid.upstream.UpstreamManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -138,8 +149,13 @@ public class JsonRpcController
 
     public static final String SUBSCRIBE = "subscribe";
 
+    // tags per page (or per chunk when streaming) of inventory_get_tag_info
+    public static final int DEFAULT_TAG_INFO_PAGE_SIZE = 1000;
+    public static final int MAX_TAG_INFO_PAGE_SIZE = 10000;
+
     public enum Topic {
         downstream_mqtt_status,
+        inventory_delta,
         inventory_summary,
         oem_cfg_update_status,
         scheduler_run_state,
@@ -155,6 +171,7 @@ public class JsonRpcController
         protected boolean isEventTopic() {
             boolean b = false;
             switch (this) {
+                case inventory_delta:
                 case scheduler_run_state:
                 case sensor_alerts:
                 case sensor_config_notification:
@@ -186,6 +203,9 @@ public class JsonRpcController
     protected ObjectMapper mapper = Jackson.getMapper();
     protected final Set<Topic> periodicTopics = new HashSet<>();
     protected final Callback callback;
+    // the source and batching of the inventory_delta topic while subscribed
+    protected UpstreamEventFilter deltaFilter;
+    protected UpstreamEventBatcher deltaBatcher;
 
     protected ClusterManager clusterMgr;
     protected SensorManager sensorMgr;
@@ -354,6 +374,9 @@ public class JsonRpcController
 
                 case InventoryGetTagStatsInfoRequest.METHOD_NAME:
                 case InventoryGetTagInfoRequest.METHOD_NAME:
+                case InventoryGetTagsByFacilityRequest.METHOD_NAME:
+                case InventoryGetTagsByLocationRequest.METHOD_NAME:
+                case InventoryGetTagsByStateRequest.METHOD_NAME:
                 case InventoryUnloadRequest.METHOD_NAME:
                 case InventoryGetActiveMobilityProfileIdRequest.METHOD_NAME:
                 case InventoryActivateMobilityProfileRequest.METHOD_NAME:
@@ -529,24 +552,96 @@ public class JsonRpcController
         }
     }
 
+    protected static int tagInfoPageSize(TagInfoQuery _query) {
+        return _query.limit == 0 ? DEFAULT_TAG_INFO_PAGE_SIZE : Math.min(_query.limit, MAX_TAG_INFO_PAGE_SIZE);
+    }
+
+    /**
+     * Sends the tags matching the query as a sequence of chunk notifications
+     * followed by the response, which carries the total count. Each chunk is
+     * written with a JsonGenerator as its tags are visited, so neither the
+     * result nor a chunk of it is ever held as a list.
+     */
+    protected void streamTagInfo(String _reqId, TagInfoQuery _query) throws IOException {
+        int chunkSize = tagInfoPageSize(_query);
+        StringWriter chunk = new StringWriter();
+        String cursor = _query.cursor;
+        int seq = 0;
+        int total = 0;
+        do {
+            chunk.getBuffer().setLength(0);
+            int count;
+            try (JsonGenerator gen = mapper.getFactory().createGenerator(chunk)) {
+                gen.writeStartArray();
+                cursor = inventoryMgr.forEachTagInfo(_query.filter_pattern, cursor, chunkSize, info -> {
+                    try {
+                        gen.writeObject(info);
+                    } catch (IOException _e) {
+                        throw new UncheckedIOException(_e);
+                    }
+                });
+                count = gen.getOutputContext().getEntryCount();
+                gen.writeEndArray();
+            } catch (UncheckedIOException _e) {
+                throw _e.getCause();
+            }
+            total += count;
+            sendNotification(new InventoryTagInfoChunkNotification(_reqId, seq++, cursor == null,
+                                                                   count, chunk.toString()));
+        } while (cursor != null);
+
+        TagInfoPage summary = new TagInfoPage();
+        summary.count = total;
+        sendResponse(new InventoryGetTagInfoResponse(_reqId, summary));
+    }
+
     protected void handleInventoryCommand(JsonNode _rootNode, String _reqId, String _reqMethod)
-            throws JsonProcessingException {
+            throws IOException {
 
         switch (_reqMethod) {
 
             case InventoryGetTagInfoRequest.METHOD_NAME: {
                 InventoryGetTagInfoRequest req = mapper.treeToValue(_rootNode, InventoryGetTagInfoRequest.class);
-                List<TagInfo> infoList = new ArrayList<>();
-                Collection<Tag> tags = inventoryMgr.getTags(req.params.filter_pattern);
-                for (Tag t : tags) {
-                    infoList.add(new TagInfo(t.getEPC(),
-                                             t.getTID(),
-                                             t.getState(),
-                                             t.getLocation(),
-                                             t.getLastRead(),
-                                             t.getFacility()));
+                TagInfoQuery query = req.params;
+                if (query.limit < 0) {
+                    sendErr(_reqId, JsonRpcError.Type.INVALID_PARAMETER, "limit must not be negative");
+                } else if (query.stream) {
+                    streamTagInfo(_reqId, query);
+                } else if (query.limit > 0 || query.cursor != null) {
+                    sendResponse(new InventoryGetTagInfoResponse(_reqId,
+                                                                 inventoryMgr.getTagInfoPage(query.filter_pattern,
+                                                                                             query.cursor,
+                                                                                             tagInfoPageSize(query))));
+                } else {
+                    List<TagInfo> infoList = new ArrayList<>();
+                    inventoryMgr.getTagInfo(query.filter_pattern, infoList);
+                    sendResponse(new InventoryGetTagInfoResponse(_reqId, infoList));
                 }
-                sendResponse(new InventoryGetTagInfoResponse(_reqId, infoList));
+                break;
+            }
+            case InventoryGetTagsByFacilityRequest.METHOD_NAME: {
+                InventoryGetTagsByFacilityRequest req = mapper.treeToValue(_rootNode,
+                                                                           InventoryGetTagsByFacilityRequest.class);
+                sendResponse(new InventoryGetTagInfoResponse(_reqId,
+                                                             inventoryMgr.getTagInfoByFacility(req.params.facility_id)));
+                break;
+            }
+            case InventoryGetTagsByLocationRequest.METHOD_NAME: {
+                InventoryGetTagsByLocationRequest req = mapper.treeToValue(_rootNode,
+                                                                           InventoryGetTagsByLocationRequest.class);
+                sendResponse(new InventoryGetTagInfoResponse(_reqId,
+                                                             inventoryMgr.getTagInfoByLocation(req.params.location)));
+                break;
+            }
+            case InventoryGetTagsByStateRequest.METHOD_NAME: {
+                InventoryGetTagsByStateRequest req = mapper.treeToValue(_rootNode,
+                                                                        InventoryGetTagsByStateRequest.class);
+                if (req.params.state == null) {
+                    sendErr(_reqId, JsonRpcError.Type.INVALID_PARAMETER, "missing state");
+                    break;
+                }
+                sendResponse(new InventoryGetTagInfoResponse(_reqId,
+                                                             inventoryMgr.getTagInfoByState(req.params.state)));
                 break;
             }
             case InventoryGetTagStatsInfoRequest.METHOD_NAME: {
@@ -769,16 +864,24 @@ public class JsonRpcController
 
         for (JsonNode topicNode : topics) {
 
+            // a topic is either a plain name or an object with filters
+            TopicSubscription sub;
+            if (topicNode.isObject()) {
+                sub = mapper.treeToValue(topicNode, TopicSubscription.class);
+            } else {
+                sub = new TopicSubscription(topicNode.asText(), null, null);
+            }
+
             Topic topic;
             try {
-                topic = Topic.valueOf(topicNode.asText());
+                topic = Topic.valueOf(String.valueOf(sub.topic));
             } catch (IllegalArgumentException _e) {
-                log.info("unknown subscription topic {}", topicNode.asText());
+                log.info("unknown subscription topic {}", sub.topic);
                 continue;
             }
 
             if (topic.isEventTopic()) {
-                subscribeEventTopic(topic);
+                subscribeEventTopic(topic, sub);
             } else {
                 sendTopic(topic);
                 if (topic.isPeriodicTopic()) {
@@ -790,8 +893,11 @@ public class JsonRpcController
         }
     }
 
-    protected void subscribeEventTopic(Topic _topic) {
+    protected void subscribeEventTopic(Topic _topic, TopicSubscription _sub) {
         switch (_topic) {
+            case inventory_delta:
+                subscribeInventoryDelta(_sub);
+                break;
             case scheduler_run_state:
                 scheduleMgr.addRunStateListener(this);
                 break;
@@ -814,7 +920,46 @@ public class JsonRpcController
 
     }
 
+    public static final String CFG_KEY_DELTA_WINDOW = "upstream.events.delta.window.millis";
+    public static final long DEFAULT_DELTA_WINDOW_MILLIS = 1000;
+    public static final String CFG_KEY_DELTA_QUEUE_SIZE = "upstream.events.delta.queue.size";
+    public static final int DEFAULT_DELTA_QUEUE_SIZE = 10000;
+
+    /**
+     * Sends the inventory events that pass the subscription filters as
+     * inventory_delta notifications, batched the same way as the upstream
+     * inventory events. Subscribing again replaces the filters. The filters
+     * run on their own thread so a subscriber never holds up tag processing,
+     * events beyond the queue size are dropped.
+     */
+    protected void subscribeInventoryDelta(TopicSubscription _sub) {
+        ConfigManager cm = ConfigManager.instance;
+        UpstreamEventBatcher batcher = new UpstreamEventBatcher(
+                _batch -> sendNotification(new InventoryDeltaNotification(_batch)),
+                cm.getOptLong(CFG_KEY_DELTA_WINDOW, DEFAULT_DELTA_WINDOW_MILLIS),
+                cm.getOptInt(UpstreamManager.CFG_KEY_BATCH_MAX_SIZE, UpstreamManager.DEFAULT_BATCH_MAX_SIZE));
+        UpstreamEventFilter filter = new UpstreamEventFilter(_sub.facility_id, _sub.filter_pattern, batcher);
+        synchronized (this) {
+            unsubscribeInventoryDelta();
+            batcher.start();
+            inventoryMgr.addUpstreamEventListenerAsync(filter,
+                    cm.getOptInt(CFG_KEY_DELTA_QUEUE_SIZE, DEFAULT_DELTA_QUEUE_SIZE));
+            deltaFilter = filter;
+            deltaBatcher = batcher;
+        }
+    }
+
+    protected synchronized void unsubscribeInventoryDelta() {
+        if (deltaFilter != null) {
+            inventoryMgr.removeUpstreamEventListener(deltaFilter);
+            deltaBatcher.stop();
+            deltaFilter = null;
+            deltaBatcher = null;
+        }
+    }
+
     protected void unsubscribeAll() {
+        unsubscribeInventoryDelta();
         scheduleMgr.removeRunStateListener(this);
         sensorMgr.removeDeviceAlertListener(this);
         sensorMgr.removeConfigUpdateListener(this);
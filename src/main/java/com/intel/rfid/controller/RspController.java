@@ -105,7 +105,7 @@ public class RspController implements CLICommandBuilder {
         sensorMgr.addDeviceAlertListener(upstreamMgr);
 
         // to connect tag reads from down to up stream
-        downstreamMgr.addInventoryDataListener(inventoryMgr);
+        downstreamMgr.addTagReadListener(inventoryMgr);
         inventoryMgr.addUpstreamEventListener(upstreamMgr);
 
         // to support exiting behavior
@@ -117,6 +117,7 @@ public class RspController implements CLICommandBuilder {
     public void start() {
         log.info("RSP Controller {} starting", Version.asString());
 
+        ConfigManager.instance.startWatching();
         clusterMgr.start();
         sensorMgr.start();
         gpioMgr.start();
@@ -164,10 +165,10 @@ public class RspController implements CLICommandBuilder {
         gpioMgr.stop();
         sensorMgr.stop();
         clusterMgr.stop();
+        ConfigManager.instance.stopWatching();
 
         scheduleMgr.removeRunStateListener(inventoryMgr);
         inventoryMgr.removeUpstreamEventListener(upstreamMgr);
-        downstreamMgr.removeInventoryDataListener(inventoryMgr);
         sensorMgr.removeConnectionStateListener(upstreamMgr);
         sensorMgr.removeDeviceAlertListener(upstreamMgr);
         sensorMgr.removeConnectionStateListener(scheduleMgr);
@@ -7,14 +7,16 @@ package com.intel.rfid.downstream;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intel.rfid.api.JsonRequest;
+import com.intel.rfid.api.data.DataHandlerStatus;
 import com.intel.rfid.api.data.MqttStatus;
 import com.intel.rfid.api.gpio.GPIOConnectRequest;
 import com.intel.rfid.api.gpio.GPIOConnectResponse;
 import com.intel.rfid.api.sensor.ConnectRequest;
 import com.intel.rfid.api.sensor.ConnectResponse;
 import com.intel.rfid.api.sensor.GatewayStatusUpdate;
-import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.TagRead;
 import com.intel.rfid.api.upstream.RspControllerStatusUpdateNotification;
+import com.intel.rfid.controller.ConfigManager;
 import com.intel.rfid.controller.RspControllerStatus;
 import com.intel.rfid.exception.RspControllerException;
 import com.intel.rfid.gpio.GPIODevice;
@@ -29,8 +31,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.intel.rfid.api.sensor.GatewayStatusUpdate.SHUTTING_DOWN;
 
@@ -43,12 +45,21 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
     protected SensorManager sensorMgr;
     protected GPIOManager gpioMgr;
 
-    protected final DataMsgHandler dataMsgHandler;
+    // inventory data is sharded by device id across the data handlers
+    // so that reads from a single sensor are always processed in order
+    protected final DataMsgHandler[] dataMsgHandlers;
     protected final Map<String, RspMsgHandler> rspMsgHandlers;
     protected final Map<String, GPIOMsgHandler> gpioMsgHandlers;
 
     protected ObjectMapper mapper = Jackson.getMapper();
 
+    public static final String CFG_KEY_DATA_WORKERS = "downstream.data.workers";
+    public static final int DEFAULT_DATA_WORKERS = Runtime.getRuntime().availableProcessors();
+    public static final String CFG_KEY_DATA_QUEUE_SIZE = "downstream.data.queue.size";
+    public static final int DEFAULT_DATA_QUEUE_SIZE = MqttMsgHandler.DEFAULT_QUEUE_SIZE;
+    public static final String CFG_KEY_AGGREGATE_WINDOW = "downstream.data.aggregate.window.millis";
+    public static final long DEFAULT_AGGREGATE_WINDOW_MILLIS = 0;
+
     public DownstreamManager(SensorManager _sensorMgr, GPIOManager _gpioMgr) {
         sensorMgr = _sensorMgr;
         sensorMgr.setDownstreamMgr(this);
@@ -56,13 +67,23 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
         gpioMgr.setDownstreamMgr(this);
         mqttDownstream = new MqttDownstream(this);
         jmDNSService = new JmDNSService();
-        dataMsgHandler = new DataMsgHandler();
+        ConfigManager cm = ConfigManager.instance;
+        int numWorkers = cm.getOptInt(CFG_KEY_DATA_WORKERS, DEFAULT_DATA_WORKERS);
+        int queueSize = cm.getOptInt(CFG_KEY_DATA_QUEUE_SIZE, DEFAULT_DATA_QUEUE_SIZE);
+        long aggregateWindow = cm.getOptLong(CFG_KEY_AGGREGATE_WINDOW, DEFAULT_AGGREGATE_WINDOW_MILLIS);
+        dataMsgHandlers = new DataMsgHandler[Math.max(1, numWorkers)];
+        for (int i = 0; i < dataMsgHandlers.length; i++) {
+            dataMsgHandlers[i] = new DataMsgHandler(i, Math.max(1, queueSize), aggregateWindow);
+        }
         rspMsgHandlers = new HashMap<>();
         gpioMsgHandlers = new HashMap<>();
     }
 
     public boolean start() {
-        dataMsgHandler.start();
+        for (DataMsgHandler dmh : dataMsgHandlers) {
+            dmh.start();
+        }
+        log.info("started {} data message handlers", dataMsgHandlers.length);
         mqttDownstream.start();
         jmDNSService.start();
         log.info(getClass().getSimpleName() + " started");
@@ -86,7 +107,9 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
             }
             rspMsgHandlers.clear();
         }
-        dataMsgHandler.shutdown();
+        for (DataMsgHandler dmh : dataMsgHandlers) {
+            dmh.shutdown();
+        }
         log.info(getClass().getSimpleName() + " stopped");
         return true;
     }
@@ -165,7 +188,15 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
     }
 
     public MqttStatus getMqttStatus() {
-        return mqttDownstream.getSummary();
+        MqttStatus status = mqttDownstream.getSummary();
+        for (DataMsgHandler dmh : dataMsgHandlers) {
+            status.data_handlers.add(new DataHandlerStatus(dmh.getShard(),
+                                                           dmh.getQueueDepth(),
+                                                           dmh.getQueueCapacity(),
+                                                           dmh.getNumQueued(),
+                                                           dmh.getNumDropped()));
+        }
+        return status;
     }
 
     public void sensorRemoved(String _deviceId) {
@@ -201,7 +232,7 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
             MqttMsgHandler.Inbound inbound = new MqttMsgHandler.Inbound(deviceId, _msg);
 
             if (_topic.startsWith(MqttDownstream.DATA_TOPIC)) {
-                dataMsgHandler.queue(inbound);
+                getDataMsgHandler(deviceId).queue(inbound);
             } else if (_topic.startsWith(MqttDownstream.GPIO_PREFIX)) {
                 synchronized (gpioMsgHandlers) {
                     GPIOMsgHandler gpioMsgHandler = gpioMsgHandlers.get(deviceId);
@@ -239,28 +270,86 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
         }
     }
 
-    public interface InventoryDataListener {
-        void onInventoryData(InventoryDataNotification _data, SensorPlatform _rsp);
+    /**
+     * Receives the reads of an inventory data message one at a time as they
+     * are parsed. The TagRead instance is reused and must not be kept.
+     * <p>
+     * When reads are aggregated, a TagReadAggregate for each EPC, sensor
+     * and antenna is received once its window has closed instead, along
+     * with those of other sensors handled by the same worker.
+     */
+    public interface TagReadListener {
+        void onTagRead(TagRead _read, SensorPlatform _rsp);
+
+        void onTagReadsComplete(SensorPlatform _rsp, int _numReads);
     }
 
-    protected final HashSet<InventoryDataListener> inventoryDataListeners = new HashSet<>();
+    // iterated once per read by every data handler so avoid locking
+    protected final CopyOnWriteArrayList<TagReadListener> tagReadListeners = new CopyOnWriteArrayList<>();
 
-    public void addInventoryDataListener(InventoryDataListener _l) {
-        synchronized (inventoryDataListeners) {
-            inventoryDataListeners.add(_l);
-        }
+    public void addTagReadListener(TagReadListener _l) {
+        tagReadListeners.addIfAbsent(_l);
+    }
+
+    public void removeTagReadListener(TagReadListener _l) {
+        tagReadListeners.remove(_l);
     }
 
-    public void removeInventoryDataListener(InventoryDataListener _l) {
-        synchronized (inventoryDataListeners) {
-            inventoryDataListeners.remove(_l);
+    /**
+     * Runs a recorded inventory_data message through the data handler its
+     * sensor is sharded to, in the calling thread and as if it had arrived
+     * at the given time. Only for replaying while the data handlers are not
+     * started, see TagReadReplay.
+     *
+     * @return the number of tag reads in the message
+     */
+    public int replayInventoryData(SensorPlatform _rsp, byte[] _payload, long _time) {
+        return getDataMsgHandler(_rsp.getDeviceId()).process(_rsp, _payload, _time);
+    }
+
+    /**
+     * Passes on the aggregates of every data handler whose window closed by
+     * the given time, as the handlers do when idle. Only for replaying while
+     * the data handlers are not started.
+     */
+    public void replayIdle(long _time) {
+        for (DataMsgHandler dmh : dataMsgHandlers) {
+            dmh.flushAggregates(_time);
         }
     }
 
-    public class DataMsgHandler extends MqttMsgHandler {
+    protected DataMsgHandler getDataMsgHandler(String _deviceId) {
+        int h = _deviceId.hashCode();
+        h ^= (h >>> 16);
+        return dataMsgHandlers[(h & 0x7fffffff) % dataMsgHandlers.length];
+    }
+
+    public class DataMsgHandler extends MqttMsgHandler implements InventoryDataParser.Handler {
 
         protected Logger readlog = LoggerFactory.getLogger("tag.read");
 
+        protected final int shard;
+        protected final InventoryDataParser parser = new InventoryDataParser();
+        // null when reads are passed on one by one
+        protected final ReadAggregator aggregator;
+        protected SensorPlatform curRsp;
+        protected long curTime;
+
+        public DataMsgHandler(int _shard, int _queueSize, long _aggregateWindowMillis) {
+            super(_queueSize);
+            shard = _shard;
+            aggregator = _aggregateWindowMillis > 0 ? new ReadAggregator(_aggregateWindowMillis) : null;
+            setName("data-handler " + _shard);
+        }
+
+        public int getShard() {
+            return shard;
+        }
+
+        public ReadAggregator getAggregator() {
+            return aggregator;
+        }
+
         protected void handleMessage(Inbound _msg) {
 
             SensorPlatform rsp = sensorMgr.getSensor(_msg.deviceId);
@@ -271,28 +360,90 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
 
             rsp.updateLastComms();
 
+            byte[] payload = _msg.mqttMessage.getPayload();
+            process(rsp, payload, System.currentTimeMillis());
+
+            if (readlog.isInfoEnabled()) {
+                // MUST call new String() or data will be garbled, toString() does not function properly
+                readlog.info(new String(payload));
+            }
+        }
+
+        // the time the message counts as received, the aggregation windows follow it
+        protected int process(SensorPlatform _rsp, byte[] _payload, long _now) {
+            int numReads = 0;
+            curRsp = _rsp;
+            curTime = _now;
             try {
-                InventoryDataNotification data = mapper.readValue(_msg.mqttMessage.getPayload(),
-                                                                  InventoryDataNotification.class);
-
-                rsp.onInventoryData(data);
-                synchronized (inventoryDataListeners) {
-                    for (InventoryDataListener l : inventoryDataListeners) {
-                        try {
-                            l.onInventoryData(data, rsp);
-                        } catch (Throwable t) {
-                            log.error("error:", t);
-                        }
-                    }
+                numReads = parser.parse(_payload, this);
+            } catch (Exception e) {
+                log.error("error: ", e);
+            } finally {
+                curRsp = null;
+                if (aggregator != null) {
+                    aggregator.flush(curTime, this::deliver);
                 }
+                complete(_rsp, numReads);
+            }
+            return numReads;
+        }
 
-                if (readlog.isInfoEnabled()) {
-                    // MUST call new String() or data will be garbled, toString() does not function properly
-                    readlog.info(new String(_msg.mqttMessage.getPayload()));
+        @Override
+        protected long getIdleMillis() {
+            return aggregator == null ? 0 : aggregator.getWindowMillis();
+        }
+
+        // with no more data coming in, the aggregates still go out on time
+        @Override
+        protected void onIdle() {
+            flushAggregates(System.currentTimeMillis());
+        }
+
+        protected void flushAggregates(long _now) {
+            if (aggregator == null) {
+                return;
+            }
+            SensorPlatform[] last = new SensorPlatform[1];
+            aggregator.flush(_now, (read, rsp) -> {
+                deliver(read, rsp);
+                last[0] = rsp;
+            });
+            if (last[0] != null) {
+                complete(last[0], 0);
+            }
+        }
+
+        @Override
+        public void onTagRead(TagRead _read) {
+            curRsp.onTagRead(_read);
+            if (aggregator != null) {
+                // filtered here as the inventory only sees the aggregate,
+                // weak reads would count and pull its rssi down
+                if (_read.rssi >= curRsp.getMinRssiDbm10X()) {
+                    aggregator.add(_read, curRsp, curTime);
                 }
+            } else {
+                deliver(_read, curRsp);
+            }
+        }
 
-            } catch (Exception e) {
-                log.error("error: ", e);
+        private void deliver(TagRead _read, SensorPlatform _rsp) {
+            for (TagReadListener l : tagReadListeners) {
+                try {
+                    l.onTagRead(_read, _rsp);
+                } catch (Throwable t) {
+                    log.error("error:", t);
+                }
+            }
+        }
+
+        private void complete(SensorPlatform _rsp, int _numReads) {
+            for (TagReadListener l : tagReadListeners) {
+                try {
+                    l.onTagReadsComplete(_rsp, _numReads);
+                } catch (Throwable t) {
+                    log.error("error:", t);
+                }
             }
         }
     }
@@ -349,6 +500,46 @@ public class DownstreamManager implements MqttDownstream.Dispatch {
         mqttDownstream.status(_out);
         _out.blank();
 
+        showDataHandlers(_out);
+    }
+
+    public void showDataHandlers(PrettyPrinter _out) {
+        _out.line("Data Handlers: " + dataMsgHandlers.length);
+        String fmt = "%-6s %-12s %-12s %-12s %-12s";
+        _out.line(String.format(fmt, "shard", "depth", "queued", "dropped", "reduction"));
+        for (DataMsgHandler dmh : dataMsgHandlers) {
+            ReadAggregator agg = dmh.getAggregator();
+            _out.line(String.format(fmt,
+                                    dmh.getShard(),
+                                    dmh.getQueueDepth() + "/" + dmh.getQueueCapacity(),
+                                    dmh.getNumQueued(),
+                                    dmh.getNumDropped(),
+                                    agg == null ? "-" : String.format("%.2f", agg.getReductionRatio())));
+        }
+        if (dataMsgHandlers[0].getAggregator() != null) {
+            _out.line(String.format("reads aggregated over %d ms, overall reduction %.2f",
+                                    dataMsgHandlers[0].getAggregator().getWindowMillis(),
+                                    getReadReductionRatio()));
+        }
+        _out.blank();
+
+    }
+
+    /**
+     * @return tag reads received per read passed on to the inventory,
+     * 1.0 when reads are not aggregated
+     */
+    public double getReadReductionRatio() {
+        long in = 0;
+        long out = 0;
+        for (DataMsgHandler dmh : dataMsgHandlers) {
+            ReadAggregator agg = dmh.getAggregator();
+            if (agg != null) {
+                in += agg.getNumIn();
+                out += agg.getNumOut();
+            }
+        }
+        return out == 0 ? 1.0 : (double) in / out;
     }
 
 }
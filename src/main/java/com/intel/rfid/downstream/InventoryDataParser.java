@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.downstream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.Jackson;
+import com.intel.rfid.helpers.StringCache;
+import com.intel.rfid.tag.EpcKey;
+
+import java.io.IOException;
+
+/**
+ * Streaming parser for inventory_data notifications.
+ * <p>
+ * Rather than building the full InventoryDataNotification object graph,
+ * each tag read is parsed into a single reused TagRead holder and handed
+ * to the Handler before the next read is parsed. EPC strings are looked
+ * up in a bounded cache so that repeat reads of the same tag do not
+ * allocate, and hex EPCs are also packed into the read (see EpcKey) so the
+ * inventory can find the tag without the String. The handler MUST NOT hold
+ * on to the TagRead after the callback returns, the Strings it references
+ * are safe to keep.
+ * <p>
+ * Only the data array is parsed, the header fields are skipped as the
+ * sensor is known from the topic and its reads carry their own times.
+ * <p>
+ * Not thread safe, each data handler thread owns its own parser.
+ */
+public class InventoryDataParser {
+
+    public interface Handler {
+        void onTagRead(TagRead _read);
+    }
+
+    private final JsonFactory factory;
+    private final StringCache epcCache;
+    private final TagRead read = new TagRead();
+
+    public InventoryDataParser() {
+        this(new StringCache());
+    }
+
+    public InventoryDataParser(StringCache _epcCache) {
+        factory = Jackson.getMapper().getFactory();
+        epcCache = _epcCache;
+    }
+
+    public StringCache getEpcCache() {
+        return epcCache;
+    }
+
+    /**
+     * Parses the payload, calling the handler for every read.
+     *
+     * @return the number of tag reads parsed
+     */
+    public int parse(byte[] _payload, Handler _handler) throws IOException {
+        int numReads = 0;
+        try (JsonParser p = factory.createParser(_payload)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("expected start of object");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                p.nextToken();
+                if ("params".equals(field) && p.currentToken() == JsonToken.START_OBJECT) {
+                    numReads += parseParams(p, _handler);
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return numReads;
+    }
+
+    private int parseParams(JsonParser p, Handler _handler) throws IOException {
+        int numReads = 0;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken t = p.nextToken();
+            if ("data".equals(field) && t == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    parseTagRead(p);
+                    _handler.onTagRead(read);
+                    numReads++;
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+        return numReads;
+    }
+
+    private void parseTagRead(JsonParser p) throws IOException {
+        read.epc = null;
+        read.epc_digits = 0;
+        read.tid = null;
+        read.antenna_id = 0;
+        read.last_read_on = 0;
+        read.rssi = 0;
+        read.phase = 0;
+        read.frequency = 0;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            JsonToken t = p.nextToken();
+            switch (field) {
+                case "epc":
+                    if (t == JsonToken.VALUE_STRING) {
+                        parseEpc(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+                    }
+                    break;
+                case "tid":
+                    if (t == JsonToken.VALUE_STRING) {
+                        read.tid = p.getText();
+                    }
+                    break;
+                case "antenna_id":
+                    read.antenna_id = p.getValueAsInt();
+                    break;
+                case "last_read_on":
+                    read.last_read_on = p.getValueAsLong();
+                    break;
+                case "rssi":
+                    read.rssi = p.getValueAsInt();
+                    break;
+                case "phase":
+                    read.phase = p.getValueAsInt();
+                    break;
+                case "frequency":
+                    read.frequency = p.getValueAsInt();
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+    }
+
+    private void parseEpc(char[] _chars, int _offset, int _len) {
+        read.epc = epcCache.intern(_chars, _offset, _len);
+        if (EpcKey.isPackable(_chars, _offset, _len)) {
+            read.epc_high = EpcKey.high(_chars, _offset, _len);
+            read.epc_low = EpcKey.low(_chars, _offset, _len);
+            read.epc_digits = _len;
+        }
+    }
+
+}
@@ -11,6 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class MqttMsgHandler extends Thread {
 
@@ -29,7 +31,35 @@ public abstract class MqttMsgHandler extends Thread {
 
     private boolean keepGoing = true;
 
-    private LinkedBlockingQueue<Inbound> msgQueue = new LinkedBlockingQueue<>(100);
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
+    private final LinkedBlockingQueue<Inbound> msgQueue;
+    private final AtomicLong numQueued = new AtomicLong(0);
+    private final AtomicLong numDropped = new AtomicLong(0);
+
+    public MqttMsgHandler() {
+        this(DEFAULT_QUEUE_SIZE);
+    }
+
+    public MqttMsgHandler(int _queueSize) {
+        msgQueue = new LinkedBlockingQueue<>(_queueSize);
+    }
+
+    public int getQueueDepth() {
+        return msgQueue.size();
+    }
+
+    public int getQueueCapacity() {
+        return msgQueue.size() + msgQueue.remainingCapacity();
+    }
+
+    public long getNumQueued() {
+        return numQueued.get();
+    }
+
+    public long getNumDropped() {
+        return numDropped.get();
+    }
 
     public void shutdown() {
         keepGoing = false;
@@ -49,12 +79,14 @@ public abstract class MqttMsgHandler extends Thread {
     public void queue(Inbound _msg) {
         if (!msgQueue.offer(_msg)) {
 
+            numDropped.getAndIncrement();
             if (!loggedOnce) {
-                log.warn("data handler queue is full. " +
-                                 "messages will be dropped until space is available");
+                log.warn("{} queue is full. " +
+                                 "messages will be dropped until space is available", getName());
                 loggedOnce = true;
             }
         } else {
+            numQueued.getAndIncrement();
             // clear the state to re-enable the message
             loggedOnce = false;
         }
@@ -65,10 +97,19 @@ public abstract class MqttMsgHandler extends Thread {
     public void run() {
 
         keepGoing = true;
+        long idleMillis = getIdleMillis();
         while (keepGoing) {
             try {
-                Inbound msg = msgQueue.take();
-                handleMessage(msg);
+                if (idleMillis > 0) {
+                    Inbound msg = msgQueue.poll(idleMillis, TimeUnit.MILLISECONDS);
+                    if (msg == null) {
+                        onIdle();
+                    } else {
+                        handleMessage(msg);
+                    }
+                } else {
+                    handleMessage(msgQueue.take());
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
@@ -79,4 +120,14 @@ public abstract class MqttMsgHandler extends Thread {
 
     protected abstract void handleMessage(Inbound _msg);
 
+    /**
+     * How long the queue may be empty before onIdle() is called,
+     * 0 (the default) to never call it.
+     */
+    protected long getIdleMillis() {
+        return 0;
+    }
+
+    protected void onIdle() { }
+
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.downstream;
+
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.sensor.SensorPlatform;
+import com.intel.rfid.tag.TagReadAggregate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Folds the repeated reads of an EPC on the same antenna of the same
+ * sensor, within a window of time from the first of them, into a single
+ * TagReadAggregate so the inventory runs the tag update and state machine
+ * once per window rather than once per read.
+ * <p>
+ * The longer the window the fewer reads get through, but the later a tag
+ * moving between antennas is noticed. The reduction ratio (reads in per
+ * read out) is kept to help choose.
+ * <p>
+ * Not thread safe, each data handler has its own.
+ */
+public class ReadAggregator {
+
+    private static final class Key {
+        private String epc;
+        private SensorPlatform rsp;
+        private int antenna;
+
+        private Key set(String _epc, SensorPlatform _rsp, int _antenna) {
+            epc = _epc;
+            rsp = _rsp;
+            antenna = _antenna;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object _o) {
+            if (this == _o) { return true; }
+            if (!(_o instanceof Key)) { return false; }
+            Key k = (Key) _o;
+            return antenna == k.antenna && rsp == k.rsp && Objects.equals(epc, k.epc);
+        }
+
+        @Override
+        public int hashCode() {
+            return (epc.hashCode() * 31 + System.identityHashCode(rsp)) * 31 + antenna;
+        }
+    }
+
+    private static final class Pending {
+        private final TagReadAggregate aggregate = new TagReadAggregate();
+        private final SensorPlatform rsp;
+        private final long opened;
+
+        private Pending(SensorPlatform _rsp, long _opened) {
+            rsp = _rsp;
+            opened = _opened;
+        }
+    }
+
+    private final long windowMillis;
+    // looks up a read without creating a key for it
+    private final Key probe = new Key();
+    // in the order opened, which is the order they are due
+    private final Map<Key, Pending> pending = new LinkedHashMap<>();
+    // only written by the owning handler, read for reporting
+    private volatile long numIn = 0;
+    private volatile long numOut = 0;
+
+    public ReadAggregator(long _windowMillis) {
+        if (_windowMillis < 1) {
+            throw new IllegalArgumentException("window must be positive: " + _windowMillis);
+        }
+        windowMillis = _windowMillis;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public int getNumPending() {
+        return pending.size();
+    }
+
+    public long getNumIn() {
+        return numIn;
+    }
+
+    public long getNumOut() {
+        return numOut;
+    }
+
+    /**
+     * @return reads received per read passed on, 1.0 when nothing has been
+     */
+    public double getReductionRatio() {
+        long out = numOut;
+        return out == 0 ? 1.0 : (double) numIn / out;
+    }
+
+    /**
+     * Adds the read to the aggregate for its EPC, sensor and antenna. The
+     * read is copied so the instance may be reused.
+     */
+    public void add(TagRead _read, SensorPlatform _rsp, long _now) {
+        numIn++;
+        Pending p = pending.get(probe.set(_read.epc, _rsp, _read.antenna_id));
+        if (p == null) {
+            p = new Pending(_rsp, _now);
+            pending.put(new Key().set(_read.epc, _rsp, _read.antenna_id), p);
+        }
+        p.aggregate.add(_read);
+    }
+
+    /**
+     * Passes on the aggregates whose window has closed by now.
+     *
+     * @return the number passed on
+     */
+    public int flush(long _now, BiConsumer<TagRead, SensorPlatform> _out) {
+        return flush(_now - windowMillis, false, _out);
+    }
+
+    /**
+     * Passes on all of the aggregates, i.e. when shutting down.
+     *
+     * @return the number passed on
+     */
+    public int flushAll(BiConsumer<TagRead, SensorPlatform> _out) {
+        return flush(0, true, _out);
+    }
+
+    private int flush(long _openedBy, boolean _all, BiConsumer<TagRead, SensorPlatform> _out) {
+        int n = 0;
+        Iterator<Pending> iter = pending.values().iterator();
+        while (iter.hasNext()) {
+            Pending p = iter.next();
+            if (!_all && p.opened > _openedBy) {
+                break;
+            }
+            iter.remove();
+            numOut++;
+            n++;
+            _out.accept(p.aggregate, p.rsp);
+        }
+        return n;
+    }
+
+}
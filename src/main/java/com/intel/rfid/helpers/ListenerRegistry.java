@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Listeners for events published from the hot path (i.e. for every
+ * inventory data message).
+ * <p>
+ * The listeners are kept in a copy-on-write array, so dispatching never
+ * takes a lock and, given a non-capturing lambda or method reference such
+ * as UpstreamEventListener::onUpstreamEvent, allocates nothing. Adding and
+ * removing listeners is rare and copies the array.
+ * <p>
+ * A listener that may be slow (i.e. one that sends over a network) can be
+ * added as asynchronous. It then gets its own thread and a bounded queue
+ * of events, and events that do not fit in the queue are dropped (and
+ * counted) rather than holding up the publisher and the other listeners.
+ */
+public class ListenerRegistry<T> {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    public interface Call2<T, A, B> {
+        void call(T _listener, A _a, B _b);
+    }
+
+    private final class Entry {
+        private final T listener;
+        // null for a listener called directly from dispatch
+        private final AsyncDelivery async;
+
+        private Entry(T _listener, AsyncDelivery _async) {
+            listener = _listener;
+            async = _async;
+        }
+    }
+
+    private final Object lock = new Object();
+    private volatile Entry[] entries = newArray(0);
+    private final AtomicLong dropped = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    private Entry[] newArray(int _size) {
+        return (Entry[]) Array.newInstance(Entry.class, _size);
+    }
+
+    /**
+     * Adds a listener that is called from the dispatching thread.
+     *
+     * @return false if the listener was already added
+     */
+    public boolean add(T _listener) {
+        return add(_listener, null);
+    }
+
+    /**
+     * Adds a listener that is called from its own thread, with up to
+     * _queueSize events waiting for it.
+     *
+     * @return false if the listener was already added
+     */
+    public boolean addAsync(T _listener, int _queueSize) {
+        return add(_listener, new AsyncDelivery(_listener, _queueSize));
+    }
+
+    private boolean add(T _listener, AsyncDelivery _async) {
+        synchronized (lock) {
+            Entry[] cur = entries;
+            for (Entry e : cur) {
+                if (e.listener.equals(_listener)) {
+                    return false;
+                }
+            }
+            Entry[] next = newArray(cur.length + 1);
+            System.arraycopy(cur, 0, next, 0, cur.length);
+            next[cur.length] = new Entry(_listener, _async);
+            if (_async != null) {
+                _async.start();
+            }
+            entries = next;
+            return true;
+        }
+    }
+
+    /**
+     * @return false if the listener was not added
+     */
+    public boolean remove(T _listener) {
+        synchronized (lock) {
+            Entry[] cur = entries;
+            for (int i = 0; i < cur.length; i++) {
+                if (cur[i].listener.equals(_listener)) {
+                    Entry[] next = newArray(cur.length - 1);
+                    System.arraycopy(cur, 0, next, 0, i);
+                    System.arraycopy(cur, i + 1, next, i, cur.length - i - 1);
+                    entries = next;
+                    if (cur[i].async != null) {
+                        cur[i].async.stop();
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            Entry[] cur = entries;
+            entries = newArray(0);
+            for (Entry e : cur) {
+                if (e.async != null) {
+                    e.async.stop();
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return the number of events dropped for asynchronous listeners
+     * that could not keep up
+     */
+    public long getNumDropped() {
+        return dropped.get();
+    }
+
+    public <A> void dispatch(BiConsumer<T, A> _how, A _a) {
+        for (Entry e : entries) {
+            if (e.async == null) {
+                try {
+                    _how.accept(e.listener, _a);
+                } catch (Throwable t) {
+                    log.error("error:", t);
+                }
+            } else {
+                e.async.offer(() -> _how.accept(e.listener, _a));
+            }
+        }
+    }
+
+    public <A, B> void dispatch(Call2<T, A, B> _how, A _a, B _b) {
+        for (Entry e : entries) {
+            if (e.async == null) {
+                try {
+                    _how.call(e.listener, _a, _b);
+                } catch (Throwable t) {
+                    log.error("error:", t);
+                }
+            } else {
+                e.async.offer(() -> _how.call(e.listener, _a, _b));
+            }
+        }
+    }
+
+    private class AsyncDelivery implements Runnable {
+
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private AsyncDelivery(T _listener, int _queueSize) {
+            queue = new ArrayBlockingQueue<>(_queueSize);
+            thread = new Thread(this, "listener " + _listener.getClass().getSimpleName());
+            thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() {
+            running = false;
+            thread.interrupt();
+        }
+
+        private void offer(Runnable _event) {
+            if (!queue.offer(_event)) {
+                long n = dropped.incrementAndGet();
+                if (n == 1 || n % 1000 == 0) {
+                    log.warn("{} is not keeping up, {} events dropped so far", thread.getName(), n);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Runnable event = queue.poll(1, TimeUnit.SECONDS);
+                    if (event != null) {
+                        event.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Throwable t) {
+                    log.error("error:", t);
+                }
+            }
+        }
+    }
+
+}
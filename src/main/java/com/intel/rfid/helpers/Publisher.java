@@ -7,27 +7,27 @@ package com.intel.rfid.helpers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 /**
  * Thread-safe class on which subscribers can subscribe for or unsubscribe
  * from messages, and publishers can notify subscribers.
  * <p>
- * Subscribing and unsubscribing is synchronized on the private, internal
- * listeners collection, whereas notification is locked on the provided
- * lock object the class was created with so that event messaging may be
- * coordinated across Publisher instances, if desired.
+ * The listeners are kept in a copy-on-write list, so notifying takes no
+ * lock on the listeners and does not hold up subscribing or unsubscribing.
+ * Notifications are handed to the executor the class was created with,
+ * one task per listener, while holding the provided lock object so that
+ * event messaging may be coordinated across Publisher instances, if
+ * desired.
  * <p>
- * The listeners collection is implemented as a WeakHashMap so that classes
- * that forget to unsubscribe will still be cleaned up by the Garbage Collector.
+ * The listeners are held by weak references so that classes that forget
+ * to unsubscribe will still be cleaned up by the Garbage Collector.
  *
  * @param <T> the listener interface subscribers should implement.
  */
@@ -35,16 +35,8 @@ public class Publisher<T> {
 
     protected Logger log = LoggerFactory.getLogger(getClass());
 
-    // NOTE: it might be worth making this a ConcurrentHashMap and instead
-    // either manually using WeakReferences, or working to ensure that all
-    // subscribers play nice an unsubscribe. This would be most useful for
-    // the notifiers that are called often, since read contention is far
-    // less likely.
-    // It might also make sense to use this class in a Map keyed on topics,
-    // located in a central place (the controller?) or passed to the manager 
-    // instances, so they can fire-and-forget messages
-    // that other service need to act upon.
-    private final Set<T> listeners = Collections.newSetFromMap(new WeakHashMap<>());
+    private final Object listenersLock = new Object();
+    private volatile List<WeakReference<T>> listeners = Collections.emptyList();
     private ExecutorService executorService;
     private final Object executorLock;
 
@@ -68,54 +60,77 @@ public class Publisher<T> {
 
     public boolean subscribe(T _listener) {
         log.debug("Add subscriber");
-        synchronized (listeners) {
-            return listeners.add(_listener);
+        synchronized (listenersLock) {
+            List<WeakReference<T>> next = new ArrayList<>(listeners.size() + 1);
+            for (WeakReference<T> ref : listeners) {
+                T l = ref.get();
+                if (l == null) {
+                    continue;
+                }
+                if (l.equals(_listener)) {
+                    return false;
+                }
+                next.add(ref);
+            }
+            next.add(new WeakReference<>(_listener));
+            listeners = next;
+            return true;
         }
     }
 
     public boolean unsubscribe(T _listener) {
         log.debug("Removing subscriber");
-        synchronized (listeners) {
-            return listeners.remove(_listener);
+        synchronized (listenersLock) {
+            boolean removed = false;
+            List<WeakReference<T>> next = new ArrayList<>(listeners.size());
+            for (WeakReference<T> ref : listeners) {
+                T l = ref.get();
+                if (l == null) {
+                    continue;
+                }
+                if (l.equals(_listener)) {
+                    removed = true;
+                } else {
+                    next.add(ref);
+                }
+            }
+            listeners = next;
+            return removed;
         }
     }
 
     public void clearSubscribers() {
         log.debug("Clearing all subscribers");
-        synchronized (listeners) {
-            listeners.clear();
+        synchronized (listenersLock) {
+            listeners = Collections.emptyList();
         }
     }
 
     /**
-     * Locks the listener collection long enough to generate event runnables using
-     * the _notifyHow Consumer, then locks the executor and submits the runnables.
+     * Hands one task per listener, calling it with the _notifyHow Consumer,
+     * to the executor.
      */
-    public Set<Future<?>> notifyListeners(Consumer<T> _notifyHow) {
-        log.debug("Notifying listeners");
-
-        Collection<Runnable> runnables;
-
-        log.debug("Generating runnables");
-        synchronized (listeners) {
-            if (listeners.isEmpty()) {
-                log.debug("No listeners to notify");
-                return Collections.emptySet();
-            }
-
-            runnables = listeners
-                    .stream()
-                    .map(listener -> (Runnable) () -> _notifyHow.accept(listener))
-                    .collect(Collectors.toList());
+    public void notifyListeners(Consumer<T> _notifyHow) {
+        List<WeakReference<T>> cur = listeners;
+        if (cur.isEmpty()) {
+            log.debug("No listeners to notify");
+            return;
         }
-        log.debug("Done");
 
-        log.debug("Scheduling Execution");
-        Set<Future<?>> futures;
         synchronized (executorLock) {
-            futures = runnables.stream().map(executorService::submit).collect(Collectors.toSet());
+            for (int i = 0; i < cur.size(); i++) {
+                T listener = cur.get(i).get();
+                if (listener == null) {
+                    continue;
+                }
+                executorService.execute(() -> {
+                    try {
+                        _notifyHow.accept(listener);
+                    } catch (Throwable t) {
+                        log.error("error:", t);
+                    }
+                });
+            }
         }
-        log.debug("Done");
-        return futures;
     }
 }
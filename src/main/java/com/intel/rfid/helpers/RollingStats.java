@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+/**
+ * Summary statistics over a fixed size window of the most recent values.
+ * <p>
+ * A drop in replacement for the commons-math DescriptiveStatistics windowed
+ * mode (same results for N, mean, sample standard deviation, min and max)
+ * backed by a primitive ring buffer. The sum and sum of squares are updated
+ * as values enter and leave the window so adding a value and getting the
+ * mean are O(1) and never allocate. Min and max are only rescanned when the
+ * value leaving the window was the current min or max. The sums are
+ * recomputed from the buffer each time the ring wraps to keep floating
+ * point drift from accumulating.
+ * <p>
+ * The window storage is left to subclasses so values with a known range
+ * can be kept in a smaller primitive type, see ofDoubles() and ofInts().
+ * <p>
+ * Not thread safe, callers are expected to synchronize.
+ */
+public abstract class RollingStats {
+
+    private final int windowSize;
+    private int n = 0;
+    private int head = 0;
+    private double sum = 0.0;
+    private double sumSq = 0.0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    protected RollingStats(int _windowSize) {
+        if (_windowSize < 1) {
+            throw new IllegalArgumentException("window size must be positive: " + _windowSize);
+        }
+        windowSize = _windowSize;
+    }
+
+    public static RollingStats ofDoubles(int _windowSize) {
+        return new Doubles(_windowSize);
+    }
+
+    /**
+     * Values are stored rounded to the nearest int, clamped to the int range.
+     */
+    public static RollingStats ofInts(int _windowSize) {
+        return new Ints(_windowSize);
+    }
+
+    protected abstract double valueAt(int _idx);
+
+    /**
+     * Stores the value at the index, and returns the value as it
+     * will be read back by valueAt() which is what is accumulated.
+     */
+    protected abstract double store(int _idx, double _v);
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void clear() {
+        n = 0;
+        head = 0;
+        sum = 0.0;
+        sumSq = 0.0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    public void addValue(double _v) {
+        boolean rescan = false;
+        if (n == windowSize) {
+            double old = valueAt(head);
+            sum -= old;
+            sumSq -= old * old;
+            rescan = (old == min || old == max);
+        } else {
+            n++;
+        }
+        _v = store(head, _v);
+        sum += _v;
+        sumSq += _v * _v;
+
+        if (++head == windowSize) {
+            head = 0;
+            recomputeSums();
+        }
+
+        if (rescan) {
+            rescanMinMax();
+        } else {
+            if (n == 1 || _v < min) { min = _v; }
+            if (n == 1 || _v > max) { max = _v; }
+        }
+    }
+
+    private void recomputeSums() {
+        double s = 0.0;
+        double sq = 0.0;
+        for (int i = 0; i < n; i++) {
+            double v = valueAt(i);
+            s += v;
+            sq += v * v;
+        }
+        sum = s;
+        sumSq = sq;
+    }
+
+    private void rescanMinMax() {
+        double mn = valueAt(0);
+        double mx = mn;
+        for (int i = 1; i < n; i++) {
+            double v = valueAt(i);
+            if (v < mn) { mn = v; }
+            if (v > mx) { mx = v; }
+        }
+        min = mn;
+        max = mx;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public double getSum() {
+        return n == 0 ? Double.NaN : sum;
+    }
+
+    public double getMean() {
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    /**
+     * @return the bias corrected (sample) variance, 0 for a single value
+     */
+    public double getVariance() {
+        if (n == 0) { return Double.NaN; }
+        if (n == 1) { return 0.0; }
+        double v = (sumSq - (sum * sum) / n) / (n - 1);
+        // guard against tiny negative results from rounding
+        return v < 0.0 ? 0.0 : v;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    protected static class Doubles extends RollingStats {
+        private final double[] values;
+
+        protected Doubles(int _windowSize) {
+            super(_windowSize);
+            values = new double[_windowSize];
+        }
+
+        protected double valueAt(int _idx) {
+            return values[_idx];
+        }
+
+        protected double store(int _idx, double _v) {
+            values[_idx] = _v;
+            return _v;
+        }
+    }
+
+    protected static class Ints extends RollingStats {
+        private final int[] values;
+
+        protected Ints(int _windowSize) {
+            super(_windowSize);
+            values = new int[_windowSize];
+        }
+
+        protected double valueAt(int _idx) {
+            return values[_idx];
+        }
+
+        protected double store(int _idx, double _v) {
+            long l = Math.round(_v);
+            values[_idx] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, l));
+            return values[_idx];
+        }
+    }
+
+}
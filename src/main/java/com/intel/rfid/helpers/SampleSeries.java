@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+/**
+ * A fixed capacity series of periodic samples, newest first, that answers
+ * the sum or mean of the most recent n samples for any n in O(1).
+ * <p>
+ * Samples are kept in a primitive ring buffer alongside a ring of running
+ * (prefix) sums, so the sum over the last n samples is the difference of
+ * two prefix sums. The prefix sums are rebuilt from the samples each time
+ * the ring wraps to keep floating point drift from accumulating, which
+ * keeps adding a sample amortized O(1).
+ * <p>
+ * NaN samples (a period with nothing to measure) are counted rather than
+ * summed, and any aggregate over a range holding one is NaN, the same as
+ * summary statistics over the raw values.
+ * <p>
+ * Not thread safe, callers are expected to synchronize.
+ */
+public class SampleSeries {
+
+    private final int capacity;
+    private final double[] values;
+    // prefix sums and NaN counts, one more slot than values so both
+    // ends of a full window are available
+    private final double[] sums;
+    private final int[] nans;
+    private long total = 0;
+
+    public SampleSeries(int _capacity) {
+        if (_capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + _capacity);
+        }
+        capacity = _capacity;
+        values = new double[_capacity];
+        sums = new double[_capacity + 1];
+        nans = new int[_capacity + 1];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of samples held, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(total, capacity);
+    }
+
+    public void clear() {
+        total = 0;
+        sums[0] = 0.0;
+        nans[0] = 0;
+    }
+
+    public void add(double _v) {
+        values[(int) (total % capacity)] = _v;
+        accumulate(total, _v);
+        total++;
+        if (total % capacity == 0) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        int n = size();
+        long first = total - n;
+        int slot = (int) (first % (capacity + 1));
+        sums[slot] = 0.0;
+        nans[slot] = 0;
+        for (long k = first; k < total; k++) {
+            accumulate(k, values[(int) (k % capacity)]);
+        }
+    }
+
+    // extends the prefix sums past the k-th sample ever added
+    private void accumulate(long _k, double _v) {
+        int prev = (int) (_k % (capacity + 1));
+        int next = (int) ((_k + 1) % (capacity + 1));
+        if (Double.isNaN(_v)) {
+            sums[next] = sums[prev];
+            nans[next] = nans[prev] + 1;
+        } else {
+            sums[next] = sums[prev] + _v;
+            nans[next] = nans[prev];
+        }
+    }
+
+    /**
+     * @param _age 0 for the newest sample
+     */
+    public double get(int _age) {
+        if (_age < 0 || _age >= size()) {
+            throw new IndexOutOfBoundsException("age " + _age + " size " + size());
+        }
+        return values[(int) ((total - 1 - _age) % capacity)];
+    }
+
+    /**
+     * @return the sum of the newest n samples, NaN if any of them is NaN
+     */
+    public double sum(int _n) {
+        checkRange(_n);
+        int to = (int) (total % (capacity + 1));
+        int from = (int) ((total - _n) % (capacity + 1));
+        if (nans[to] != nans[from]) {
+            return Double.NaN;
+        }
+        return sums[to] - sums[from];
+    }
+
+    /**
+     * @return the mean of the newest n samples, NaN if any of them is NaN
+     */
+    public double mean(int _n) {
+        return sum(_n) / _n;
+    }
+
+    private void checkRange(int _n) {
+        if (_n < 1 || _n > size()) {
+            throw new IndexOutOfBoundsException("n " + _n + " size " + size());
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+/**
+ * A bounded, direct mapped cache of Strings keyed by their character content.
+ * <p>
+ * The same EPCs are reported over and over again by the sensors, so
+ * looking them up by the raw characters handed out by the JSON parser
+ * avoids allocating a new String for every read. When two values collide
+ * on the same slot the newer one simply replaces the older one, which
+ * keeps the memory use fixed no matter how many distinct values are seen.
+ * <p>
+ * Not thread safe, intended to be owned by a single parsing thread.
+ */
+public class StringCache {
+
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    private final String[] slots;
+    private final int mask;
+    private long hits;
+    private long misses;
+
+    public StringCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public StringCache(int _size) {
+        int n = 1;
+        while (n < _size) {
+            n <<= 1;
+        }
+        slots = new String[n];
+        mask = n - 1;
+    }
+
+    public String intern(char[] _chars, int _offset, int _len) {
+        int h = 0;
+        for (int i = _offset; i < _offset + _len; i++) {
+            h = 31 * h + _chars[i];
+        }
+        // spread the higher bits down, same as HashMap
+        int idx = (h ^ (h >>> 16)) & mask;
+        String s = slots[idx];
+        if (s != null && s.hashCode() == h && matches(s, _chars, _offset, _len)) {
+            hits++;
+            return s;
+        }
+        misses++;
+        s = new String(_chars, _offset, _len);
+        slots[idx] = s;
+        return s;
+    }
+
+    private static boolean matches(String _s, char[] _chars, int _offset, int _len) {
+        if (_s.length() != _len) {
+            return false;
+        }
+        for (int i = 0; i < _len; i++) {
+            if (_s.charAt(i) != _chars[_offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+}
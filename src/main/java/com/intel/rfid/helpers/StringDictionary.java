@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps a small set of frequently repeated Strings (aliases, device ids,
+ * facility ids) to dense int codes so they can be stored as primitives and
+ * each distinct value is held in memory only once.
+ * <p>
+ * Codes are never reused or removed, so this is only intended for values
+ * with a naturally bounded number of distinct entries. Encoding an existing
+ * value and decoding never lock.
+ */
+public class StringDictionary {
+
+    public static final int NULL_CODE = -1;
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private int size = 0;
+
+    public int encode(String _s) {
+        if (_s == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(_s);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(_s);
+            if (code == null) {
+                String[] v = values;
+                if (size == v.length) {
+                    v = Arrays.copyOf(v, v.length * 2);
+                }
+                code = size;
+                v[size++] = _s;
+                // publish the array before the code can be seen by anyone
+                values = v;
+                codes.put(_s, code);
+            }
+            return code;
+        }
+    }
+
+    public String decode(int _code) {
+        if (_code == NULL_CODE) {
+            return null;
+        }
+        return values[_code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel: items scheduled for a deadline are kept in the
+ * slot for the tick the deadline falls in, so scheduling is O(1) and
+ * expiring only looks at the slots for the ticks that have gone by since
+ * the last time and the current one. Expiring when nothing is scheduled
+ * costs nothing.
+ * <p>
+ * Deadlines further out than one turn of the wheel share a slot with
+ * nearer ones and are left there until their turn comes around. Items
+ * expire on the first call to expire at or after their deadline. Items
+ * cannot be cancelled, callers are expected to check on expiry whether
+ * the item is still wanted.
+ * <p>
+ * Not thread safe, callers are expected to synchronize.
+ */
+public class TimerWheel<T> {
+
+    private static class Timer<T> {
+        private final long deadline;
+        private final T item;
+
+        private Timer(long _deadline, T _item) {
+            deadline = _deadline;
+            item = _item;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timer<T>>> slots;
+    // the last tick that has been expired completely
+    private long expiredTick;
+    private int size = 0;
+
+    /**
+     * @param _numSlots rounded up to a power of two
+     * @param _now      the time from which ticks are expired
+     */
+    public TimerWheel(long _tickMillis, int _numSlots, long _now) {
+        if (_tickMillis < 1) {
+            throw new IllegalArgumentException("tick must be positive: " + _tickMillis);
+        }
+        if (_numSlots < 1) {
+            throw new IllegalArgumentException("number of slots must be positive: " + _numSlots);
+        }
+        tickMillis = _tickMillis;
+        int n = Integer.highestOneBit(_numSlots);
+        if (n < _numSlots) {
+            n <<= 1;
+        }
+        mask = n - 1;
+        slots = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            slots.add(new ArrayList<>());
+        }
+        expiredTick = _now / tickMillis - 1;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void schedule(T _item, long _deadline) {
+        // a deadline in a tick already expired goes in the next one
+        long tick = Math.max(_deadline / tickMillis, expiredTick + 1);
+        slots.get((int) (tick & mask)).add(new Timer<>(_deadline, _item));
+        size++;
+    }
+
+    /**
+     * Removes the items with a deadline at or before now and passes them
+     * to the action in no particular order.
+     */
+    public void expire(long _now, Consumer<T> _action) {
+        long currentTick = _now / tickMillis;
+        if (size > 0) {
+            // the current tick is looked at but only completed ones are
+            // done with, past one full turn every slot has been gone by
+            long numTicks = Math.min(currentTick - expiredTick, slots.size());
+            for (long t = expiredTick + 1; t <= expiredTick + numTicks; t++) {
+                expireSlot(slots.get((int) (t & mask)), _now, _action);
+            }
+        }
+        expiredTick = Math.max(expiredTick, currentTick - 1);
+    }
+
+    private void expireSlot(List<Timer<T>> _slot, long _now, Consumer<T> _action) {
+        int kept = 0;
+        for (int i = 0; i < _slot.size(); i++) {
+            Timer<T> timer = _slot.get(i);
+            if (timer.deadline <= _now) {
+                size--;
+                _action.accept(timer.item);
+            } else {
+                _slot.set(kept++, timer);
+            }
+        }
+        _slot.subList(kept, _slot.size()).clear();
+    }
+
+    public void clear() {
+        for (List<Timer<T>> slot : slots) {
+            slot.clear();
+        }
+        size = 0;
+    }
+
+    /**
+     * Clears the wheel and starts expiring ticks from the given time,
+     * i.e. after switching to a different clock.
+     */
+    public void reset(long _now) {
+        clear();
+        expiredTick = _now / tickMillis - 1;
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A clock in epoch millis that only moves when it is told to, for running
+ * recorded data through time dependent code faster (or slower) than it
+ * was recorded. It never goes backwards.
+ */
+public class VirtualClock implements LongSupplier {
+
+    private volatile long now;
+
+    public VirtualClock(long _now) {
+        now = _now;
+    }
+
+    @Override
+    public long getAsLong() {
+        return now;
+    }
+
+    /**
+     * Moves the clock forward to the given time, earlier times are ignored.
+     */
+    public synchronized void advanceTo(long _time) {
+        if (_time > now) {
+            now = _time;
+        }
+    }
+
+}
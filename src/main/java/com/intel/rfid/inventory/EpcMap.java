@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.EpcKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A map keyed by EPC that stores packed EpcKeys in parallel primitive
+ * arrays with open addressing (linear probing), so an entry costs no more
+ * than its slots and a lookup hashes and compares two longs rather than
+ * the characters of the EPC String. Lookups by String pack the characters
+ * as they go and create nothing, lookups by an EPC already packed (i.e. by
+ * the InventoryDataParser) skip even that.
+ * <p>
+ * EPCs that do not pack are kept in an ordinary HashMap on the side.
+ * Iteration is in no particular order, sorting is up to the caller.
+ * <p>
+ * Not thread safe, callers are expected to synchronize.
+ */
+public class EpcMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] highs;
+    private long[] lows;
+    // 0 marks an empty slot, packed EPCs are never empty
+    private byte[] lengths;
+    private Object[] values;
+    private int numPacked = 0;
+    private int resizeAt;
+    private final Map<String, V> unpacked = new HashMap<>();
+
+    public EpcMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int _capacity) {
+        highs = new long[_capacity];
+        lows = new long[_capacity];
+        lengths = new byte[_capacity];
+        values = new Object[_capacity];
+        resizeAt = _capacity / 4 * 3;
+    }
+
+    public int size() {
+        return numPacked + unpacked.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // the slot holding the key, or the complement of the empty slot that ends the probe
+    private int find(long _high, long _low, int _length) {
+        int mask = lengths.length - 1;
+        int i = EpcKey.hash(_high, _low, _length) & mask;
+        while (lengths[i] != 0) {
+            if (lengths[i] == _length && highs[i] == _high && lows[i] == _low) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    /**
+     * Looks up a packed EPC, see EpcKey.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long _high, long _low, int _length) {
+        int i = find(_high, _low, _length);
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(String _epc) {
+        if (!EpcKey.isPackable(_epc)) {
+            return unpacked.get(_epc);
+        }
+        int i = find(EpcKey.high(_epc), EpcKey.low(_epc), _epc.length());
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    /**
+     * @return the value previously mapped to the EPC, if any
+     */
+    @SuppressWarnings("unchecked")
+    public V put(String _epc, V _value) {
+        if (!EpcKey.isPackable(_epc)) {
+            return unpacked.put(_epc, _value);
+        }
+        long high = EpcKey.high(_epc);
+        long low = EpcKey.low(_epc);
+        int length = _epc.length();
+        int i = find(high, low, length);
+        if (i >= 0) {
+            V prev = (V) values[i];
+            values[i] = _value;
+            return prev;
+        }
+        if (numPacked >= resizeAt) {
+            grow();
+            i = find(high, low, length);
+        }
+        i = ~i;
+        highs[i] = high;
+        lows[i] = low;
+        lengths[i] = (byte) length;
+        values[i] = _value;
+        numPacked++;
+        return null;
+    }
+
+    private void grow() {
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        byte[] oldLengths = lengths;
+        Object[] oldValues = values;
+        allocate(oldLengths.length * 2);
+        for (int j = 0; j < oldLengths.length; j++) {
+            if (oldLengths[j] != 0) {
+                int i = ~find(oldHighs[j], oldLows[j], oldLengths[j]);
+                highs[i] = oldHighs[j];
+                lows[i] = oldLows[j];
+                lengths[i] = oldLengths[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * @return the value that was mapped to the EPC, if any
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(String _epc) {
+        if (!EpcKey.isPackable(_epc)) {
+            return unpacked.remove(_epc);
+        }
+        int i = find(EpcKey.high(_epc), EpcKey.low(_epc), _epc.length());
+        if (i < 0) {
+            return null;
+        }
+        V prev = (V) values[i];
+        removeAt(i);
+        return prev;
+    }
+
+    // shifts the entries after the slot back so no probe is cut short,
+    // rather than leaving tombstones that would slow down every lookup
+    private void removeAt(int _slot) {
+        int mask = lengths.length - 1;
+        int gap = _slot;
+        int j = _slot;
+        while (true) {
+            j = (j + 1) & mask;
+            if (lengths[j] == 0) {
+                break;
+            }
+            int home = EpcKey.hash(highs[j], lows[j], lengths[j]) & mask;
+            // the entry stays if its home is cyclically in (gap, j]
+            boolean stays = gap <= j ? (gap < home && home <= j) : (gap < home || home <= j);
+            if (!stays) {
+                highs[gap] = highs[j];
+                lows[gap] = lows[j];
+                lengths[gap] = lengths[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        highs[gap] = 0;
+        lows[gap] = 0;
+        lengths[gap] = 0;
+        values[gap] = null;
+        numPacked--;
+    }
+
+    public void clear() {
+        if (lengths.length > MIN_CAPACITY) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(lengths, (byte) 0);
+            Arrays.fill(values, null);
+        }
+        numPacked = 0;
+        unpacked.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> _action) {
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] != 0) {
+                _action.accept((V) values[i]);
+            }
+        }
+        for (V v : unpacked.values()) {
+            _action.accept(v);
+        }
+    }
+
+    /**
+     * @return the values in no particular order
+     */
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size());
+        forEachValue(list::add);
+        return list;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.helpers.StringHelper;
+
+import java.util.regex.Pattern;
+
+/**
+ * An EPC filter pattern (a regex where '*' also works as a wildcard)
+ * classified by shape so that the common cases can be answered from the
+ * sorted EPC indexes of the InventoryStore instead of matching every EPC.
+ * <p>
+ * A pattern that is a plain EPC is an exact lookup, a plain EPC followed
+ * by a wildcard (i.e. a company prefix or GTIN) is a prefix range, and a
+ * wildcard followed by a plain EPC is a suffix range. Anything else is
+ * matched as a regex. A null, empty or invalid pattern matches everything.
+ */
+public class EpcQuery {
+
+    public enum Shape {
+        ALL,
+        EXACT,
+        PREFIX,
+        SUFFIX,
+        REGEX
+    }
+
+    public static final EpcQuery ALL = new EpcQuery(Shape.ALL, null, null);
+
+    private static final String WILDCARD = ".*";
+
+    public final Shape shape;
+    // the plain EPC part for the exact, prefix and suffix shapes
+    public final String literal;
+    private final Pattern pattern;
+
+    private EpcQuery(Shape _shape, String _literal, Pattern _pattern) {
+        shape = _shape;
+        literal = _literal;
+        pattern = _pattern;
+    }
+
+    public static EpcQuery parse(String _filterPattern) {
+        Pattern p = StringHelper.regexWildcard(_filterPattern);
+        if (p == null) {
+            return ALL;
+        }
+        String regex = p.pattern();
+        if (regex.equals(WILDCARD)) {
+            return ALL;
+        }
+        if (isLiteral(regex, 0, regex.length())) {
+            return new EpcQuery(Shape.EXACT, regex, p);
+        }
+        if (regex.endsWith(WILDCARD) && isLiteral(regex, 0, regex.length() - WILDCARD.length())) {
+            return new EpcQuery(Shape.PREFIX, regex.substring(0, regex.length() - WILDCARD.length()), p);
+        }
+        if (regex.startsWith(WILDCARD) && isLiteral(regex, WILDCARD.length(), regex.length())) {
+            return new EpcQuery(Shape.SUFFIX, regex.substring(WILDCARD.length()), p);
+        }
+        return new EpcQuery(Shape.REGEX, null, p);
+    }
+
+    // only characters that stand for themselves in a regex
+    private static boolean isLiteral(String _s, int _from, int _to) {
+        if (_from >= _to) {
+            return false;
+        }
+        for (int i = _from; i < _to; i++) {
+            char c = _s.charAt(i);
+            if (!((c >= '0' && c <= '9') ||
+                    (c >= 'A' && c <= 'Z') ||
+                    (c >= 'a' && c <= 'z') ||
+                    c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean matches(String _epc) {
+        switch (shape) {
+            case ALL:
+                return true;
+            case EXACT:
+                return literal.equals(_epc);
+            case PREFIX:
+                return _epc.startsWith(literal);
+            case SUFFIX:
+                return _epc.endsWith(literal);
+            default:
+                return pattern.matcher(_epc).matches();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern == null ? WILDCARD : pattern.pattern();
+    }
+
+}
@@ -19,6 +19,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +45,8 @@ public class InventoryCommands implements Support {
     public static final String CMD_ID = "inventory";
 
     public static final String SNAPSHOT = "snapshot";
+    public static final String EXPORT = "export";
+    public static final String IMPORT = "import";
     public static final String SUMMARY = "summary";
     public static final String DETAIL = "detail";
     public static final String EXITING = "exiting";
@@ -67,7 +71,7 @@ public class InventoryCommands implements Support {
                         new ArgumentCompleter(
                                 new StringsCompleter(CMD_ID),
                                 new StringsCompleter(SUMMARY, DETAIL, EXITING,
-                                                     UNLOAD, SNAPSHOT),
+                                                     UNLOAD, SNAPSHOT, EXPORT, IMPORT),
                                 new NullCompleter()
                         )
                 )
@@ -137,6 +141,14 @@ public class InventoryCommands implements Support {
         _out.indent(0, "> " + CMD_ID + " " + SNAPSHOT);
         _out.indent(1, "Writes a snapshot of the current inventory to file");
         _out.blank();
+        _out.indent(0, "> " + CMD_ID + " " + EXPORT + " [ file ]");
+        _out.indent(1, "Writes the current inventory in the JSON cache format");
+        _out.indent(1, "Default file is " + InventoryManager.CACHE_PATH);
+        _out.blank();
+        _out.indent(0, "> " + CMD_ID + " " + IMPORT + " [ file ]");
+        _out.indent(1, "Adds the tags from a file in the JSON cache format to the inventory");
+        _out.indent(1, "Default file is " + InventoryManager.CACHE_PATH);
+        _out.blank();
         _out.indent(0, "> " + CMD_ID + " " + UNLOAD);
         _out.indent(1, "!! WARNING !! WARNING !! WARNING !! WARNING !! WARNING !! WARNING !! WARNING !! ");
         _out.indent(1, "Clears all tag reads from the controller including the cached file. No recovery available");
@@ -211,6 +223,13 @@ public class InventoryCommands implements Support {
                 String snapPath = mgr.snapshot();
                 _out.println(SNAPSHOT + ": " + snapPath);
                 break;
+            case EXPORT:
+                _out.line(EXPORT + ": " + mgr.exportCache(nextPathOrCache(_argIter)));
+                break;
+            case IMPORT:
+                Path importPath = nextPathOrCache(_argIter);
+                _out.line(IMPORT + ": " + mgr.importCache(importPath) + " tags from " + importPath);
+                break;
             case UNLOAD:
                 mgr.unload();
                 _out.line("unload complete");
@@ -331,6 +350,11 @@ public class InventoryCommands implements Support {
         }
     }
 
+    private Path nextPathOrCache(ArgumentIterator _argIter) throws SyntaxException {
+        String s = nextOrNull(_argIter);
+        return s == null ? InventoryManager.CACHE_PATH : Paths.get(s);
+    }
+
     private String nextOrNull(ArgumentIterator _argIter) throws SyntaxException {
         if (_argIter.hasNext()) {
             return _argIter.next();
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Running counts of the tags in an inventory by state and by how long ago
+ * they were last read, so that a summary never has to visit the tags.
+ * <p>
+ * The store adds and removes tags and relays the state and last read
+ * changes each tag reports. Last read times are indexed in bins of BIN_MILLIS
+ * and a tag only moves bins once per bin width no matter how often it is
+ * read. A summary is the cost of walking the occupied bins, and the
+ * TimeBucket a tag is counted in may be off by up to one bin width.
+ * <p>
+ * All updates are lock free, counts read while tags are changing are
+ * not guaranteed to be an exact point in time.
+ */
+public class InventoryCounters implements Tag.Observer {
+
+    public static final long BIN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final TagState[] STATES = TagState.values();
+    private static final TimeBucket[] BUCKETS = TimeBucket.values();
+
+    private final AtomicInteger total = new AtomicInteger(0);
+    private final AtomicIntegerArray stateCounts = new AtomicIntegerArray(STATES.length);
+    private final Map<Long, Integer> lastReadBins = new ConcurrentHashMap<>();
+
+    public void add(Tag _tag) {
+        total.incrementAndGet();
+        stateCounts.incrementAndGet(_tag.getState().ordinal());
+        addBin(binOf(_tag.getLastRead()));
+    }
+
+    public void remove(Tag _tag) {
+        total.decrementAndGet();
+        stateCounts.decrementAndGet(_tag.getState().ordinal());
+        removeBin(binOf(_tag.getLastRead()));
+    }
+
+    @Override
+    public void onStateChange(Tag _tag, TagState _from, TagState _to) {
+        stateCounts.decrementAndGet(_from.ordinal());
+        stateCounts.incrementAndGet(_to.ordinal());
+    }
+
+    @Override
+    public void onLastReadChange(Tag _tag, long _from, long _to) {
+        long from = binOf(_from);
+        long to = binOf(_to);
+        if (from != to) {
+            removeBin(from);
+            addBin(to);
+        }
+    }
+
+    @Override
+    public void onLocationChange(Tag _tag, String _fromLocation, String _fromFacility) {
+        // not counted
+    }
+
+    private static long binOf(long _time) {
+        return Math.floorDiv(_time, BIN_MILLIS);
+    }
+
+    private void addBin(long _bin) {
+        lastReadBins.merge(_bin, 1, Integer::sum);
+    }
+
+    private void removeBin(long _bin) {
+        // empty bins are dropped so the index only holds occupied bins
+        lastReadBins.computeIfPresent(_bin, (k, v) -> v == 1 ? null : v - 1);
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getCount(TagState _state) {
+        return stateCounts.get(_state.ordinal());
+    }
+
+    /**
+     * @return counts of the tags last read within each TimeBucket of
+     * the given time, indexed by TimeBucket ordinal
+     */
+    public int[] getLastReadCounts(long _now) {
+        int[] counts = new int[BUCKETS.length];
+        for (Map.Entry<Long, Integer> entry : lastReadBins.entrySet()) {
+            // age by the end of the bin so no tag reports older than it is
+            long timeDiff = _now - ((entry.getKey() + 1) * BIN_MILLIS - 1);
+            for (TimeBucket bucket : BUCKETS) {
+                if (timeDiff < bucket.millis) {
+                    counts[bucket.ordinal()] += entry.getValue();
+                    break;
+                }
+            }
+        }
+        return counts;
+    }
+
+}
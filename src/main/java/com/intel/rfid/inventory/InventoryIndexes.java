@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tags in an inventory grouped by facility, by location alias, by
+ * state and by the hour they were last read in, so the tags in one zone
+ * or state, or not read since some time, are found in time proportional
+ * to the result rather than by visiting the whole inventory.
+ * <p>
+ * Like InventoryCounters, the store adds and removes tags and relays the
+ * state and location changes each tag reports. Groups are concurrent sets
+ * that are created on first use and dropped once empty.
+ */
+public class InventoryIndexes implements Tag.Observer {
+
+    private static final TagState[] STATES = TagState.values();
+
+    private final Map<String, Set<Tag>> byFacility = new ConcurrentHashMap<>();
+    private final Map<String, Set<Tag>> byLocation = new ConcurrentHashMap<>();
+    private final List<Set<Tag>> byState = new ArrayList<>();
+    // most reads stay in the bucket the tag is already in, so keeping
+    // this up to date costs next to nothing on the read path
+    public static final long READ_BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private final ConcurrentSkipListMap<Long, Set<Tag>> byLastRead = new ConcurrentSkipListMap<>();
+
+    public InventoryIndexes() {
+        for (int i = 0; i < STATES.length; i++) {
+            byState.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public void add(Tag _tag) {
+        addTo(byFacility, _tag.getFacility(), _tag);
+        addTo(byLocation, _tag.getLocation(), _tag);
+        byState.get(_tag.getState().ordinal()).add(_tag);
+        addTo(byLastRead, readBucket(_tag.getLastRead()), _tag);
+    }
+
+    public void remove(Tag _tag) {
+        removeFrom(byFacility, _tag.getFacility(), _tag);
+        removeFrom(byLocation, _tag.getLocation(), _tag);
+        byState.get(_tag.getState().ordinal()).remove(_tag);
+        removeFrom(byLastRead, readBucket(_tag.getLastRead()), _tag);
+    }
+
+    @Override
+    public void onStateChange(Tag _tag, TagState _from, TagState _to) {
+        byState.get(_from.ordinal()).remove(_tag);
+        byState.get(_to.ordinal()).add(_tag);
+    }
+
+    @Override
+    public void onLastReadChange(Tag _tag, long _from, long _to) {
+        long from = readBucket(_from);
+        long to = readBucket(_to);
+        if (from != to) {
+            removeFrom(byLastRead, from, _tag);
+            addTo(byLastRead, to, _tag);
+        }
+    }
+
+    private static long readBucket(long _lastRead) {
+        return Math.floorDiv(_lastRead, READ_BUCKET_MILLIS);
+    }
+
+    @Override
+    public void onLocationChange(Tag _tag, String _fromLocation, String _fromFacility) {
+        removeFrom(byLocation, _fromLocation, _tag);
+        addTo(byLocation, _tag.getLocation(), _tag);
+        if (!Objects.equals(_fromFacility, _tag.getFacility())) {
+            removeFrom(byFacility, _fromFacility, _tag);
+            addTo(byFacility, _tag.getFacility(), _tag);
+        }
+    }
+
+    // compute keeps the create / drop of a group atomic with the change to it
+    private static <K> void addTo(Map<K, Set<Tag>> _index, K _key, Tag _tag) {
+        if (_key == null) {
+            return;
+        }
+        _index.compute(_key, (k, tags) -> {
+            if (tags == null) {
+                tags = ConcurrentHashMap.newKeySet();
+            }
+            tags.add(_tag);
+            return tags;
+        });
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Tag>> _index, K _key, Tag _tag) {
+        if (_key == null) {
+            return;
+        }
+        _index.computeIfPresent(_key, (k, tags) -> {
+            tags.remove(_tag);
+            return tags.isEmpty() ? null : tags;
+        });
+    }
+
+    /**
+     * @return the tags in the facility sorted by EPC
+     */
+    public List<Tag> getByFacility(String _facility) {
+        return _facility == null ? Collections.emptyList() : sorted(byFacility.get(_facility));
+    }
+
+    /**
+     * @return the tags at the location alias sorted by EPC
+     */
+    public List<Tag> getByLocation(String _location) {
+        return _location == null ? Collections.emptyList() : sorted(byLocation.get(_location));
+    }
+
+    /**
+     * @return the tags in the state sorted by EPC
+     */
+    public List<Tag> getByState(TagState _state) {
+        return sorted(byState.get(_state.ordinal()));
+    }
+
+    /**
+     * @return up to _max of the tags last read before the given time, the
+     * oldest buckets first. Only the bucket the time falls in has tags
+     * that were read after it.
+     */
+    public List<Tag> getReadBefore(long _time, int _max) {
+        List<Tag> tags = new ArrayList<>();
+        for (Set<Tag> bucket : byLastRead.headMap(readBucket(_time), true).values()) {
+            for (Tag tag : bucket) {
+                if (tag.getLastRead() < _time) {
+                    tags.add(tag);
+                    if (tags.size() == _max) {
+                        return tags;
+                    }
+                }
+            }
+        }
+        return tags;
+    }
+
+    public Set<String> getFacilities() {
+        return new TreeSet<>(byFacility.keySet());
+    }
+
+    public Set<String> getLocations() {
+        return new TreeSet<>(byLocation.keySet());
+    }
+
+    private static List<Tag> sorted(Set<Tag> _tags) {
+        if (_tags == null) {
+            return Collections.emptyList();
+        }
+        List<Tag> tags = new ArrayList<>(_tags);
+        Collections.sort(tags);
+        return tags;
+    }
+
+}
@@ -0,0 +1,691 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary persistence of the inventory as a write ahead log of tag changes
+ * that is periodically compacted into a snapshot.
+ * <p>
+ * Each change is appended as a record holding the full persisted state of
+ * the tag (the same fields as Tag.Cached) to the current log segment.
+ * Compaction starts a new segment, writes every tag in the store to a new
+ * snapshot that records the first segment it does not cover, then deletes
+ * the covered segments. Restore loads the snapshot through a memory
+ * mapping and replays the remaining segments in order.
+ * <p>
+ * Records are framed with their length and a CRC so a torn write at the end
+ * of a segment after a crash is detected and ignored. Repeated strings
+ * (locations, device ids, facilities) are written once per file and
+ * referenced by index after that.
+ */
+public class InventoryJournal {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    public static final String SNAPSHOT_FILE = "inventory_snapshot.bin";
+    public static final String SEGMENT_PREFIX = "inventory_journal_";
+    public static final String SEGMENT_SUFFIX = ".wal";
+
+    private static final int MAGIC = 0x52535049;
+    private static final int VERSION = 1;
+
+    private static final byte REC_PUT = 1;
+    private static final byte REC_REMOVE = 2;
+
+    private static final TagState[] STATES = TagState.values();
+
+    private final Path dir;
+    private final Object compactLock = new Object();
+
+    private long segment = -1;
+    private FileOutputStream segmentFile;
+    private RecordWriter segmentWriter;
+
+    public InventoryJournal(Path _dir) {
+        dir = _dir;
+    }
+
+    public Path getSnapshotPath() {
+        return dir.resolve(SNAPSHOT_FILE);
+    }
+
+    public Path getSegmentPath(long _segment) {
+        return dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, _segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return true if there is a snapshot or any log segment to restore from
+     */
+    public boolean exists() {
+        return Files.exists(getSnapshotPath()) || !listSegments().isEmpty();
+    }
+
+    /**
+     * Starts a new log segment following any existing segments.
+     * Any restore must happen before this is called.
+     */
+    public synchronized void open() throws IOException {
+        if (segmentWriter != null) {
+            return;
+        }
+        List<Long> segments = listSegments();
+        long next = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        openSegment(next);
+    }
+
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    public synchronized boolean isOpen() {
+        return segmentWriter != null;
+    }
+
+    private void openSegment(long _segment) throws IOException {
+        segmentFile = new FileOutputStream(getSegmentPath(_segment).toFile(), true);
+        segmentWriter = new RecordWriter(new BufferedOutputStream(segmentFile, 64 * 1024));
+        segment = _segment;
+    }
+
+    private void closeSegment() {
+        if (segmentWriter == null) {
+            return;
+        }
+        try {
+            segmentWriter.out.flush();
+            segmentFile.getFD().sync();
+            segmentWriter.out.close();
+        } catch (IOException e) {
+            log.error("failed closing {}: {}", getSegmentPath(segment), e.getMessage());
+        }
+        segmentWriter = null;
+        segmentFile = null;
+    }
+
+    private void rollover() throws IOException {
+        long next = segment + 1;
+        closeSegment();
+        openSegment(next);
+    }
+
+    public synchronized void append(Tag _tag) {
+        if (segmentWriter == null) {
+            return;
+        }
+        try {
+            segmentWriter.writePut(_tag.getEPC(), _tag.getTID(), _tag.getState(),
+                                   _tag.getLocation(), _tag.getDeviceLocation(),
+                                   _tag.getFacility(), _tag.getLastRead());
+        } catch (IOException e) {
+            onAppendError(e);
+        }
+    }
+
+    public synchronized void appendRemove(String _epc) {
+        if (segmentWriter == null) {
+            return;
+        }
+        try {
+            segmentWriter.writeRemove(_epc);
+        } catch (IOException e) {
+            onAppendError(e);
+        }
+    }
+
+    private void onAppendError(IOException _e) {
+        log.error("failed appending to {}: {}", getSegmentPath(segment), _e.getMessage());
+        // the string table may now be ahead of the file, so continue
+        // in a new segment rather than write records that can't be read
+        try {
+            rollover();
+        } catch (IOException e) {
+            log.error("failed starting a new journal segment: {}", e.getMessage());
+            segmentWriter = null;
+        }
+    }
+
+    /**
+     * Pushes buffered records to the OS and forces them to disk,
+     * this bounds how much is lost on a power failure.
+     * Only the push holds the journal lock, appends continue during the
+     * sync which can take a long time on slow storage.
+     */
+    public void flush() {
+        FileOutputStream file;
+        long flushed;
+        synchronized (this) {
+            if (segmentWriter == null) {
+                return;
+            }
+            try {
+                segmentWriter.out.flush();
+            } catch (IOException e) {
+                log.error("failed flushing {}: {}", getSegmentPath(segment), e.getMessage());
+                return;
+            }
+            file = segmentFile;
+            flushed = segment;
+        }
+        try {
+            file.getFD().sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                // a segment closed in the meantime was synced by closeSegment
+                if (file == segmentFile) {
+                    log.error("failed syncing {}: {}", getSegmentPath(flushed), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store and drops the log segments it covers.
+     * Appends continue into a new segment while the snapshot is written.
+     *
+     * @return the number of tags in the snapshot
+     */
+    public int compact(InventoryStore _store) throws IOException {
+        synchronized (compactLock) {
+            long firstUncovered;
+            synchronized (this) {
+                if (segmentWriter == null) {
+                    throw new IOException("journal is not open");
+                }
+                rollover();
+                firstUncovered = segment;
+            }
+
+            Path tmpPath = dir.resolve(SNAPSHOT_FILE + ".tmp");
+            int[] count = {0};
+            try (FileOutputStream fos = new FileOutputStream(tmpPath.toFile())) {
+                RecordWriter writer = new RecordWriter(new BufferedOutputStream(fos, 256 * 1024));
+                writer.writeHeader(firstUncovered);
+                IOException[] failure = {null};
+                _store.forEach(tag -> {
+                    if (failure[0] != null) { return; }
+                    try {
+                        writer.writePut(tag.getEPC(), tag.getTID(), tag.getState(),
+                                        tag.getLocation(), tag.getDeviceLocation(),
+                                        tag.getFacility(), tag.getLastRead());
+                        count[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                writer.out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmpPath, getSnapshotPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            for (long s : listSegments()) {
+                if (s < firstUncovered) {
+                    Files.deleteIfExists(getSegmentPath(s));
+                }
+            }
+            return count[0];
+        }
+    }
+
+    /**
+     * Deletes the snapshot and all log segments, and starts over
+     * with an empty segment if the journal was open.
+     */
+    public void reset() throws IOException {
+        synchronized (compactLock) {
+            synchronized (this) {
+                boolean wasOpen = segmentWriter != null;
+                closeSegment();
+                for (long s : listSegments()) {
+                    Files.deleteIfExists(getSegmentPath(s));
+                }
+                Files.deleteIfExists(getSnapshotPath());
+                if (wasOpen) {
+                    openSegment(0);
+                }
+            }
+        }
+    }
+
+    public interface Visitor {
+        /**
+         * The Cached instance is reused between calls.
+         */
+        void onPut(Tag.Cached _ct);
+
+        void onRemove(String _epc);
+    }
+
+    /**
+     * Replays the snapshot and then the log segments in order.
+     * Segments already covered by the snapshot are deleted.
+     *
+     * @return the number of records visited
+     */
+    public int replay(Visitor _visitor) throws IOException {
+        return readFiles((reader, path) -> reader.readAll(() -> reader.readRecord(_visitor), path));
+    }
+
+    /**
+     * Scans the snapshot and the log segments into an index without
+     * creating any tags, see InventoryJournalIndex. Segments already
+     * covered by the snapshot are deleted.
+     */
+    public InventoryJournalIndex index() throws IOException {
+        InventoryJournalIndex index = new InventoryJournalIndex();
+        readFiles((reader, path) -> {
+            int fileIdx = index.addFile(reader.buf);
+            return reader.readAll(() -> reader.indexRecord(index, fileIdx), path);
+        });
+        return index;
+    }
+
+    private interface FileReader {
+        int read(RecordReader _reader, Path _path);
+    }
+
+    private interface RecordHandler {
+        void onRecord();
+    }
+
+    private int readFiles(FileReader _fileReader) throws IOException {
+        int numRecords = 0;
+        long firstUncovered = 0;
+        Path snapPath = getSnapshotPath();
+        if (Files.exists(snapPath)) {
+            RecordReader reader = new RecordReader(map(snapPath));
+            firstUncovered = reader.readHeader();
+            numRecords += _fileReader.read(reader, snapPath);
+        }
+        for (long s : listSegments()) {
+            Path segPath = getSegmentPath(s);
+            if (s < firstUncovered) {
+                Files.deleteIfExists(segPath);
+                continue;
+            }
+            numRecords += _fileReader.read(new RecordReader(map(segPath)), segPath);
+        }
+        return numRecords;
+    }
+
+    /**
+     * Restores the journal into the store. A record for a tag already in
+     * the store replaces it, keeping the later of the two last read times
+     * since reads are not journaled.
+     *
+     * @return the number of tags in the store afterwards
+     */
+    public int restore(InventoryStore _store) throws IOException {
+        replay(new Visitor() {
+            @Override
+            public void onPut(Tag.Cached _ct) {
+                Tag prev = _store.get(_ct.epc);
+                if (prev != null && prev.getLastRead() > _ct.lastRead) {
+                    _ct.lastRead = prev.getLastRead();
+                }
+                _store.put(Tag.fromCached(_ct));
+            }
+
+            @Override
+            public void onRemove(String _epc) {
+                _store.remove(_epc);
+            }
+        });
+        return _store.size();
+    }
+
+    private static ByteBuffer map(Path _path) throws IOException {
+        try (FileChannel fc = FileChannel.open(_path, StandardOpenOption.READ)) {
+            if (fc.size() == 0) {
+                return ByteBuffer.allocate(0);
+            }
+            return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                               name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("ignoring unexpected journal file {}", p);
+                }
+            }
+        } catch (IOException e) {
+            log.error("failed listing journal segments in {}: {}", dir, e.getMessage());
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    static int getVarInt(ByteBuffer _buf) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = _buf.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    static String getString(ByteBuffer _buf) {
+        int n = getVarInt(_buf);
+        if (n == 0) {
+            return null;
+        }
+        byte[] b = new byte[n - 1];
+        _buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes framed records: varint payload length, payload, CRC32 of the payload.
+     */
+    protected static class RecordWriter {
+
+        protected final OutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final CRC32 crc = new CRC32();
+        private byte[] buf = new byte[256];
+        private int len;
+
+        protected RecordWriter(OutputStream _out) {
+            out = _out;
+        }
+
+        protected void writeHeader(long _firstUncovered) throws IOException {
+            len = 0;
+            putInt(MAGIC);
+            putInt(VERSION);
+            putLong(_firstUncovered);
+            out.write(buf, 0, len);
+        }
+
+        protected void writePut(String _epc, String _tid, TagState _state,
+                                String _location, String _deviceLocation,
+                                String _facility, long _lastRead) throws IOException {
+            len = 0;
+            put(REC_PUT);
+            putString(_epc);
+            putString(_tid);
+            put((byte) _state.ordinal());
+            putRef(_location);
+            putRef(_deviceLocation);
+            putRef(_facility);
+            putLong(_lastRead);
+            frame();
+        }
+
+        protected void writeRemove(String _epc) throws IOException {
+            len = 0;
+            put(REC_REMOVE);
+            putString(_epc);
+            frame();
+        }
+
+        private void frame() throws IOException {
+            crc.reset();
+            crc.update(buf, 0, len);
+            int payloadLen = len;
+            // length prefix goes in front, crc behind, using the tail of the buffer
+            putVarInt(payloadLen);
+            int prefixLen = len - payloadLen;
+            out.write(buf, payloadLen, prefixLen);
+            out.write(buf, 0, payloadLen);
+            len = 0;
+            putInt((int) crc.getValue());
+            out.write(buf, 0, len);
+        }
+
+        private void ensure(int _n) {
+            if (len + _n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + _n));
+            }
+        }
+
+        private void put(byte _b) {
+            ensure(1);
+            buf[len++] = _b;
+        }
+
+        private void putInt(int _v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[len++] = (byte) (_v >>> shift);
+            }
+        }
+
+        private void putLong(long _v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[len++] = (byte) (_v >>> shift);
+            }
+        }
+
+        private void putVarInt(int _v) {
+            ensure(5);
+            while ((_v & ~0x7F) != 0) {
+                buf[len++] = (byte) ((_v & 0x7F) | 0x80);
+                _v >>>= 7;
+            }
+            buf[len++] = (byte) _v;
+        }
+
+        // 0 is null, otherwise the byte length + 1
+        private void putString(String _s) {
+            if (_s == null) {
+                putVarInt(0);
+                return;
+            }
+            byte[] b = _s.getBytes(StandardCharsets.UTF_8);
+            putVarInt(b.length + 1);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        // 0 is null, 1..n refers to a string already written to this file,
+        // n + 1 defines the next string which follows inline
+        private void putRef(String _s) {
+            if (_s == null) {
+                putVarInt(0);
+                return;
+            }
+            Integer idx = strings.get(_s);
+            if (idx != null) {
+                putVarInt(idx + 1);
+                return;
+            }
+            putVarInt(strings.size() + 1);
+            putString(_s);
+            strings.put(_s, strings.size());
+        }
+    }
+
+    protected class RecordReader {
+
+        private final ByteBuffer buf;
+        private final List<String> strings = new ArrayList<>();
+        private final CRC32 crc = new CRC32();
+        private final Tag.Cached ct = new Tag.Cached();
+        private byte[] scratch = new byte[64];
+
+        protected RecordReader(ByteBuffer _buf) {
+            buf = _buf;
+        }
+
+        protected long readHeader() throws IOException {
+            if (buf.remaining() < 16 || buf.getInt() != MAGIC) {
+                throw new IOException("not an inventory snapshot");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported inventory snapshot version " + version);
+            }
+            return buf.getLong();
+        }
+
+        /**
+         * Visits records until the end of the buffer, or until a
+         * record that is incomplete or fails its CRC check.
+         */
+        protected int readAll(RecordHandler _handler, Path _path) {
+            int numRecords = 0;
+            while (buf.hasRemaining()) {
+                int start = buf.position();
+                try {
+                    int payloadLen = getVarInt();
+                    if (payloadLen <= 0 || payloadLen > buf.remaining() - 4) {
+                        log.warn("truncated record in {} at {}", _path, start);
+                        break;
+                    }
+                    crc.reset();
+                    ByteBuffer payload = buf.slice();
+                    payload.limit(payloadLen);
+                    crc.update(payload);
+                    int payloadStart = buf.position();
+                    buf.position(payloadStart + payloadLen);
+                    if ((int) crc.getValue() != buf.getInt()) {
+                        log.warn("corrupt record in {} at {}", _path, start);
+                        break;
+                    }
+                    buf.position(payloadStart);
+                    _handler.onRecord();
+                    buf.position(payloadStart + payloadLen + 4);
+                    numRecords++;
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    log.warn("unreadable record in {} at {}", _path, start);
+                    break;
+                }
+            }
+            return numRecords;
+        }
+
+        protected void readRecord(Visitor _visitor) {
+            byte type = buf.get();
+            switch (type) {
+                case REC_PUT:
+                    ct.epc = getString();
+                    ct.tid = getString();
+                    ct.state = STATES[buf.get()];
+                    ct.location = getRef();
+                    ct.deviceLocation = getRef();
+                    ct.facility = getRef();
+                    ct.lastRead = buf.getLong();
+                    _visitor.onPut(ct);
+                    break;
+                case REC_REMOVE:
+                    _visitor.onRemove(getString());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown record type " + type);
+            }
+        }
+
+        // same as readRecord for a put, except the epc and tid are left in
+        // the buffer for the index to decode when the tag is materialized
+        protected void indexRecord(InventoryJournalIndex _index, int _fileIdx) {
+            byte type = buf.get();
+            int epcPos = buf.position();
+            int epcLen = getVarInt() - 1;
+            if (epcLen < 0) {
+                throw new IllegalArgumentException("record without an epc");
+            }
+            int hash = InventoryJournalIndex.hash(buf, buf.position(), epcLen);
+            buf.position(buf.position() + epcLen);
+            switch (type) {
+                case REC_PUT:
+                    int tidLen = getVarInt() - 1;
+                    if (tidLen > 0) {
+                        buf.position(buf.position() + tidLen);
+                    }
+                    TagState state = STATES[buf.get()];
+                    String location = getRef();
+                    String deviceLocation = getRef();
+                    String facility = getRef();
+                    _index.put(_fileIdx, epcPos, hash, state,
+                               location, deviceLocation, facility, buf.getLong());
+                    break;
+                case REC_REMOVE:
+                    _index.remove(_fileIdx, epcPos, hash);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown record type " + type);
+            }
+        }
+
+        private int getVarInt() {
+            return InventoryJournal.getVarInt(buf);
+        }
+
+        private String getString() {
+            int n = getVarInt();
+            if (n == 0) {
+                return null;
+            }
+            n--;
+            if (n > scratch.length) {
+                scratch = new byte[Math.max(n, scratch.length * 2)];
+            }
+            buf.get(scratch, 0, n);
+            return new String(scratch, 0, n, StandardCharsets.UTF_8);
+        }
+
+        private String getRef() {
+            int n = getVarInt();
+            if (n == 0) {
+                return null;
+            }
+            if (n <= strings.size()) {
+                return strings.get(n - 1);
+            }
+            if (n != strings.size() + 1) {
+                throw new IllegalArgumentException("string reference out of order " + n);
+            }
+            String s = getString();
+            strings.add(s);
+            return s;
+        }
+    }
+
+}
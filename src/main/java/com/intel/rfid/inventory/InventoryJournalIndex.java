@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The restored state of every tag in a mapped inventory journal, indexed
+ * by EPC, so that Tags can be materialized one at a time on demand.
+ * <p>
+ * Built by InventoryJournal.index() in a single pass over the mapped files.
+ * The persisted fields are kept in primitive arrays, the EPC and TID are
+ * left in the mapped buffers and only decoded when the tag is taken, so
+ * building the index creates no objects per tag. Each tag can be taken
+ * once, after which it belongs to the inventory.
+ * <p>
+ * Building is single threaded, taking is thread safe.
+ */
+public class InventoryJournalIndex {
+
+    private final List<ByteBuffer> files = new ArrayList<>();
+
+    // open addressing over the entries, holds entry + 1 with 0 as empty
+    private int[] slots = new int[1024];
+    private int size = 0;
+    private int remaining = 0;
+
+    private int[] fileIdx = new int[256];
+    private int[] epcPos = new int[256];
+    private int[] hashes = new int[256];
+    // null once removed or taken
+    private TagState[] states = new TagState[256];
+    private String[] locations = new String[256];
+    private String[] deviceLocations = new String[256];
+    private String[] facilities = new String[256];
+    private long[] lastReads = new long[256];
+
+    static int hash(ByteBuffer _buf, int _pos, int _len) {
+        int h = 0;
+        for (int i = 0; i < _len; i++) {
+            h = 31 * h + _buf.get(_pos + i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    int addFile(ByteBuffer _buf) {
+        files.add(_buf);
+        return files.size() - 1;
+    }
+
+    /**
+     * @return the number of entries still to be taken
+     */
+    public synchronized int remaining() {
+        return remaining;
+    }
+
+    /**
+     * @return the number of entries, the upper bound for the entry index
+     */
+    public int size() {
+        return size;
+    }
+
+    void put(int _fileIdx, int _epcPos, int _hash, TagState _state,
+             String _location, String _deviceLocation, String _facility, long _lastRead) {
+
+        ByteBuffer buf = files.get(_fileIdx);
+        int slot = find(buf, _epcPos, _hash);
+        int e = slots[slot] - 1;
+        if (e < 0) {
+            e = size++;
+            ensureCapacity(size);
+            slots[slot] = e + 1;
+            hashes[e] = _hash;
+            lastReads[e] = _lastRead;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+        } else if (states[e] == null) {
+            lastReads[e] = _lastRead;
+        } else {
+            // reads are not journaled so a later record may have an earlier read time
+            lastReads[e] = Math.max(lastReads[e], _lastRead);
+            remaining--;
+        }
+        fileIdx[e] = _fileIdx;
+        epcPos[e] = _epcPos;
+        states[e] = _state;
+        locations[e] = _location;
+        deviceLocations[e] = _deviceLocation;
+        facilities[e] = _facility;
+        remaining++;
+    }
+
+    void remove(int _fileIdx, int _epcPos, int _hash) {
+        int e = slots[find(files.get(_fileIdx), _epcPos, _hash)] - 1;
+        if (e >= 0 && states[e] != null) {
+            states[e] = null;
+            remaining--;
+        }
+    }
+
+    /**
+     * Takes the tag with the given EPC out of the index.
+     *
+     * @return the restored tag, null if the EPC is not in the index or was already taken
+     */
+    public synchronized Tag take(String _epc) {
+        byte[] epc = _epc.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer key = ByteBuffer.wrap(epc);
+        int h = hash(key, 0, epc.length);
+        int mask = slots.length - 1;
+        for (int slot = h & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int e = slots[slot] - 1;
+            if (hashes[e] == h && epcEquals(e, key, 0, epc.length)) {
+                return take(e, _epc);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the EPC of the entry, null if it was removed or already taken
+     */
+    public synchronized String epcAt(int _e) {
+        if (states[_e] == null) {
+            return null;
+        }
+        ByteBuffer buf = files.get(fileIdx[_e]).duplicate();
+        buf.position(epcPos[_e]);
+        return InventoryJournal.getString(buf);
+    }
+
+    /**
+     * Takes the entry out of the index using its already decoded EPC.
+     *
+     * @return the restored tag, null if the entry was removed or already taken
+     */
+    public synchronized Tag take(int _e, String _epc) {
+        if (states[_e] == null) {
+            return null;
+        }
+        ByteBuffer buf = files.get(fileIdx[_e]).duplicate();
+        buf.position(epcPos[_e]);
+        // skip the epc, the tid follows it
+        int epcLen = InventoryJournal.getVarInt(buf) - 1;
+        buf.position(buf.position() + epcLen);
+
+        Tag.Cached ct = new Tag.Cached();
+        ct.epc = _epc;
+        ct.tid = InventoryJournal.getString(buf);
+        ct.state = states[_e];
+        ct.location = locations[_e];
+        ct.deviceLocation = deviceLocations[_e];
+        ct.facility = facilities[_e];
+        ct.lastRead = lastReads[_e];
+
+        states[_e] = null;
+        locations[_e] = null;
+        deviceLocations[_e] = null;
+        facilities[_e] = null;
+        remaining--;
+        return Tag.fromCached(ct);
+    }
+
+    private int find(ByteBuffer _buf, int _epcPos, int _hash) {
+        ByteBuffer key = _buf.duplicate();
+        key.position(_epcPos);
+        int len = InventoryJournal.getVarInt(key) - 1;
+        int pos = key.position();
+        int mask = slots.length - 1;
+        int slot = _hash & mask;
+        while (slots[slot] != 0) {
+            int e = slots[slot] - 1;
+            if (hashes[e] == _hash && epcEquals(e, _buf, pos, len)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean epcEquals(int _e, ByteBuffer _key, int _keyPos, int _keyLen) {
+        ByteBuffer buf = files.get(fileIdx[_e]);
+        ByteBuffer b = buf.duplicate();
+        b.position(epcPos[_e]);
+        int len = InventoryJournal.getVarInt(b) - 1;
+        if (len != _keyLen) {
+            return false;
+        }
+        int pos = b.position();
+        for (int i = 0; i < len; i++) {
+            if (buf.get(pos + i) != _key.get(_keyPos + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int _n) {
+        if (_n <= fileIdx.length) {
+            return;
+        }
+        int n = fileIdx.length * 2;
+        fileIdx = Arrays.copyOf(fileIdx, n);
+        epcPos = Arrays.copyOf(epcPos, n);
+        hashes = Arrays.copyOf(hashes, n);
+        states = Arrays.copyOf(states, n);
+        locations = Arrays.copyOf(locations, n);
+        deviceLocations = Arrays.copyOf(deviceLocations, n);
+        facilities = Arrays.copyOf(facilities, n);
+        lastReads = Arrays.copyOf(lastReads, n);
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int e = 0; e < size; e++) {
+            int slot = hashes[e] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = e + 1;
+        }
+        slots = newSlots;
+    }
+
+}
@@ -9,6 +9,7 @@ import com.intel.rfid.api.data.BooleanResult;
 import com.intel.rfid.api.data.InventorySummary;
 import com.intel.rfid.api.data.ScheduleRunState;
 import com.intel.rfid.api.data.TagInfo;
+import com.intel.rfid.api.data.TagInfoPage;
 import com.intel.rfid.api.data.TagStatsInfo;
 import com.intel.rfid.api.sensor.InventoryDataNotification;
 import com.intel.rfid.api.sensor.TagRead;
@@ -17,8 +18,9 @@ import com.intel.rfid.controller.Env;
 import com.intel.rfid.downstream.DownstreamManager;
 import com.intel.rfid.helpers.DateTimeHelper;
 import com.intel.rfid.helpers.Jackson;
-import com.intel.rfid.helpers.StringHelper;
+import com.intel.rfid.helpers.ListenerRegistry;
 import com.intel.rfid.helpers.SysStats;
+import com.intel.rfid.helpers.TimerWheel;
 import com.intel.rfid.schedule.ScheduleManager;
 import com.intel.rfid.schedule.SchedulerSummary;
 import com.intel.rfid.sensor.SensorPlatform;
@@ -41,23 +43,22 @@ import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -69,40 +70,51 @@ import static com.intel.rfid.tag.TagState.EXITING;
 import static com.intel.rfid.tag.TagState.PRESENT;
 
 public class InventoryManager
-        implements DownstreamManager.InventoryDataListener,
+        implements DownstreamManager.TagReadListener,
                    ScheduleManager.RunStateListener {
 
     protected Logger log = LoggerFactory.getLogger(getClass());
 
     public interface UpstreamEventListener {
         void onUpstreamEvent(UpstreamInventoryEventInfo uie);
+
+        /**
+         * Tags removed from the inventory by ageout, as aged_out events.
+         * These are not inventory events for the upstream data consumers,
+         * only listeners that track the inventory itself need them.
+         */
+        default void onAgeout(UpstreamInventoryEventInfo uie) {}
     }
 
-    private final HashSet<UpstreamEventListener> upstreamEventListeners = new HashSet<>();
+    // dispatched from the data handler threads for every inventory message
+    private final ListenerRegistry<UpstreamEventListener> upstreamEventListeners = new ListenerRegistry<>();
 
     public void addUpstreamEventListener(UpstreamEventListener _l) {
-        synchronized (upstreamEventListeners) {
-            upstreamEventListeners.add(_l);
-        }
+        upstreamEventListeners.add(_l);
+    }
+
+    /**
+     * Adds a listener that is given the events on its own thread, so that
+     * it cannot hold up tag processing. Events are dropped for it when it
+     * falls more than _queueSize events behind.
+     */
+    public void addUpstreamEventListenerAsync(UpstreamEventListener _l, int _queueSize) {
+        upstreamEventListeners.addAsync(_l, _queueSize);
     }
 
     public void removeUpstreamEventListener(UpstreamEventListener _l) {
-        synchronized (upstreamEventListeners) {
-            upstreamEventListeners.remove(_l);
-        }
+        upstreamEventListeners.remove(_l);
     }
 
     private void publish(UpstreamInventoryEventInfo uie) {
         if (uie != null && !uie.data.isEmpty()) {
-            synchronized (upstreamEventListeners) {
-                for (UpstreamEventListener l : upstreamEventListeners) {
-                    try {
-                        l.onUpstreamEvent(uie);
-                    } catch (Throwable t) {
-                        log.error("error:", t);
-                    }
-                }
-            }
+            upstreamEventListeners.dispatch(UpstreamEventListener::onUpstreamEvent, uie);
+        }
+    }
+
+    private void publishAgeout(UpstreamInventoryEventInfo uie) {
+        if (!uie.data.isEmpty()) {
+            upstreamEventListeners.dispatch(UpstreamEventListener::onAgeout, uie);
         }
     }
 
@@ -148,11 +160,26 @@ public class InventoryManager
     // }
 
 
-    protected final TreeMap<String, Tag> inventory = new TreeMap<>();
-    private final Map<String, Set<Tag>> exitingTags = new TreeMap<>();
+    // tags are partitioned into lock stripes so reads from different
+    // sensors can be processed in parallel
+    protected final InventoryStore inventory = new InventoryStore();
+    // state changes are journaled as they happen, the journal is
+    // compacted into a snapshot on the persistence schedule
+    protected final InventoryJournal journal = new InventoryJournal(Env.getCachePath());
+    // EXITING tags are scheduled to depart at lastRead + threshold. A tag
+    // read again meanwhile is rescheduled when its deadline comes around
+    // rather than on every read, so reads of exiting tags cost nothing
+    static final long DEPARTED_TICK_MILLIS = 250;
+    private static final int DEPARTED_WHEEL_SLOTS = 256;
+    private final TimerWheel<Tag> departures = new TimerWheel<>(DEPARTED_TICK_MILLIS,
+                                                                DEPARTED_WHEEL_SLOTS,
+                                                                System.currentTimeMillis());
+    private final Set<Tag> scheduledDepartures = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // the time the timers go by, tag reads carry their own times. Swapped
+    // by setClock while data handlers and schedulers may be running
+    protected volatile LongSupplier clock = System::currentTimeMillis;
 
-    // since access to the inventory needs to always be synchronized anyway
-    // this executor could probably be single threaded...or perhaps an executor per datastore?
     private static final int SCHED_THREAD_POOL_SIZE = 3;
     protected ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(SCHED_THREAD_POOL_SIZE);
 
@@ -160,11 +187,22 @@ public class InventoryManager
         if (scheduler.isShutdown()) {
             scheduler = Executors.newScheduledThreadPool(SCHED_THREAD_POOL_SIZE);
         }
-        restore();
-        ageout();
+        boolean lazy = ConfigManager.instance.getOptBool(CFG_KEY_RESTORE_LAZY, DEFAULT_RESTORE_LAZY);
+        if (!lazy || !restoreLazy()) {
+            restore();
+        }
+        try {
+            journal.open();
+        } catch (IOException e) {
+            log.error("failed opening inventory journal, changes will not be persisted: {}", e.getMessage());
+        }
+        if (pendingRestore == null) {
+            ageout();
+        }
         scheduleAggregateDepartedTask();
         scheduleReadRateStatsTask();
         schedulePersistence();
+        scheduleAgeout();
         log.info(getClass().getSimpleName() + " started");
         return true;
     }
@@ -185,6 +223,7 @@ public class InventoryManager
         closeTagStatsZip();
         ageout();
         persist();
+        journal.close();
         log.info(getClass().getSimpleName() + " stopped");
         return true;
     }
@@ -217,36 +256,69 @@ public class InventoryManager
         }
     }
 
+    public static final String CFG_KEY_JOURNAL_FLUSH = "inventory.journal.flush.millis";
+    public static final long DEFAULT_JOURNAL_FLUSH_MILLIS = 1000;
+
     private void schedulePersistence() {
+        long flushMillis = ConfigManager.instance.getOptLong(CFG_KEY_JOURNAL_FLUSH, DEFAULT_JOURNAL_FLUSH_MILLIS);
+        scheduler.scheduleWithFixedDelay(journal::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
         scheduler.scheduleWithFixedDelay(this::persist, 3, 3, TimeUnit.MINUTES);
     }
 
     public void unload() {
+        // stops any restore still in progress
+        pendingRestore = null;
         snapshot();
-        synchronized (inventory) {
-            inventory.clear();
-            File f = CACHE_PATH.toFile();
-            if (f.exists() && !f.delete()) {
-                log.error("Unable to delete inventory cache");
-            }
+        inventory.clear();
+        File f = CACHE_PATH.toFile();
+        if (f.exists() && !f.delete()) {
+            log.error("Unable to delete inventory cache");
         }
-        synchronized (exitingTags) {
-            exitingTags.clear();
+        try {
+            journal.reset();
+        } catch (IOException e) {
+            log.error("Unable to delete inventory journal: {}", e.getMessage());
+        }
+        synchronized (departures) {
+            departures.clear();
+            scheduledDepartures.clear();
         }
     }
 
-    @Override
-    public synchronized void onInventoryData(InventoryDataNotification _invDataNotification, SensorPlatform _rsp) {
+    /**
+     * Processes a whole inventory_data message at once, the data handlers
+     * pass the reads on one by one through onTagRead instead.
+     */
+    public void onInventoryData(InventoryDataNotification _invDataNotification, SensorPlatform _rsp) {
         UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
-        synchronized (inventory) {
-            for (TagRead tagRead : _invDataNotification.params.data) {
-                processReadData(uie, _rsp, tagRead);
-            }
+        for (TagRead tagRead : _invDataNotification.params.data) {
+            processReadData(uie, _rsp, tagRead);
         }
         publish(uie);
         cumulativeReads.addAndGet(_invDataNotification.params.data.size());
     }
 
+    // events are collected per data handler thread while the reads of a
+    // message are streamed in, then published once the message is complete
+    private final ThreadLocal<UpstreamInventoryEventInfo> pendingEvents =
+            ThreadLocal.withInitial(UpstreamInventoryEventInfo::new);
+
+    @Override
+    public void onTagRead(TagRead _tagRead, SensorPlatform _rsp) {
+        processReadData(pendingEvents.get(), _rsp, _tagRead);
+    }
+
+    @Override
+    public void onTagReadsComplete(SensorPlatform _rsp, int _numReads) {
+        UpstreamInventoryEventInfo uie = pendingEvents.get();
+        if (!uie.data.isEmpty()) {
+            // listeners may hang on to the published event info
+            pendingEvents.set(new UpstreamInventoryEventInfo());
+            publish(uie);
+        }
+        cumulativeReads.addAndGet(_numReads);
+    }
+
     protected void processReadData(UpstreamInventoryEventInfo uie,
                                    SensorPlatform _rsp,
                                    TagRead _tagRead) {
@@ -256,15 +328,65 @@ public class InventoryManager
         }
         String epc = _tagRead.epc;
 
-        // assume that invetory is locked outside of this method (looping)
-        Tag tag = inventory.get(epc);
-        if (tag == null) {
-            tag = new Tag(epc);
-            inventory.put(epc, tag);
+        // the state machine for a single tag runs under the lock of its
+        // stripe, reads for tags in other stripes proceed in parallel
+        if (_tagRead.epc_digits > 0 && pendingRestore == null) {
+            // packed by the parser, found without hashing the String
+            long high = _tagRead.epc_high;
+            long low = _tagRead.epc_low;
+            int digits = _tagRead.epc_digits;
+            synchronized (inventory.lockFor(high, low, digits)) {
+                processReadData(uie, _rsp, _tagRead, inventory.getOrCreate(epc, high, low, digits));
+            }
+            return;
+        }
+        synchronized (inventory.lockFor(epc)) {
+            processReadData(uie, _rsp, _tagRead, getOrCreate(epc));
         }
+    }
+
+    // must be called holding the stripe lock for the epc
+    private Tag getOrCreate(String _epc) {
+        InventoryJournalIndex pending = pendingRestore;
+        if (pending != null) {
+            Tag tag = inventory.get(_epc);
+            if (tag == null) {
+                // not materialized yet, take it now so a restored tag
+                // is never mistaken for a new arrival
+                tag = pending.take(_epc);
+                if (tag != null) {
+                    inventory.put(tag);
+                }
+            }
+            if (tag != null) {
+                return tag;
+            }
+        }
+        return inventory.getOrCreate(_epc);
+    }
+
+    private void processReadData(UpstreamInventoryEventInfo uie,
+                                 SensorPlatform _rsp,
+                                 TagRead _tagRead,
+                                 Tag tag) {
 
         PreviousTag prev = new PreviousTag(tag);
         tag.update(_rsp, _tagRead, rssiAdjuster);
+        processTransitions(uie, _rsp, tag, prev);
+
+        // reads alone are not journaled, only changes to what is persisted
+        if (prev.state != tag.getState() ||
+                !Objects.equals(prev.location, tag.getLocation()) ||
+                !Objects.equals(prev.deviceLocation, tag.getDeviceLocation()) ||
+                !Objects.equals(prev.facility, tag.getFacility())) {
+            journal.append(tag);
+        }
+    }
+
+    private void processTransitions(UpstreamInventoryEventInfo uie,
+                                    SensorPlatform _rsp,
+                                    Tag tag,
+                                    PreviousTag prev) {
 
         // check for state transitions
         switch (prev.state) {
@@ -377,28 +499,27 @@ public class InventoryManager
         // the tag has to belong to the current sensor for anything to happen
         if (!_rsp.getDeviceId().equals(_tag.getDeviceLocation())) { return; }
         _tag.setState(EXITING);
-        addExiting(_rsp.getFacilityId(), _tag);
+        addExiting(_tag);
     }
 
     protected void clearExiting() {
-        synchronized (exitingTags) {
-            for (Set<Tag> tags : exitingTags.values()) {
-                for (Tag t : tags) {
-                    // test just to be sure, this should not be necessary but belt and suspenders
-                    if (t.getState() == EXITING) {
-                        t.setState(PRESENT, t.getLastArrived());
-                    }
-                }
-                tags.clear();
-            }
-            exitingTags.clear();
+        synchronized (departures) {
+            departures.clear();
+            scheduledDepartures.clear();
         }
+        inventory.forEachInState(EXITING, t -> {
+            t.setState(PRESENT, t.getLastArrived());
+            journal.append(t);
+        });
     }
 
-    protected void addExiting(String _facilityId, Tag tag) {
-        synchronized (exitingTags) {
-            Set<Tag> tags = exitingTags.computeIfAbsent(_facilityId, k -> new TreeSet<>());
-            tags.add(tag);
+    // called holding the stripe lock of the tag, which must be acquired
+    // before the departures lock to keep lock ordering
+    protected void addExiting(Tag _tag) {
+        synchronized (departures) {
+            if (scheduledDepartures.add(_tag)) {
+                departures.schedule(_tag, _tag.getLastRead() + getAggregateDepartedThreshold());
+            }
         }
     }
 
@@ -410,6 +531,21 @@ public class InventoryManager
     }
 
     private final RssiAdjuster rssiAdjuster = new RssiAdjuster();
+
+    /**
+     * Replaces the clock that the departure and ageout timers, and the
+     * mobility weighting, go by. The exiting tags are rescheduled on the
+     * new clock.
+     */
+    public void setClock(LongSupplier _clock) {
+        clock = _clock;
+        rssiAdjuster.setClock(_clock);
+        synchronized (departures) {
+            departures.reset(_clock.getAsLong());
+            scheduledDepartures.clear();
+        }
+        inventory.forEachInState(EXITING, this::addExiting);
+    }
     
     public String getActiveMobilityProfileId() {
         return rssiAdjuster.getActiveMobilityProfileId();
@@ -423,138 +559,257 @@ public class InventoryManager
     // 14 days worth, use hours because that is the unit used in the configuation
     public static final long DEFAULT_AGEOUT_HOURS = 336;
 
-    public void ageout() {
+    public static final String CFG_KEY_AGEOUT_INTERVAL = "inventory.ageout.interval.minutes";
+    public static final long DEFAULT_AGEOUT_INTERVAL_MINUTES = 10;
+    // tags removed between releases of the stripe locks
+    private static final int AGEOUT_BATCH_SIZE = 1000;
+
+    private final AtomicLong numAgedOut = new AtomicLong(0);
+
+    private void scheduleAgeout() {
+        long interval = ConfigManager.instance.getOptLong(CFG_KEY_AGEOUT_INTERVAL, DEFAULT_AGEOUT_INTERVAL_MINUTES);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                ageout();
+            } catch (Throwable t) {
+                log.error("error:", t);
+            }
+        }, interval, interval, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Removes the tags not read since the ageout time, found from the last
+     * read index in small batches so ingestion is never held up for more
+     * than the removal of a single tag.
+     *
+     * @return the number of tags removed
+     */
+    public int ageout() {
         // default 14 days ago
         long h = ConfigManager.instance.getOptLong(CFG_KEY_AGEOUT, DEFAULT_AGEOUT_HOURS);
-        long expiration = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(h);
+        long expiration = clock.getAsLong() - TimeUnit.HOURS.toMillis(h);
         int numRemoved = 0;
-        synchronized (inventory) {
-            Iterator<Tag> tagIter = inventory.values().iterator();
-            while (tagIter.hasNext()) {
-                Tag tag = tagIter.next();
-                if (tag.getLastRead() < expiration) {
-                    tagIter.remove();
-                    numRemoved++;
-                }
-            }
+        int batch;
+        do {
+            UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+            batch = inventory.removeReadBefore(expiration, AGEOUT_BATCH_SIZE, tag -> {
+                uie.add(tag, TagEvent.aged_out);
+                // so a restore does not bring the tag back
+                journal.appendRemove(tag.getEPC());
+            });
+            publishAgeout(uie);
+            numRemoved += batch;
+        } while (batch > 0);
+        numAgedOut.addAndGet(numRemoved);
+        if (numRemoved > 0) {
+            log.info("inventory ageout removed: {}", numRemoved);
         }
-        log.info("inventory ageout removed: {}", numRemoved);
+        return numRemoved;
     }
 
-    public void getSummary(InventorySummary _summary) {
-
-        Map<TagState, AtomicInteger> invStateMap = new HashMap<>();
-        invStateMap.put(PRESENT, new AtomicInteger(0));
-        invStateMap.put(EXITING, new AtomicInteger(0));
-        invStateMap.put(DEPARTED_EXIT, new AtomicInteger(0));
-        invStateMap.put(DEPARTED_POS, new AtomicInteger(0));
-
-        Map<TimeBucket, AtomicInteger> timeBucketMap = new HashMap<>();
-        timeBucketMap.put(TimeBucket.within_last_01_min, new AtomicInteger(0));
-        timeBucketMap.put(TimeBucket.from_01_to_05_min, new AtomicInteger(0));
-        timeBucketMap.put(TimeBucket.from_05_to_30_min, new AtomicInteger(0));
-        timeBucketMap.put(TimeBucket.from_30_to_60_min, new AtomicInteger(0));
-        timeBucketMap.put(TimeBucket.from_60_min_to_24_hr, new AtomicInteger(0));
-        timeBucketMap.put(TimeBucket.more_than_24_hr, new AtomicInteger(0));
+    /**
+     * @return the number of tags removed by ageout since startup
+     */
+    public long getNumAgedOut() {
+        return numAgedOut.get();
+    }
 
-        aggregateInventoryStates(invStateMap, timeBucketMap);
+    public void getSummary(InventorySummary _summary) {
 
-        _summary.tag_state_summary.PRESENT = invStateMap.get(PRESENT).get();
-        _summary.tag_state_summary.EXITING = invStateMap.get(EXITING).get();
-        _summary.tag_state_summary.DEPARTED_EXIT = invStateMap.get(DEPARTED_EXIT).get();
-        _summary.tag_state_summary.DEPARTED_POS = invStateMap.get(DEPARTED_POS).get();
+        InventoryCounters counters = inventory.getCounters();
+        _summary.tag_state_summary.PRESENT = counters.getCount(PRESENT);
+        _summary.tag_state_summary.EXITING = counters.getCount(EXITING);
+        _summary.tag_state_summary.DEPARTED_EXIT = counters.getCount(DEPARTED_EXIT);
+        _summary.tag_state_summary.DEPARTED_POS = counters.getCount(DEPARTED_POS);
 
+        int[] lastRead = counters.getLastReadCounts(clock.getAsLong());
         _summary.tag_read_summary.reads_per_second = currentReadsPerSecond.get();
-        _summary.tag_read_summary.within_last_01_min = timeBucketMap.get(TimeBucket.within_last_01_min).get();
-        _summary.tag_read_summary.from_01_to_05_min = timeBucketMap.get(TimeBucket.from_01_to_05_min).get();
-        _summary.tag_read_summary.from_05_to_30_min = timeBucketMap.get(TimeBucket.from_05_to_30_min).get();
-        _summary.tag_read_summary.from_30_to_60_min = timeBucketMap.get(TimeBucket.from_30_to_60_min).get();
-        _summary.tag_read_summary.from_60_min_to_24_hr = timeBucketMap.get(TimeBucket.from_60_min_to_24_hr).get();
-        _summary.tag_read_summary.more_than_24_hr = timeBucketMap.get(TimeBucket.more_than_24_hr).get();
+        _summary.tag_read_summary.within_last_01_min = lastRead[TimeBucket.within_last_01_min.ordinal()];
+        _summary.tag_read_summary.from_01_to_05_min = lastRead[TimeBucket.from_01_to_05_min.ordinal()];
+        _summary.tag_read_summary.from_05_to_30_min = lastRead[TimeBucket.from_05_to_30_min.ordinal()];
+        _summary.tag_read_summary.from_30_to_60_min = lastRead[TimeBucket.from_30_to_60_min.ordinal()];
+        _summary.tag_read_summary.from_60_min_to_24_hr = lastRead[TimeBucket.from_60_min_to_24_hr.ordinal()];
+        _summary.tag_read_summary.more_than_24_hr = lastRead[TimeBucket.more_than_24_hr.ordinal()];
 
     }
 
     public void getTagInfo(String _filterPattern, Collection<TagInfo> _infoCollection) {
-        Pattern p = StringHelper.regexWildcard(_filterPattern);
+        EpcQuery query = EpcQuery.parse(_filterPattern);
         try {
-            synchronized (inventory) {
-                for (Tag tag : inventory.values()) {
-                    if (p == null || p.matcher(tag.getEPC()).matches()) {
-                        _infoCollection.add(new TagInfo(tag.getEPC(),
-                                                        tag.getTID(),
-                                                        tag.getState(),
-                                                        tag.getLocation(),
-                                                        tag.getLastRead(),
-                                                        tag.getFacility()));
-
-
-                    }
-                }
-            }
+            inventory.forEachSorted(query, tag -> _infoCollection.add(toTagInfo(tag)));
         } catch (Exception e) {
             log.error("error:", e);
         }
     }
 
+    public List<TagInfo> getTagInfoByFacility(String _facilityId) {
+        List<TagInfo> infoList = new ArrayList<>();
+        inventory.forEachInFacility(_facilityId, tag -> infoList.add(toTagInfo(tag)));
+        return infoList;
+    }
+
+    public List<TagInfo> getTagInfoByLocation(String _location) {
+        List<TagInfo> infoList = new ArrayList<>();
+        inventory.forEachAtLocation(_location, tag -> infoList.add(toTagInfo(tag)));
+        return infoList;
+    }
+
+    public List<TagInfo> getTagInfoByState(TagState _state) {
+        List<TagInfo> infoList = new ArrayList<>();
+        inventory.forEachInState(_state, tag -> infoList.add(toTagInfo(tag)));
+        return infoList;
+    }
+
+    /**
+     * Visits the info of up to _limit tags matching the filter with an EPC
+     * after the cursor, in EPC order. The action runs holding the lock of
+     * the tag's stripe so it must not block.
+     *
+     * @return the cursor to continue from, null once there are no more
+     * matching tags
+     */
+    public String forEachTagInfo(String _filterPattern, String _cursor, int _limit, Consumer<TagInfo> _action) {
+        PageState page = new PageState();
+        inventory.forEachSortedAfter(EpcQuery.parse(_filterPattern), _cursor, tag -> {
+            if (page.count == _limit) {
+                // only looked far enough to know there is another page
+                page.more = true;
+                return false;
+            }
+            _action.accept(toTagInfo(tag));
+            page.last = tag.getEPC();
+            page.count++;
+            return true;
+        });
+        return page.more ? page.last : null;
+    }
+
+    private static class PageState {
+        int count;
+        String last;
+        boolean more;
+    }
+
+    public TagInfoPage getTagInfoPage(String _filterPattern, String _cursor, int _limit) {
+        TagInfoPage page = new TagInfoPage();
+        page.next_cursor = forEachTagInfo(_filterPattern, _cursor, _limit, page.tags::add);
+        page.count = page.tags.size();
+        return page;
+    }
+
+    private static TagInfo toTagInfo(Tag _tag) {
+        return new TagInfo(_tag.getEPC(),
+                           _tag.getTID(),
+                           _tag.getState(),
+                           _tag.getLocation(),
+                           _tag.getLastRead(),
+                           _tag.getFacility());
+    }
+
     public Collection<Tag> getTags(String _filterPattern) {
-        Collection<Tag> tags = new TreeSet<>();
-        Pattern p = StringHelper.regexWildcard(_filterPattern);
+        // visited in EPC order
+        Collection<Tag> tags = new ArrayList<>();
+        EpcQuery query = EpcQuery.parse(_filterPattern);
         try {
-            synchronized (inventory) {
-                for (Tag tag : inventory.values()) {
-                    if (p == null || p.matcher(tag.getEPC()).matches()) {
-                        tags.add(tag);
-                    }
-                }
-            }
+            inventory.forEachSorted(query, tag -> {
+                tags.add(tag);
+            });
         } catch (Exception e) {
             log.error("error:", e);
         }
         return tags;
     }
 
+    // the wheel only sees a tag at the deadline it was scheduled for, so a
+    // tag whose last read moved back with sensor clock skew is caught late
+    // unless something sweeps the exiting tags now and then
+    private static final long DEPARTED_SWEEP_SECONDS = 60;
+
     private void scheduleAggregateDepartedTask() {
-        long interval = (getAggregateDepartedThreshold() / 5);
-        scheduler.scheduleWithFixedDelay(this::doAggregateDepartedTask, interval, interval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::expireDepartures,
+                                         DEPARTED_TICK_MILLIS, DEPARTED_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                doAggregateDepartedTask();
+            } catch (Throwable t) {
+                log.error("error:", t);
+            }
+        }, DEPARTED_SWEEP_SECONDS, DEPARTED_SWEEP_SECONDS, TimeUnit.SECONDS);
     }
 
-    protected void doAggregateDepartedTask() {
+    /**
+     * Departs the exiting tags whose deadline has passed. Those read since
+     * they were scheduled are rescheduled from their latest read instead.
+     */
+    protected void expireDepartures() {
+        List<Tag> due = new ArrayList<>();
+        long now = clock.getAsLong();
+        synchronized (departures) {
+            departures.expire(now, due::add);
+        }
+        if (due.isEmpty()) {
+            return;
+        }
 
         UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
-        long now = System.currentTimeMillis();
-        long expiration = now - getAggregateDepartedThreshold();
-        synchronized (exitingTags) {
-            for (Set<Tag> tagSet : exitingTags.values()) {
-                for (Iterator<Tag> iter = tagSet.iterator(); iter.hasNext(); ) {
-                    Tag tag = iter.next();
-                    // there may be some edge cases where the tag state
-                    if (tag.getState() != EXITING) {
-                        iter.remove();
-                    } else if (tag.getLastRead() < expiration) {
-                        tag.setState(DEPARTED_EXIT, now);
-                        uie.add(tag, TagEvent.departed);
-                        log.info("{} {}", TagEvent.departed, tag);
-                        iter.remove();
+        long threshold = getAggregateDepartedThreshold();
+        long expiration = now - threshold;
+        for (Tag tag : due) {
+            synchronized (inventory.lockFor(tag.getEPC())) {
+                boolean exiting = tag.getState() == EXITING && inventory.get(tag.getEPC()) == tag;
+                if (exiting && tag.getLastRead() >= expiration) {
+                    synchronized (departures) {
+                        departures.schedule(tag, tag.getLastRead() + threshold);
                     }
+                    continue;
+                }
+                if (exiting) {
+                    depart(tag, now, uie);
+                }
+                synchronized (departures) {
+                    scheduledDepartures.remove(tag);
                 }
             }
         }
         publish(uie);
     }
 
+    /**
+     * Departs every exiting tag not read within the threshold, whenever
+     * it is scheduled to depart. Only visits the exiting tags, the wheel
+     * drops those departed here when their deadline comes around.
+     */
+    protected void doAggregateDepartedTask() {
+
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        long now = clock.getAsLong();
+        long expiration = now - getAggregateDepartedThreshold();
+        inventory.forEachInState(EXITING, tag -> {
+            if (tag.getLastRead() < expiration) {
+                depart(tag, now, uie);
+            }
+        });
+        publish(uie);
+    }
+
+    // called holding the stripe lock of the tag
+    private void depart(Tag _tag, long _now, UpstreamInventoryEventInfo _uie) {
+        _tag.setState(DEPARTED_EXIT, _now);
+        journal.append(_tag);
+        _uie.add(_tag, TagEvent.departed);
+        log.info("{} {}", TagEvent.departed, _tag);
+    }
+
     protected long getAggregateDepartedThreshold() {
-        return ConfigManager.instance.getOptLong("inventory.aggregate.departed.threshold.millis",
-                                                 TimeUnit.SECONDS.toMillis(30));
+        return ConfigManager.instance.getSnapshot().aggregateDepartedThresholdMillis;
     }
 
     protected long getPOSDepartedThreshold() {
-        return ConfigManager.instance.getOptLong("inventory.POS.departed.threshold.millis",
-                                                 TimeUnit.HOURS.toMillis(1));
+        return ConfigManager.instance.getSnapshot().posDepartedThresholdMillis;
     }
 
     protected long getPOSReturnThreshold() {
-        return ConfigManager.instance.getOptLong("inventory.POS.return.threshold.millis",
-                                                 TimeUnit.DAYS.toMillis(1));
+        return ConfigManager.instance.getSnapshot().posReturnThresholdMillis;
     }
 
     public static final Path CACHE_PATH = Env.resolveCache("current_inventory.json");
@@ -593,12 +848,10 @@ public class InventoryManager
 
         Cache cache = new Cache();
 
-        synchronized (inventory) {
-            for (Tag tag : inventory.values()) {
-                List<Tag.Cached> tags = cache.inventory.computeIfAbsent(tag.getFacility(), k -> new ArrayList<>());
-                tags.add(tag.toCached());
-            }
-        }
+        inventory.forEachSorted(tag -> {
+            List<Tag.Cached> tags = cache.inventory.computeIfAbsent(tag.getFacility(), k -> new ArrayList<>());
+            tags.add(tag.toCached());
+        });
 
         if (cache.inventory.size() == 0) {
             log.warn("snapshot NO_INVENTORY");
@@ -661,8 +914,7 @@ public class InventoryManager
         try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
 
             pw.println(Tag.STATS_DETAIL_CSV_HDR);
-            Pattern p = StringHelper.regexWildcard(_statsRegex);
-            printStatsDetail(p, pw);
+            printStatsDetail(EpcQuery.parse(_statsRegex), pw);
 
         } catch (IOException e) {
             log.error("{}", dir.getAbsolutePath(), e);
@@ -690,15 +942,11 @@ public class InventoryManager
 
         try (PrintWriter pw = new PrintWriter(new FileWriter(file))) {
 
-            Pattern p = StringHelper.regexWildcard(_statsRegex);
+            EpcQuery query = EpcQuery.parse(_statsRegex);
 
-            synchronized (inventory) {
-                for (Tag tag : inventory.values()) {
-                    if (p == null || p.matcher(tag.getEPC()).matches()) {
-                        tag.waypoints(pw);
-                    }
-                }
-            }
+            inventory.forEachSorted(query, tag -> {
+                tag.waypoints(pw);
+            });
 
         } catch (IOException e) {
             log.error("{}", dir.getAbsolutePath(), e);
@@ -709,153 +957,242 @@ public class InventoryManager
     }
 
     private void persist() {
-
-        // get a copy of the inventory into minimal JSON object
-        Cache cache = new Cache();
-        synchronized (inventory) {
-            for (Tag invTag : inventory.values()) {
-                cache.tags.add(invTag.toCached());
-            }
+        // a snapshot now would be missing the tags not yet restored
+        if (!journal.isOpen() || pendingRestore != null) {
+            return;
         }
+        try {
+            long start = System.currentTimeMillis();
+            int numTags = journal.compact(inventory);
+            log.info("inventory journal compacted {} tags in {} ms", numTags, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.error("failed persisting inventory {}", e.getMessage());
+        }
+    }
 
-        if (cache.tags.size() > 0) {
-            try (OutputStream os = Files.newOutputStream(CACHE_PATH)) {
-                mapper.writerWithDefaultPrettyPrinter().writeValue(os, cache);
+    public void restore() {
+        if (journal.exists()) {
+            try {
+                long start = System.currentTimeMillis();
+                int numTags = journal.restore(inventory);
+                log.info("Restored {} tags from the inventory journal in {} ms",
+                         numTags, System.currentTimeMillis() - start);
             } catch (IOException e) {
-                log.error("failed persisting inventory {}", e.getMessage());
+                log.error("Failed to restore inventory journal", e);
             }
-        } else {
+        } else if (Files.exists(CACHE_PATH)) {
+            // first start after moving from the JSON cache, the imported
+            // tags only exist in memory until they are in a snapshot
             try {
-                Files.deleteIfExists(CACHE_PATH);
-            } catch (IOException _e) {
-                log.warn("error {}", _e.getMessage());
+                journal.open();
+            } catch (IOException e) {
+                log.error("failed opening inventory journal: {}", e.getMessage());
             }
+            importCache(CACHE_PATH);
+            persist();
         }
     }
 
-    public void restore() {
+    public static final String CFG_KEY_RESTORE_LAZY = "inventory.restore.lazy";
+    public static final boolean DEFAULT_RESTORE_LAZY = true;
 
-        if (!Files.exists(CACHE_PATH)) {
-            return;
+    // while a lazy restore is in progress, the tags not yet materialized
+    private volatile InventoryJournalIndex pendingRestore;
+
+    public boolean isRestoring() {
+        return pendingRestore != null;
+    }
+
+    /**
+     * Indexes the journal without creating any tags and finishes the
+     * restore in the background. Until then, a tag is restored by the
+     * first read of its EPC. Queries and summaries only include the tags
+     * restored so far.
+     *
+     * @return false if there is nothing to restore lazily
+     */
+    protected boolean restoreLazy() {
+        if (!journal.exists()) {
+            return false;
         }
+        try {
+            long start = System.currentTimeMillis();
+            InventoryJournalIndex index = journal.index();
+            log.info("Indexed {} tags from the inventory journal in {} ms",
+                     index.remaining(), System.currentTimeMillis() - start);
+            pendingRestore = index;
+            scheduler.execute(() -> finishRestore(index));
+        } catch (IOException e) {
+            log.error("Failed to index inventory journal", e);
+            return false;
+        }
+        return true;
+    }
+
+    private void finishRestore(InventoryJournalIndex _index) {
+        try {
+            long start = System.currentTimeMillis();
+            for (int e = 0; e < _index.size(); e++) {
+                if (pendingRestore != _index || Thread.currentThread().isInterrupted()) {
+                    log.info("inventory restore stopped with {} tags remaining", _index.remaining());
+                    return;
+                }
+                String epc = _index.epcAt(e);
+                if (epc == null) {
+                    continue;
+                }
+                synchronized (inventory.lockFor(epc)) {
+                    if (inventory.get(epc) == null) {
+                        Tag tag = _index.take(e, epc);
+                        if (tag != null) {
+                            inventory.put(tag);
+                        }
+                    }
+                }
+            }
+            pendingRestore = null;
+            log.info("Restored {} tags from the inventory journal in {} ms",
+                     inventory.size(), System.currentTimeMillis() - start);
+            ageout();
+        } catch (Throwable t) {
+            log.error("error:", t);
+        }
+    }
+
+    /**
+     * Writes the inventory in the JSON cache format.
+     */
+    public String exportCache(Path _path) {
+
+        // get a copy of the inventory into minimal JSON object
+        Cache cache = new Cache();
+        inventory.forEach(invTag -> cache.tags.add(invTag.toCached()));
+
+        try (OutputStream os = Files.newOutputStream(_path)) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(os, cache);
+            log.info("exported {} tags to {}", cache.tags.size(), _path);
+        } catch (IOException e) {
+            log.error("failed exporting inventory {}", e.getMessage());
+            return _path + ": " + e.getMessage();
+        }
+        return _path.toString();
+    }
+
+    /**
+     * Adds the tags from a file in the JSON cache format, replacing any
+     * tags with the same EPC.
+     *
+     * @return the number of tags imported
+     */
+    public int importCache(Path _path) {
 
         Cache cache = null;
 
-        try (InputStream fis = Files.newInputStream(CACHE_PATH)) {
+        try (InputStream fis = Files.newInputStream(_path)) {
 
             cache = mapper.readValue(fis, Cache.class);
-            log.info("Restored {}", CACHE_PATH);
+            log.info("Restored {}", _path);
 
         } catch (IOException e) {
-            log.error("Failed to restore {}", CACHE_PATH, e);
+            log.error("Failed to restore {}", _path, e);
         }
 
         if (cache == null) {
-            return;
+            return 0;
         }
 
-        synchronized (inventory) {
-            if (cache.tags.size() > 0) {
-                for (Tag.Cached ct : cache.tags) {
-                    inventory.put(ct.epc, Tag.fromCached(ct));
-                }
+        int numTags = 0;
+        if (cache.tags.size() > 0) {
+            for (Tag.Cached ct : cache.tags) {
+                importTag(Tag.fromCached(ct));
+                numTags++;
+            }
 
-            } else if (cache.inventory.size() > 0) {
+        } else if (cache.inventory.size() > 0) {
 
-                for (String fid : cache.inventory.keySet()) {
-                    List<Tag.Cached> cacheTags = cache.inventory.get(fid);
-                    if (cacheTags == null) {
-                        continue;
-                    }
-                    for (Tag.Cached ct : cacheTags) {
-                        // fix for the NAPA null  facility error
-                        ct.facility = fid;
-                        inventory.put(ct.epc, Tag.fromCached(ct));
-                    }
+            for (String fid : cache.inventory.keySet()) {
+                List<Tag.Cached> cacheTags = cache.inventory.get(fid);
+                if (cacheTags == null) {
+                    continue;
+                }
+                for (Tag.Cached ct : cacheTags) {
+                    // fix for the NAPA null  facility error
+                    ct.facility = fid;
+                    importTag(Tag.fromCached(ct));
+                    numTags++;
                 }
-
             }
+
         }
+        return numTags;
     }
 
-    public void showSummary(PrintWriter _out) {
+    private void importTag(Tag _tag) {
+        synchronized (inventory.lockFor(_tag.getEPC())) {
+            inventory.put(_tag);
+            journal.append(_tag);
+        }
+    }
 
-        Map<TagState, AtomicInteger> invStateMap = new HashMap<>();
-        Map<TimeBucket, AtomicInteger> timeBucketMap = new HashMap<>();
+    public void showSummary(PrintWriter _out) {
 
-        int totalTags = aggregateInventoryStates(invStateMap, timeBucketMap);
+        InventoryCounters counters = inventory.getCounters();
 
-        _out.println("- Total Tags: " + totalTags);
+        _out.println("- Total Tags: " + counters.getTotal());
         _out.println();
 
         _out.println("- State");
         for (TagState t : TagState.values()) {
-            AtomicInteger count = invStateMap.get(t);
-            if (count != null) {
-                _out.println(String.format("%8d %s", count.get(), t));
+            int count = counters.getCount(t);
+            if (count > 0) {
+                _out.println(String.format("%8d %s", count, t));
             }
         }
         _out.println();
 
         _out.println("- Last Seen");
+        int[] lastRead = counters.getLastReadCounts(clock.getAsLong());
         for (TimeBucket t : TimeBucket.values()) {
-            AtomicInteger count = timeBucketMap.get(t);
-            if (count != null) {
-                _out.println(String.format("%8d %s", count.get(), t));
+            if (lastRead[t.ordinal()] > 0) {
+                _out.println(String.format("%8d %s", lastRead[t.ordinal()], t));
             }
         }
 
     }
 
     public void showDetail(String _regex, PrintWriter _out) {
-        Pattern p = StringHelper.regexWildcard(_regex);
-        synchronized (inventory) {
-            for (Tag tag : inventory.values()) {
-                if (p == null || p.matcher(tag.getEPC()).matches()) {
-                    _out.println(tag);
-                }
-            }
-        }
+        EpcQuery query = EpcQuery.parse(_regex);
+        inventory.forEachSorted(query, tag -> {
+            _out.println(tag);
+        });
     }
 
     public void showExiting(String _regex, PrintWriter _out) {
-        Pattern p = StringHelper.regexWildcard(_regex);
-        synchronized (exitingTags) {
-            for (Set<Tag> tagSet : exitingTags.values()) {
-                for (Tag tag : tagSet) {
-                    if (p == null || p.matcher(tag.getEPC()).matches()) {
-                        _out.println(tag);
-                    }
-                }
+        EpcQuery query = EpcQuery.parse(_regex);
+        inventory.forEachInState(EXITING, tag -> {
+            if (query.matches(tag.getEPC())) {
+                _out.println(tag);
             }
-        }
+        });
     }
 
     public TagStatsInfo getStatsInfo(String _filterPattern) {
         TagStatsInfo statsUpdate = new TagStatsInfo();
-        Pattern p = StringHelper.regexWildcard(_filterPattern);
-        synchronized (inventory) {
-            for (Tag tag : inventory.values()) {
-                if (p == null || p.matcher(tag.getEPC()).matches()) {
-                    tag.getStatsUpdate(statsUpdate);
-                }
-            }
-        }
+        EpcQuery query = EpcQuery.parse(_filterPattern);
+        inventory.forEachSorted(query, tag -> {
+            tag.getStatsUpdate(statsUpdate);
+        });
         return statsUpdate;
     }
 
     public void showStats(String _regex, PrintWriter _out) {
         _out.println(Tag.STATS_SUMMARY_CSV_HDR);
-        long now = System.currentTimeMillis();
-        Pattern p = StringHelper.regexWildcard(_regex);
+        long now = clock.getAsLong();
+        EpcQuery query = EpcQuery.parse(_regex);
         try {
-            synchronized (inventory) {
-                for (Tag tag : inventory.values()) {
-                    if (p == null || p.matcher(tag.getEPC()).matches()) {
-                        tag.statsSummary(_out, now);
-                    }
-                }
-            }
+            inventory.forEachSorted(query, tag -> {
+                tag.statsSummary(_out, now);
+            });
         } catch (Exception e) {
             log.error("error:", e);
         }
@@ -863,14 +1200,10 @@ public class InventoryManager
     }
 
     public void showWaypoints(String _regex, PrintWriter _out) {
-        Pattern p = StringHelper.regexWildcard(_regex);
-        synchronized (inventory) {
-            for (Tag tag : inventory.values()) {
-                if (p == null || p.matcher(tag.getEPC()).matches()) {
-                    tag.waypoints(_out);
-                }
-            }
-        }
+        EpcQuery query = EpcQuery.parse(_regex);
+        inventory.forEachSorted(query, tag -> {
+            tag.waypoints(_out);
+        });
     }
 
     private Future<?> statRecordFuture;
@@ -878,17 +1211,17 @@ public class InventoryManager
     private Path tagStatsPath;
     private ZipOutputStream tagStatsZipStream;
     private PrintWriter tagStatsWriter;
-    private Pattern statsPattern = null;
+    private EpcQuery statsQuery = EpcQuery.ALL;
 
     public void setInventoryRegex(String _regex) {
-        statsPattern = StringHelper.regexWildcard(_regex);
+        statsQuery = EpcQuery.parse(_regex);
     }
 
     public void checkInventoryRegex(PrintWriter _pw) {
         _pw.println(Tag.STATS_DETAIL_CSV_HDR);
-        printStatsDetail(statsPattern, _pw);
+        printStatsDetail(statsQuery, _pw);
         _pw.println();
-        _pw.println("statsRegex: " + statsPattern.toString());
+        _pw.println("statsRegex: " + statsQuery);
     }
 
     public String startRecordingStats() {
@@ -953,7 +1286,7 @@ public class InventoryManager
         public void run() {
             if (tagStatsWriter != null) {
                 writingStats.set(true);
-                printStatsDetail(statsPattern, tagStatsWriter);
+                printStatsDetail(statsQuery, tagStatsWriter);
                 writingStats.set(false);
             }
         }
@@ -979,54 +1312,13 @@ public class InventoryManager
 
     // NOTE: don't print the header here,
     // this method can be called repeatedly for a single file or output
-    private void printStatsDetail(Pattern _pattern, PrintWriter _writer) {
+    private void printStatsDetail(EpcQuery _query, PrintWriter _writer) {
         try {
-            long now = System.currentTimeMillis();
-            synchronized (inventory) {
-                for (Tag tag : inventory.values()) {
-                    if (_pattern == null || _pattern.matcher(tag.getEPC()).matches()) {
-                        tag.statsDetail(_writer, now);
-                    }
-                }
-            }
+            long now = clock.getAsLong();
+            inventory.forEachSorted(_query, tag -> tag.statsDetail(_writer, now));
         } catch (Exception e) {
             log.error("error:", e);
         }
     }
 
-    private int aggregateInventoryStates(Map<TagState, AtomicInteger> _invStateMap,
-                                         Map<TimeBucket, AtomicInteger> _timeBucketMap) {
-
-        int totalTags = 0;
-        synchronized (inventory) {
-            long now = System.currentTimeMillis();
-            for (Tag tag : inventory.values()) {
-
-                totalTags++;
-                AtomicInteger stateCount = _invStateMap.get(tag.getState());
-                if (stateCount == null) {
-                    stateCount = new AtomicInteger(0);
-                    _invStateMap.put(tag.getState(), stateCount);
-                }
-                stateCount.getAndIncrement();
-
-
-                long timeDiff = now - tag.getLastRead();
-                for (TimeBucket bucket : TimeBucket.values()) {
-                    if (timeDiff < bucket.millis) {
-                        AtomicInteger bucketCount = _timeBucketMap.get(bucket);
-                        if (bucketCount == null) {
-                            bucketCount = new AtomicInteger(0);
-                            _timeBucketMap.put(bucket, bucketCount);
-                        }
-                        bucketCount.getAndIncrement();
-                        break;
-                    }
-                }
-            }
-        }
-
-        return totalTags;
-    }
-
 }
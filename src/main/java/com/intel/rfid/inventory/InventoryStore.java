@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.EpcKey;
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Tag storage partitioned into lock stripes by EPC hash.
+ * <p>
+ * Each stripe is an EpcMap guarded by its own monitor so that reads
+ * for tags in different stripes (typically reads coming from different
+ * sensors) can be processed in parallel. Callers that need to run a
+ * multi-step operation on a single tag (i.e. the state machine in
+ * InventoryManager) should hold the monitor returned by lockFor() for
+ * the duration of that operation. Hex EPCs are keyed packed into longs,
+ * and the data handlers look them up by the key the parser packed from
+ * the message, so the lookup done for every read never touches a String.
+ * <p>
+ * Bulk operations visit one stripe at a time and never hold more than
+ * one stripe lock, so a long running query only ever blocks ingestion
+ * for the tags in the stripe being visited.
+ * <p>
+ * Every tag in the store reports its changes to a shared InventoryCounters
+ * and InventoryIndexes, so summaries are available without visiting the
+ * tags at all and the tags of one facility, location or state are found
+ * without visiting the others.
+ * <p>
+ * The tags are also indexed by EPC and by reversed EPC in concurrent
+ * sorted maps, updated under the stripe lock. Sorted visits walk the index
+ * directly and EpcQuery exact, prefix and suffix shapes are answered as
+ * ranges of it in O(log n + k). Regex queries are matched against the
+ * index without holding any stripe lock, only matching tags are locked.
+ */
+public class InventoryStore {
+
+    public static final int DEFAULT_NUM_STRIPES = 64;
+
+    protected static class Stripe {
+        protected final EpcMap<Tag> tags = new EpcMap<>();
+    }
+
+    private final Stripe[] stripes;
+    private final int mask;
+    // packed EPCs pick their stripe by the top bits of the hash,
+    // the low bits pick the slot within the stripe's EpcMap
+    private final int shift;
+    private final InventoryCounters counters = new InventoryCounters();
+    private final InventoryIndexes indexes = new InventoryIndexes();
+    private final ConcurrentSkipListMap<String, Tag> byEpc = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Tag> byReversedEpc = new ConcurrentSkipListMap<>();
+
+    public InventoryStore() {
+        this(DEFAULT_NUM_STRIPES);
+    }
+
+    public InventoryStore(int _numStripes) {
+        // round up to a power of 2 so the stripe index is a simple mask
+        int n = 1;
+        while (n < _numStripes) {
+            n <<= 1;
+        }
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe();
+        }
+        mask = n - 1;
+        shift = Integer.numberOfLeadingZeros(n) + 1;
+    }
+
+    public int getNumStripes() {
+        return stripes.length;
+    }
+
+    public InventoryCounters getCounters() {
+        return counters;
+    }
+
+    public InventoryIndexes getIndexes() {
+        return indexes;
+    }
+
+    private final Tag.Observer observer = new Tag.Observer() {
+        @Override
+        public void onStateChange(Tag _tag, TagState _from, TagState _to) {
+            counters.onStateChange(_tag, _from, _to);
+            indexes.onStateChange(_tag, _from, _to);
+        }
+
+        @Override
+        public void onLastReadChange(Tag _tag, long _from, long _to) {
+            counters.onLastReadChange(_tag, _from, _to);
+        }
+
+        @Override
+        public void onLocationChange(Tag _tag, String _fromLocation, String _fromFacility) {
+            indexes.onLocationChange(_tag, _fromLocation, _fromFacility);
+        }
+    };
+
+    protected Stripe stripeFor(String _epc) {
+        if (EpcKey.isPackable(_epc)) {
+            return stripeFor(EpcKey.high(_epc), EpcKey.low(_epc), _epc.length());
+        }
+        int h = _epc.hashCode();
+        // spread the higher bits down, same as HashMap
+        h ^= (h >>> 16);
+        return stripes[h & mask];
+    }
+
+    protected Stripe stripeFor(long _high, long _low, int _length) {
+        return stripes[(EpcKey.hash(_high, _low, _length) >>> shift) & mask];
+    }
+
+    /**
+     * The monitor guarding the stripe that the EPC belongs to.
+     * This lock is reentrant with all of the single tag methods in this class.
+     */
+    public Object lockFor(String _epc) {
+        return stripeFor(_epc);
+    }
+
+    /**
+     * Same as lockFor(String) for an EPC already packed, see EpcKey.
+     */
+    public Object lockFor(long _high, long _low, int _length) {
+        return stripeFor(_high, _low, _length);
+    }
+
+    public Tag get(String _epc) {
+        Stripe s = stripeFor(_epc);
+        synchronized (s) {
+            return s.tags.get(_epc);
+        }
+    }
+
+    /**
+     * Same as getOrCreate(String) but looks the tag up by the EPC already
+     * packed, the String is only used when the tag is created.
+     */
+    public Tag getOrCreate(String _epc, long _high, long _low, int _length) {
+        Stripe s = stripeFor(_high, _low, _length);
+        synchronized (s) {
+            Tag tag = s.tags.get(_high, _low, _length);
+            if (tag == null) {
+                tag = new Tag(_epc);
+                s.tags.put(_epc, tag);
+                track(tag);
+            }
+            return tag;
+        }
+    }
+
+    public Tag getOrCreate(String _epc) {
+        Stripe s = stripeFor(_epc);
+        synchronized (s) {
+            Tag tag = s.tags.get(_epc);
+            if (tag == null) {
+                tag = new Tag(_epc);
+                s.tags.put(_epc, tag);
+                track(tag);
+            }
+            return tag;
+        }
+    }
+
+    public void put(Tag _tag) {
+        Stripe s = stripeFor(_tag.getEPC());
+        synchronized (s) {
+            Tag prev = s.tags.put(_tag.getEPC(), _tag);
+            if (prev != _tag) {
+                if (prev != null) {
+                    untrack(prev);
+                }
+                track(_tag);
+            }
+        }
+    }
+
+    public Tag remove(String _epc) {
+        Stripe s = stripeFor(_epc);
+        synchronized (s) {
+            Tag tag = s.tags.remove(_epc);
+            if (tag != null) {
+                untrack(tag);
+            }
+            return tag;
+        }
+    }
+
+    // must be called holding the stripe lock for the tag
+    private void track(Tag _tag) {
+        counters.add(_tag);
+        indexes.add(_tag);
+        byEpc.put(_tag.getEPC(), _tag);
+        byReversedEpc.put(reverse(_tag.getEPC()), _tag);
+        _tag.setObserver(observer);
+    }
+
+    // must be called holding the stripe lock for the tag
+    private void untrack(Tag _tag) {
+        _tag.setObserver(null);
+        counters.remove(_tag);
+        indexes.remove(_tag);
+        byEpc.remove(_tag.getEPC(), _tag);
+        byReversedEpc.remove(reverse(_tag.getEPC()), _tag);
+    }
+
+    private static String reverse(String _s) {
+        return new StringBuilder(_s).reverse().toString();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                size += s.tags.size();
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                if (!s.tags.isEmpty()) { return false; }
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.tags.forEachValue(this::untrack);
+                s.tags.clear();
+            }
+        }
+    }
+
+    /**
+     * Visits every tag, in no particular order, while holding
+     * the lock of the stripe the tag belongs to.
+     */
+    public void forEach(Consumer<Tag> _action) {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.tags.forEachValue(_action);
+            }
+        }
+    }
+
+    /**
+     * Visits every tag in EPC order. Each tag is visited while holding the
+     * lock of its stripe, tags removed before they are reached are skipped.
+     */
+    public void forEachSorted(Consumer<Tag> _action) {
+        for (Tag tag : byEpc.values()) {
+            visit(tag, _action);
+        }
+    }
+
+    /**
+     * Visits the tags matching the query in EPC order, with the same
+     * locking as forEachSorted(Consumer).
+     */
+    public void forEachSorted(EpcQuery _query, Consumer<Tag> _action) {
+        forEachSortedAfter(_query, null, tag -> {
+            _action.accept(tag);
+            return true;
+        });
+    }
+
+    /**
+     * Visits the tags matching the query with an EPC strictly after the
+     * given one (all of them when null) in EPC order, until the visitor
+     * returns false. This is what lets a query be resumed from the last
+     * EPC it returned without keeping any state between calls. Locking is
+     * the same as forEachSorted(Consumer).
+     */
+    public void forEachSortedAfter(EpcQuery _query, String _after, Predicate<Tag> _visitor) {
+        switch (_query.shape) {
+            case EXACT:
+                Tag tag = byEpc.get(_query.literal);
+                if (tag != null && isAfter(tag.getEPC(), _after)) {
+                    visitWhile(tag, _visitor);
+                }
+                break;
+            case PREFIX:
+                Map<String, Tag> range = isAfter(_query.literal, _after)
+                                         ? byEpc.tailMap(_query.literal, true)
+                                         : byEpc.tailMap(_after, false);
+                for (Map.Entry<String, Tag> entry : range.entrySet()) {
+                    if (!entry.getKey().startsWith(_query.literal)) {
+                        break;
+                    }
+                    if (!visitWhile(entry.getValue(), _visitor)) {
+                        break;
+                    }
+                }
+                break;
+            case SUFFIX:
+                String reversed = reverse(_query.literal);
+                List<Tag> tags = new ArrayList<>();
+                for (Map.Entry<String, Tag> entry : byReversedEpc.tailMap(reversed).entrySet()) {
+                    if (!entry.getKey().startsWith(reversed)) {
+                        break;
+                    }
+                    if (isAfter(entry.getValue().getEPC(), _after)) {
+                        tags.add(entry.getValue());
+                    }
+                }
+                Collections.sort(tags);
+                for (Tag t : tags) {
+                    if (!visitWhile(t, _visitor)) {
+                        break;
+                    }
+                }
+                break;
+            default:
+                Map<String, Tag> all = _after == null ? byEpc : byEpc.tailMap(_after, false);
+                for (Map.Entry<String, Tag> entry : all.entrySet()) {
+                    if (_query.matches(entry.getKey()) && !visitWhile(entry.getValue(), _visitor)) {
+                        break;
+                    }
+                }
+                break;
+        }
+    }
+
+    private static boolean isAfter(String _epc, String _after) {
+        return _after == null || _epc.compareTo(_after) > 0;
+    }
+
+    /**
+     * Visits the tags in the facility in EPC order, with the same
+     * locking as forEachSorted(Consumer).
+     */
+    public void forEachInFacility(String _facility, Consumer<Tag> _action) {
+        for (Tag tag : indexes.getByFacility(_facility)) {
+            visit(tag, t -> {
+                if (_facility.equals(t.getFacility())) {
+                    _action.accept(t);
+                }
+            });
+        }
+    }
+
+    /**
+     * Visits the tags at the location alias in EPC order, with the same
+     * locking as forEachSorted(Consumer).
+     */
+    public void forEachAtLocation(String _location, Consumer<Tag> _action) {
+        for (Tag tag : indexes.getByLocation(_location)) {
+            visit(tag, t -> {
+                if (_location.equals(t.getLocation())) {
+                    _action.accept(t);
+                }
+            });
+        }
+    }
+
+    /**
+     * Visits the tags in the state in EPC order, with the same
+     * locking as forEachSorted(Consumer).
+     */
+    public void forEachInState(TagState _state, Consumer<Tag> _action) {
+        for (Tag tag : indexes.getByState(_state)) {
+            visit(tag, t -> {
+                if (t.getState() == _state) {
+                    _action.accept(t);
+                }
+            });
+        }
+    }
+
+    private void visit(Tag _tag, Consumer<Tag> _action) {
+        Stripe s = stripeFor(_tag.getEPC());
+        synchronized (s) {
+            if (s.tags.get(_tag.getEPC()) == _tag) {
+                _action.accept(_tag);
+            }
+        }
+    }
+
+    // tags removed before they are reached do not stop the visit
+    private boolean visitWhile(Tag _tag, Predicate<Tag> _visitor) {
+        Stripe s = stripeFor(_tag.getEPC());
+        synchronized (s) {
+            if (s.tags.get(_tag.getEPC()) == _tag) {
+                return _visitor.test(_tag);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes up to _max tags last read before the given time, found from
+     * the last read index rather than by visiting every tag, so only the
+     * stripes of the tags removed are locked and only briefly. Each tag
+     * removed is passed to the action while holding its stripe lock.
+     *
+     * @return the number of tags removed
+     */
+    public int removeReadBefore(long _time, int _max, Consumer<Tag> _removed) {
+        int numRemoved = 0;
+        for (Tag tag : indexes.getReadBefore(_time, _max)) {
+            Stripe s = stripeFor(tag.getEPC());
+            synchronized (s) {
+                // it may have been read or removed since
+                if (s.tags.get(tag.getEPC()) == tag && tag.getLastRead() < _time) {
+                    s.tags.remove(tag.getEPC());
+                    untrack(tag);
+                    _removed.accept(tag);
+                    numRemoved++;
+                }
+            }
+        }
+        return numRemoved;
+    }
+
+}
@@ -17,16 +17,22 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.function.LongSupplier;
 
 public class RssiAdjuster {
 
     protected Logger log = LoggerFactory.getLogger(getClass());
     protected MobilityProfile mobilityProfile;
+    protected LongSupplier clock = System::currentTimeMillis;
 
     public RssiAdjuster() {
         restoreMobilityProfile();
     }
 
+    public void setClock(LongSupplier _clock) {
+        clock = _clock;
+    }
+
     public void set(MobilityProfile _profile) {
         mobilityProfile = _profile;
         persistMobilityProfile();
@@ -44,7 +50,7 @@ public class RssiAdjuster {
         double M = mobilityProfile.getSlope();
         double B = mobilityProfile.getY_intercept();
 
-        w = (M * (System.currentTimeMillis() - _lastReadMillis)) + B;
+        w = (M * (clock.getAsLong() - _lastReadMillis)) + B;
 
         // check if weight needs to be capped at threshold ceiling
         if (w > T) { w = T; }
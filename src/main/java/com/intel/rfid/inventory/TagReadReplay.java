@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.data.InventoryEventItem;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.PeriodicInventoryData;
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.cluster.ClusterManager;
+import com.intel.rfid.controller.ConfigManager;
+import com.intel.rfid.controller.Env;
+import com.intel.rfid.downstream.DownstreamManager;
+import com.intel.rfid.gpio.GPIOManager;
+import com.intel.rfid.helpers.Jackson;
+import com.intel.rfid.helpers.VirtualClock;
+import com.intel.rfid.sensor.SensorManager;
+import com.intel.rfid.sensor.SensorPlatform;
+import com.intel.rfid.upstream.UpstreamInventoryEventInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static com.intel.rfid.inventory.InventoryManager.CFG_KEY_AGEOUT_INTERVAL;
+import static com.intel.rfid.inventory.InventoryManager.DEFAULT_AGEOUT_INTERVAL_MINUTES;
+
+/**
+ * Feeds the inventory_data messages archived by the tag.read logger
+ * (tagread/tagreads-*.json.gz, one message per line) back through the
+ * data handlers, as coming from the sensors that sent them. Each message
+ * goes through the parser and aggregator of the handler its sensor is
+ * sharded to, and on to the TagReadListeners, the same as a live one, but
+ * in the replaying thread so it is done before the clock moves on.
+ * <p>
+ * The inventory is switched to a virtual clock that follows the times the
+ * messages were sent. The departure and ageout timers are run for every
+ * tick of the virtual clock passed between messages, so tags depart and
+ * age out as they would have, whatever the playback speed. Playback is in
+ * real time at a speed of 1, N times faster at a speed of N, or as fast as
+ * possible at a speed of 0. A message sent more than an hour ahead of the
+ * virtual clock is held back until the next one. If that is about as far
+ * ahead there is a gap in the archives and both are replayed, otherwise
+ * the held one is taken for a sensor with its clock off and skipped.
+ * <p>
+ * Run as a program it replays into its own managers, with the configuration
+ * found under the controller home, none of the inventory schedulers and
+ * none of the data handler threads running, the replay drives the timers
+ * and the data handlers itself. See
+ * bin/replay.sh which runs it in a copy of the home so nothing of the
+ * running controller is touched.
+ */
+public class TagReadReplay implements InventoryManager.UpstreamEventListener {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    public static final String ARCHIVE_PREFIX = "tagreads";
+
+    public static class Results {
+        public long numMessages = 0;
+        public long numReads = 0;
+        public long numSkipped = 0;
+        public long numSkewed = 0;
+        public int numSensors = 0;
+        public long virtualMillis = 0;
+        public long wallMillis = 0;
+        public final Map<String, Long> events = new TreeMap<>();
+
+        public double getReadsPerSecond() {
+            return wallMillis == 0 ? 0 : numReads * 1000.0 / wallMillis;
+        }
+
+        public double getSpeedup() {
+            return wallMillis == 0 ? 0 : (double) virtualMillis / wallMillis;
+        }
+
+        public void print(PrintStream _out) {
+            _out.println(String.format("messages: %d  reads: %d  skipped lines: %d  skewed: %d  sensors: %d",
+                                       numMessages, numReads, numSkipped, numSkewed, numSensors));
+            _out.println(String.format("replayed %d s of reads in %.1f s (%.1fx), %.0f reads/sec",
+                                       TimeUnit.MILLISECONDS.toSeconds(virtualMillis),
+                                       wallMillis / 1000.0, getSpeedup(), getReadsPerSecond()));
+            for (Map.Entry<String, Long> entry : events.entrySet()) {
+                _out.println(String.format("  %-12s %d", entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    private static class Message {
+        final String deviceId;
+        final byte[] payload;
+        final long time;
+
+        Message(String _deviceId, byte[] _payload, long _time) {
+            deviceId = _deviceId;
+            payload = _payload;
+            time = _time;
+        }
+    }
+
+    private final SensorManager sensorMgr;
+    private final DownstreamManager downstreamMgr;
+    private final InventoryManager inventoryMgr;
+    private final double speed;
+    private final long ageoutIntervalMillis;
+    private final ObjectMapper mapper = Jackson.getMapper();
+
+    private final Results results = new Results();
+    private final Set<SensorPlatform> sensors = new HashSet<>();
+    private VirtualClock clock;
+    private long virtualStart;
+    private long realStartNanos;
+    private long nextDepartureTick;
+    private long nextAgeout;
+    // a message too far ahead of the clock, held until the next one
+    // tells a sensor with its clock off from a gap in the archives
+    private Message held;
+
+    static final long MAX_JUMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The inventory is expected to be a TagReadListener of the downstream
+     * manager, whose data handlers must not be started.
+     *
+     * @param _speed times faster than real time, 0 for as fast as possible
+     */
+    public TagReadReplay(SensorManager _sensorMgr,
+                         DownstreamManager _downstreamMgr,
+                         InventoryManager _inventoryMgr,
+                         double _speed) {
+        if (_speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative: " + _speed);
+        }
+        sensorMgr = _sensorMgr;
+        downstreamMgr = _downstreamMgr;
+        inventoryMgr = _inventoryMgr;
+        speed = _speed;
+        ageoutIntervalMillis = TimeUnit.MINUTES.toMillis(
+                ConfigManager.instance.getOptLong(CFG_KEY_AGEOUT_INTERVAL, DEFAULT_AGEOUT_INTERVAL_MINUTES));
+    }
+
+    /**
+     * @return the clock the inventory was switched to, null before the
+     * first message
+     */
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * The archives under a directory, oldest first. The one currently being
+     * written (tagreads.json) sorts after the rolled over ones.
+     */
+    public static List<Path> findArchives(Path _dir) throws IOException {
+        List<Path> archives = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(_dir, ARCHIVE_PREFIX + "*.json*")) {
+            for (Path p : ds) {
+                archives.add(p);
+            }
+        }
+        Collections.sort(archives);
+        return archives;
+    }
+
+    public Results replay(List<Path> _archives) throws IOException, InterruptedException {
+        inventoryMgr.addUpstreamEventListener(this);
+        long wallStart = System.currentTimeMillis();
+        try {
+            for (Path archive : _archives) {
+                log.info("replaying {}", archive);
+                try (BufferedReader reader = open(archive)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        replay(line);
+                    }
+                }
+            }
+            if (held != null) {
+                // nothing came after it to show a gap
+                held = null;
+                results.numSkewed++;
+            }
+            if (clock != null) {
+                // whatever is still being aggregated
+                downstreamMgr.replayIdle(Long.MAX_VALUE);
+            }
+        } finally {
+            inventoryMgr.removeUpstreamEventListener(this);
+            results.wallMillis = System.currentTimeMillis() - wallStart;
+            results.numSensors = sensors.size();
+            if (clock != null) {
+                results.virtualMillis = clock.getAsLong() - virtualStart;
+            }
+        }
+        return results;
+    }
+
+    private static BufferedReader open(Path _archive) throws IOException {
+        InputStream is = Files.newInputStream(_archive);
+        if (_archive.getFileName().toString().endsWith(".gz")) {
+            is = new GZIPInputStream(is);
+        }
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+    }
+
+    private void replay(String _line) throws InterruptedException {
+        if (_line.trim().isEmpty()) {
+            return;
+        }
+        InventoryDataNotification data;
+        try {
+            data = mapper.readValue(_line, InventoryDataNotification.class);
+        } catch (IOException e) {
+            results.numSkipped++;
+            return;
+        }
+        PeriodicInventoryData params = data.params;
+        if (params == null || params.device_id == null || params.device_id.isEmpty()) {
+            results.numSkipped++;
+            return;
+        }
+
+        long time = params.sent_on;
+        for (TagRead read : params.data) {
+            time = Math.max(time, read.last_read_on);
+        }
+        Message msg = new Message(params.device_id, _line.getBytes(StandardCharsets.UTF_8), time);
+        if (clock == null) {
+            begin(time);
+        }
+        if (held != null) {
+            if (Math.abs(time - held.time) <= MAX_JUMP_MILLIS) {
+                // about as far ahead, the archives have a gap
+                dispatch(held);
+            } else {
+                results.numSkewed++;
+            }
+            held = null;
+        }
+        if (time - clock.getAsLong() > MAX_JUMP_MILLIS) {
+            held = msg;
+            return;
+        }
+        dispatch(msg);
+    }
+
+    private void dispatch(Message _msg) throws InterruptedException {
+        advanceTo(_msg.time);
+        SensorPlatform rsp = sensorMgr.getSensor(_msg.deviceId);
+        if (rsp == null) {
+            rsp = sensorMgr.establish(_msg.deviceId);
+        }
+        sensors.add(rsp);
+        results.numReads += downstreamMgr.replayInventoryData(rsp, _msg.payload, _msg.time);
+        results.numMessages++;
+    }
+
+    private void begin(long _time) {
+        clock = new VirtualClock(_time);
+        inventoryMgr.setClock(clock);
+        virtualStart = _time;
+        realStartNanos = System.nanoTime();
+        nextDepartureTick = _time + InventoryManager.DEPARTED_TICK_MILLIS;
+        nextAgeout = _time + ageoutIntervalMillis;
+    }
+
+    // the timers run for every tick on the way, as the scheduler would have,
+    // after the aggregates due by then are passed on
+    private void advanceTo(long _time) throws InterruptedException {
+        pace(_time);
+        while (nextDepartureTick <= _time || nextAgeout <= _time) {
+            if (nextDepartureTick <= nextAgeout) {
+                clock.advanceTo(nextDepartureTick);
+                downstreamMgr.replayIdle(nextDepartureTick);
+                inventoryMgr.expireDepartures();
+                nextDepartureTick += InventoryManager.DEPARTED_TICK_MILLIS;
+            } else {
+                clock.advanceTo(nextAgeout);
+                downstreamMgr.replayIdle(nextAgeout);
+                inventoryMgr.ageout();
+                nextAgeout += ageoutIntervalMillis;
+            }
+        }
+        clock.advanceTo(_time);
+    }
+
+    private void pace(long _time) throws InterruptedException {
+        if (speed == 0) {
+            return;
+        }
+        long due = realStartNanos + (long) ((_time - virtualStart) * 1_000_000L / speed);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    @Override
+    public void onUpstreamEvent(UpstreamInventoryEventInfo _uie) {
+        count(_uie);
+    }
+
+    @Override
+    public void onAgeout(UpstreamInventoryEventInfo _uie) {
+        count(_uie);
+    }
+
+    private void count(UpstreamInventoryEventInfo _uie) {
+        synchronized (results.events) {
+            for (InventoryEventItem item : _uie.data) {
+                results.events.merge(item.event_type, 1L, Long::sum);
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("usage: replay [--speed <N> | --max] [<archive or directory> ...]");
+        System.out.println("  --speed <N>  play back N times faster than recorded (default 1)");
+        System.out.println("  --max        play back as fast as possible");
+        System.out.println("  archives default to the tagread directory of the controller home");
+    }
+
+    public static void main(String[] _args) throws Exception {
+        double speed = 1.0;
+        List<Path> archives = new ArrayList<>();
+        for (int i = 0; i < _args.length; i++) {
+            switch (_args[i]) {
+                case "--max":
+                    speed = 0;
+                    break;
+                case "--speed":
+                    if (i + 1 == _args.length) {
+                        usage();
+                        return;
+                    }
+                    speed = Double.parseDouble(_args[++i]);
+                    break;
+                case "-h":
+                case "--help":
+                    usage();
+                    return;
+                default:
+                    Path p = Paths.get(_args[i]);
+                    if (Files.isDirectory(p)) {
+                        archives.addAll(findArchives(p));
+                    } else {
+                        archives.add(p);
+                    }
+            }
+        }
+        if (archives.isEmpty()) {
+            archives.addAll(findArchives(Env.resolveTagRead("")));
+        }
+        if (archives.isEmpty()) {
+            System.out.println("no tag read archives found");
+            return;
+        }
+
+        ClusterManager clusterMgr = new ClusterManager();
+        SensorManager sensorMgr = new SensorManager(clusterMgr);
+        clusterMgr.setSensorManager(sensorMgr);
+        GPIOManager gpioMgr = new GPIOManager(sensorMgr);
+        InventoryManager inventoryMgr = new InventoryManager();
+        // not started, the replay runs the data handlers itself
+        DownstreamManager downstreamMgr = new DownstreamManager(sensorMgr, gpioMgr);
+        downstreamMgr.addTagReadListener(inventoryMgr);
+        clusterMgr.start();
+        sensorMgr.start();
+        // not started, so nothing is restored and its schedulers do not run
+        // on the wall clock next to the timers the replay drives
+        inventoryMgr.unload();
+
+        Results results = new TagReadReplay(sensorMgr, downstreamMgr, inventoryMgr, speed).replay(archives);
+        results.print(System.out);
+
+        inventoryMgr.stop();
+        gpioMgr.stop();
+        sensorMgr.stop();
+        clusterMgr.stop();
+        System.exit(0);
+    }
+
+}
@@ -12,8 +12,11 @@ import com.intel.rfid.exception.NotConnectedException;
 import com.intel.rfid.exception.RspControllerException;
 import com.intel.rfid.helpers.DateTimeHelper;
 import com.intel.rfid.helpers.PrettyPrinter;
+import com.intel.rfid.helpers.RollingStats;
 import com.intel.rfid.security.SecurityContext;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
@@ -32,7 +35,9 @@ import java.util.TimerTask;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class Mqtt implements MqttCallback {
 
@@ -64,11 +69,27 @@ public abstract class Mqtt implements MqttCallback {
     protected ExecutorService exec;
     protected Timer connectTimer;
 
+    public static final String CFG_KEY_OUTBOUND_QUEUE_SIZE = "mqtt.outbound.queue.size";
+    public static final int DEFAULT_OUTBOUND_QUEUE_SIZE = 1000;
+    public static final String CFG_KEY_OUTBOUND_INFLIGHT = "mqtt.outbound.inflight.max";
+    public static final int DEFAULT_OUTBOUND_INFLIGHT = 32;
+    public static final String CFG_KEY_OUTBOUND_OFFER_TIMEOUT = "mqtt.outbound.offer.timeout.millis";
+    public static final long DEFAULT_OUTBOUND_OFFER_TIMEOUT_MILLIS = 2000;
+
+    protected final int maxInflight;
+    protected final long offerTimeoutMillis;
+
     public Mqtt() {
         // generate a unique client id
         clientId = getClass().getSimpleName() +
                 DateTimeHelper.toFilelNameLocal(new Date());
 
+        ConfigManager cm = ConfigManager.instance;
+        outboundQueue = new LinkedBlockingQueue<>(cm.getOptInt(CFG_KEY_OUTBOUND_QUEUE_SIZE,
+                                                               DEFAULT_OUTBOUND_QUEUE_SIZE));
+        maxInflight = Math.max(1, cm.getOptInt(CFG_KEY_OUTBOUND_INFLIGHT, DEFAULT_OUTBOUND_INFLIGHT));
+        inflight = new Semaphore(maxInflight);
+        offerTimeoutMillis = cm.getOptLong(CFG_KEY_OUTBOUND_OFFER_TIMEOUT, DEFAULT_OUTBOUND_OFFER_TIMEOUT_MILLIS);
     }
 
     public MqttStatus getSummary() {
@@ -136,6 +157,17 @@ public abstract class Mqtt implements MqttCallback {
                 _out.line("sub: " + topic);
             }
         }
+        String fmt = "%-12s %-10s %-10s %-10s %-10s %-10s %-18s";
+        _out.line(String.format(fmt, "queue", "in-flight", "published", "failed", "blocked", "dropped",
+                                "latency avg/max"));
+        _out.line(String.format(fmt,
+                                getOutboundQueueDepth() + "/" + getOutboundQueueCapacity(),
+                                getNumInflight() + "/" + maxInflight,
+                                getNumPublished(),
+                                getNumFailed(),
+                                getNumBlocked(),
+                                getNumDropped(),
+                                String.format("%.1f/%.1f ms", getPublishLatencyMean(), getPublishLatencyMax())));
     }
 
     protected void startTimer() {
@@ -184,6 +216,7 @@ public abstract class Mqtt implements MqttCallback {
                 options.setPassword(credentials.password.toCharArray());
             }
             options.setCleanSession(true);
+            options.setMaxInflight(maxInflight);
 
             setLastWill(options);
 
@@ -201,6 +234,11 @@ public abstract class Mqtt implements MqttCallback {
                 client = new MqttAsyncClient(brokerURI, clientId, new MemoryPersistence());
                 client.setCallback(this);
                 client.connect(options).waitForCompletion();
+                // publishes in flight on a previous client will never
+                // complete, so start over with a full window
+                clientGeneration++;
+                inflight.drainPermits();
+                inflight.release(maxInflight);
                 connectionState = Connection.State.CONNECTED;
             }
 
@@ -241,6 +279,14 @@ public abstract class Mqtt implements MqttCallback {
         }
     }
 
+    /**
+     * Told whether the broker acknowledged a publish. It is not called for
+     * a publish still in flight on a client that was replaced by a reconnect.
+     */
+    public interface DeliveryListener {
+        void onDelivery(boolean _delivered);
+    }
+
     public static class Outbound {
 
         public Outbound(String _topic, MqttMessage _mqttMessage) {
@@ -250,14 +296,40 @@ public abstract class Mqtt implements MqttCallback {
 
         public String topic;
         public MqttMessage mqttMessage;
+        protected DeliveryListener deliveryListener;
+        protected long sentNanos;
+        protected int generation;
     }
 
 
-    protected LinkedBlockingQueue<Outbound> outboundQueue = new LinkedBlockingQueue<>(100);
+    protected LinkedBlockingQueue<Outbound> outboundQueue;
 
     protected boolean loggedOnce = false;
 
+    protected final Semaphore inflight;
+    protected volatile int clientGeneration = 0;
+
+    private final AtomicLong numPublished = new AtomicLong();
+    private final AtomicLong numFailed = new AtomicLong();
+    private final AtomicLong numBlocked = new AtomicLong();
+    private final AtomicLong numDropped = new AtomicLong();
+    private final RollingStats publishLatency = RollingStats.ofDoubles(1000);
+
+    /**
+     * Queues the message for publishing. When the queue is full the caller
+     * is held for up to the offer timeout waiting for space, so a burst
+     * slows the producer down rather than losing messages.
+     */
     public void publish(String _topic, byte[] _msg, QOS _qos) throws RspControllerException {
+        publish(_topic, _msg, _qos, null);
+    }
+
+    /**
+     * Same as publish, the listener is told once the broker acknowledged
+     * the message or the publish failed after it was queued.
+     */
+    public void publish(String _topic, byte[] _msg, QOS _qos, DeliveryListener _listener)
+            throws RspControllerException {
 
         if (connectionState != Connection.State.CONNECTED) {
             throw new NotConnectedException("mqtt " + clientId);
@@ -265,24 +337,114 @@ public abstract class Mqtt implements MqttCallback {
         MqttMessage mmsg = new MqttMessage(_msg);
         mmsg.setQos(_qos.value);
         Outbound outbound = new Outbound(_topic, mmsg);
+        outbound.deliveryListener = _listener;
 
         if (!outboundQueue.offer(outbound)) {
-            if (!loggedOnce) {
-                log.warn("outbound queue is full. " +
-                                 "messages will be dropped until space is available");
-                loggedOnce = true;
+            numBlocked.incrementAndGet();
+            boolean queued;
+            try {
+                queued = outboundQueue.offer(outbound, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+            if (!queued) {
+                numDropped.incrementAndGet();
+                if (!loggedOnce) {
+                    log.warn("outbound queue is full. " +
+                                     "messages will be dropped until space is available");
+                    loggedOnce = true;
+                }
+                throw new FailedException("mqtt outbound queue is full");
             }
-            throw new FailedException("mqtt outbound queue is full");
         }
         // clear the state to re-enable the message
         loggedOnce = false;
     }
 
+    public int getOutboundQueueDepth() { return outboundQueue.size(); }
+
+    public int getOutboundQueueCapacity() { return outboundQueue.size() + outboundQueue.remainingCapacity(); }
+
+    public int getNumInflight() { return Math.max(0, maxInflight - inflight.availablePermits()); }
+
+    public long getNumPublished() { return numPublished.get(); }
+
+    public long getNumFailed() { return numFailed.get(); }
+
+    public long getNumBlocked() { return numBlocked.get(); }
+
+    public long getNumDropped() { return numDropped.get(); }
+
+    /**
+     * @return mean milliseconds from handing a message to the client
+     * until the broker acknowledged it, over the last 1000 publishes
+     */
+    public double getPublishLatencyMean() {
+        synchronized (publishLatency) {
+            return publishLatency.getN() == 0 ? 0.0 : publishLatency.getMean();
+        }
+    }
+
+    public double getPublishLatencyMax() {
+        synchronized (publishLatency) {
+            return publishLatency.getN() == 0 ? 0.0 : publishLatency.getMax();
+        }
+    }
 
     protected Runnable getOutboundTask() {
         return new OutboundAsyncClientPublisherTask();
     }
 
+    /**
+     * Completes a publish, the window slot is only given back if the
+     * publish was made on the current client.
+     */
+    protected final IMqttActionListener publishListener = new IMqttActionListener() {
+        @Override
+        public void onSuccess(IMqttToken _token) {
+            Outbound outbound = (Outbound) _token.getUserContext();
+            double millis = (System.nanoTime() - outbound.sentNanos) / 1e6;
+            synchronized (publishLatency) {
+                publishLatency.addValue(millis);
+            }
+            numPublished.incrementAndGet();
+            release(outbound);
+            notifyDelivery(outbound, true);
+        }
+
+        @Override
+        public void onFailure(IMqttToken _token, Throwable _t) {
+            Outbound outbound = (Outbound) _token.getUserContext();
+            numFailed.incrementAndGet();
+            log.error("Error publishing to topic {}: {}", outbound.topic, _t.getMessage());
+            release(outbound);
+            notifyDelivery(outbound, false);
+        }
+
+        private void release(Outbound _outbound) {
+            if (_outbound.generation == clientGeneration) {
+                inflight.release();
+            }
+        }
+    };
+
+    protected void notifyDelivery(Outbound _outbound, boolean _delivered) {
+        if (_outbound.deliveryListener == null) {
+            return;
+        }
+        try {
+            _outbound.deliveryListener.onDelivery(_delivered);
+        } catch (RuntimeException e) {
+            log.error("error in delivery listener for topic {}", _outbound.topic, e);
+        }
+    }
+
+    /**
+     * Keeps up to maxInflight publishes outstanding with the broker at a
+     * time. A publish only holds the client lock long enough to hand the
+     * message to the client, completion is reported to publishListener.
+     */
     protected class OutboundAsyncClientPublisherTask implements Runnable {
 
         public void run() {
@@ -290,36 +452,40 @@ public abstract class Mqtt implements MqttCallback {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
                     Outbound outbound = outboundQueue.take();
+                    inflight.acquire();
 
+                    boolean sent = false;
                     synchronized (clientLock) {
-
                         // this is a just in case
-                        if (client == null) {
-                            continue;
-                        }
-
-                        try {
-                            client.publish(outbound.topic, outbound.mqttMessage).waitForCompletion(1000);
-                        } catch (Exception e) {
-
-                            Throwable t = e;
-                            while (t != null) {
-                                if (t instanceof InterruptedException) {
-                                    Thread.currentThread().interrupt();
-                                    break;
-                                }
-                                t = t.getCause();
+                        if (client != null) {
+                            try {
+                                outbound.generation = clientGeneration;
+                                outbound.sentNanos = System.nanoTime();
+                                client.publish(outbound.topic, outbound.mqttMessage, outbound, publishListener);
+                                sent = true;
+                            } catch (MqttException e) {
+                                log.error("Error publishing to topic {}: {}", outbound.topic, unroll(e));
+                            } catch (RuntimeException e) {
+                                log.error("Error publishing to topic {}", outbound.topic, e);
                             }
-                            log.error("Error publishing to topic {}", outbound.topic, e);
                         }
                     }
+                    if (!sent) {
+                        numFailed.incrementAndGet();
+                        inflight.release();
+                        notifyDelivery(outbound, false);
+                    }
 
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 }
             }
             // need to drain the queue
-            outboundQueue.clear();
+            List<Outbound> unsent = new ArrayList<>();
+            outboundQueue.drainTo(unsent);
+            for (Outbound outbound : unsent) {
+                notifyDelivery(outbound, false);
+            }
         }
     }
 
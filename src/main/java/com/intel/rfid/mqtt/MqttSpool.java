@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.mqtt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A durable FIFO of outbound MQTT messages kept on disk while the broker
+ * can not be reached.
+ * <p>
+ * Messages are appended to fixed size, memory mapped segment files and read
+ * back in the order they were written. A consumed message is marked in place
+ * by negating its length, and a segment is deleted once everything in it is
+ * consumed, so a restart resumes after the last message taken.
+ * <p>
+ * Several messages can be handed out by next() before any of them is
+ * consumed, a message is only consumed once advance() confirms it was
+ * delivered. rewind() hands out everything not yet consumed again.
+ * <p>
+ * Each record is: int length, int CRC32 of the body, then the body of
+ * long timestamp, short topic length, topic, payload. The length is written
+ * last so a record that was only partly written is never read back.
+ * <p>
+ * The spool is bounded by total size and by age. When full the oldest
+ * segment is dropped, and messages older than the age limit are skipped
+ * when read.
+ */
+public class MqttSpool {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    public static final String SEGMENT_PREFIX = "upstream_spool_";
+    public static final String SEGMENT_SUFFIX = ".spool";
+
+    private static final int HEADER_BYTES = 8;
+    private static final int BODY_FIXED_BYTES = 10;
+
+    public static class Record {
+        public final String topic;
+        public final byte[] payload;
+        public final long timestamp;
+
+        private final Segment seg;
+        private final int pos;
+        private final int end;
+
+        Record(String _topic, byte[] _payload, long _timestamp, Segment _seg, int _pos, int _end) {
+            topic = _topic;
+            payload = _payload;
+            timestamp = _timestamp;
+            seg = _seg;
+            pos = _pos;
+            end = _end;
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        final Path path;
+        final MappedByteBuffer buf;
+        int writePos;
+        // everything before this is consumed
+        int readPos;
+        long lastTimestamp;
+        // recovered segments are only read, never appended to
+        boolean sealed;
+
+        Segment(long _id, Path _path, MappedByteBuffer _buf) {
+            id = _id;
+            path = _path;
+            buf = _buf;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private long nextSegment = 0;
+    private long totalBytes = 0;
+    private int count = 0;
+    private boolean open = false;
+
+    // handed out by next() and not yet consumed, oldest first
+    private final Deque<Record> outstanding = new ArrayDeque<>();
+    // where next() continues, null to start over from the oldest
+    private Segment cursorSeg;
+    private int cursorPos;
+
+    private long numSpooled = 0;
+    private long numReplayed = 0;
+    private long numDropped = 0;
+    private long numExpired = 0;
+
+    public MqttSpool(Path _dir, int _segmentBytes, long _maxBytes, long _maxAgeMillis) {
+        dir = _dir;
+        segmentBytes = _segmentBytes;
+        maxBytes = _maxBytes;
+        maxAgeMillis = _maxAgeMillis;
+    }
+
+    public Path getSegmentPath(long _segment) {
+        return dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, _segment, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Maps any segments left from a previous run, the messages still in
+     * them are read back before anything appended from now on.
+     */
+    public synchronized void open() throws IOException {
+        if (open) {
+            return;
+        }
+        Files.createDirectories(dir);
+        for (long id : listSegments()) {
+            Path path = getSegmentPath(id);
+            Segment seg = new Segment(id, path, map(path, Files.size(path)));
+            int n = recover(seg);
+            nextSegment = id + 1;
+            if (n == 0) {
+                Files.deleteIfExists(path);
+                continue;
+            }
+            segments.addLast(seg);
+            totalBytes += seg.buf.capacity();
+            count += n;
+        }
+        open = true;
+        if (count > 0) {
+            log.info("recovered {} spooled messages in {} segments", count, segments.size());
+        }
+    }
+
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        flush();
+        segments.clear();
+        outstanding.clear();
+        cursorSeg = null;
+        totalBytes = 0;
+        count = 0;
+        open = false;
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return the number of messages waiting, including any past the age limit
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    public synchronized void flush() {
+        Segment tail = segments.peekLast();
+        if (tail != null) {
+            tail.buf.force();
+        }
+    }
+
+    public synchronized void append(String _topic, byte[] _payload, long _timestamp) throws IOException {
+        if (!open) {
+            throw new IOException("spool is not open");
+        }
+        byte[] topic = _topic.getBytes(StandardCharsets.UTF_8);
+        int bodyLen = BODY_FIXED_BYTES + topic.length + _payload.length;
+        int recLen = HEADER_BYTES + bodyLen;
+
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.sealed || tail.buf.capacity() - tail.writePos < recLen) {
+            tail = roll(recLen);
+        }
+
+        MappedByteBuffer buf = tail.buf;
+        int pos = tail.writePos;
+        buf.position(pos + HEADER_BYTES);
+        buf.putLong(_timestamp);
+        buf.putShort((short) topic.length);
+        buf.put(topic);
+        buf.put(_payload);
+        buf.putInt(pos + 4, crcOf(buf, pos + HEADER_BYTES, pos + recLen));
+        buf.putInt(pos, bodyLen);
+
+        tail.writePos += recLen;
+        tail.lastTimestamp = _timestamp;
+        count++;
+        numSpooled++;
+        enforceLimits(_timestamp);
+    }
+
+    /**
+     * @return the oldest message handed out and not yet consumed, or the
+     * next one if there is none. The same record is returned until
+     * advance() is called.
+     */
+    public synchronized Record peek() {
+        Record first = outstanding.peekFirst();
+        return first != null ? first : next();
+    }
+
+    /**
+     * @return the message following the last one handed out, or null if
+     * there is none. Messages past the age limit are consumed on the way.
+     */
+    public synchronized Record next() {
+        long oldest = System.currentTimeMillis() - maxAgeMillis;
+        for (Segment seg : segments) {
+            if (cursorSeg != null && seg.id < cursorSeg.id) {
+                continue;
+            }
+            int pos = seg == cursorSeg ? cursorPos : seg.readPos;
+            while (pos < seg.writePos) {
+                int len = seg.buf.getInt(pos);
+                if (len == 0) {
+                    break;
+                }
+                int end = pos + HEADER_BYTES + Math.abs(len);
+                if (len > 0) {
+                    long timestamp = seg.buf.getLong(pos + HEADER_BYTES);
+                    if (timestamp >= oldest) {
+                        cursorSeg = seg;
+                        cursorPos = end;
+                        Record rec = read(seg, pos, end, timestamp);
+                        outstanding.addLast(rec);
+                        return rec;
+                    }
+                    consume(seg, pos, len);
+                    numExpired++;
+                }
+                pos = end;
+            }
+        }
+        trimHead();
+        return null;
+    }
+
+    private Record read(Segment _seg, int _pos, int _end, long _timestamp) {
+        ByteBuffer b = _seg.buf.duplicate();
+        b.position(_pos + HEADER_BYTES + 8);
+        byte[] topic = new byte[b.getShort()];
+        b.get(topic);
+        byte[] payload = new byte[_end - b.position()];
+        b.get(payload);
+        return new Record(new String(topic, StandardCharsets.UTF_8), payload, _timestamp, _seg, _pos, _end);
+    }
+
+    /**
+     * Consumes the oldest record handed out.
+     */
+    public synchronized void advance() {
+        Record first = outstanding.peekFirst();
+        if (first != null) {
+            advance(first);
+        }
+    }
+
+    /**
+     * Consumes a record that was delivered, in any order. A record handed
+     * out again after a rewind is only consumed once.
+     */
+    public synchronized void advance(Record _rec) {
+        outstanding.remove(_rec);
+        // the segment may have been dropped by the size limit since
+        if (!segments.contains(_rec.seg)) {
+            return;
+        }
+        int len = _rec.seg.buf.getInt(_rec.pos);
+        if (len > 0) {
+            consume(_rec.seg, _rec.pos, len);
+            numReplayed++;
+            trimHead();
+        }
+    }
+
+    /**
+     * Forgets what was handed out, next() starts over from the oldest
+     * message not yet consumed.
+     */
+    public synchronized void rewind() {
+        outstanding.clear();
+        cursorSeg = null;
+    }
+
+    /**
+     * @return the number of records handed out and not yet consumed
+     */
+    public synchronized int getNumOutstanding() {
+        return outstanding.size();
+    }
+
+    private void consume(Segment _seg, int _pos, int _len) {
+        _seg.buf.putInt(_pos, -_len);
+        count--;
+    }
+
+    // moves past consumed records at the front and deletes
+    // segments once everything in them is consumed
+    private void trimHead() {
+        while (!segments.isEmpty()) {
+            Segment head = segments.peekFirst();
+            while (head.readPos < head.writePos) {
+                int len = head.buf.getInt(head.readPos);
+                if (len >= 0) {
+                    return;
+                }
+                head.readPos += HEADER_BYTES - len;
+            }
+            if (head == segments.peekLast() && !head.sealed && head.writePos < head.buf.capacity()) {
+                // the tail still being written has nothing more yet
+                return;
+            }
+            removeHead();
+        }
+    }
+
+    private Segment roll(int _recLen) throws IOException {
+        Segment prev = segments.peekLast();
+        if (prev != null) {
+            prev.buf.force();
+        }
+        // a message larger than a segment gets a segment of its own
+        int capacity = Math.max(segmentBytes, _recLen + HEADER_BYTES);
+        long id = nextSegment++;
+        Path path = getSegmentPath(id);
+        Segment seg = new Segment(id, path, map(path, capacity));
+        segments.addLast(seg);
+        totalBytes += capacity;
+        return seg;
+    }
+
+    private void enforceLimits(long _now) {
+        // the segment being written is never dropped
+        while (segments.size() > 1) {
+            Segment head = segments.peekFirst();
+            int live = countLive(head);
+            if (totalBytes > maxBytes) {
+                numDropped += live;
+            } else if (head.lastTimestamp < _now - maxAgeMillis) {
+                numExpired += live;
+            } else {
+                break;
+            }
+            count -= live;
+            removeHead();
+        }
+    }
+
+    private int countLive(Segment _seg) {
+        int n = 0;
+        int pos = _seg.readPos;
+        while (pos < _seg.writePos) {
+            int len = _seg.buf.getInt(pos);
+            if (len == 0) {
+                break;
+            }
+            if (len > 0) {
+                n++;
+            }
+            pos += HEADER_BYTES + Math.abs(len);
+        }
+        return n;
+    }
+
+    private void removeHead() {
+        Segment head = segments.pollFirst();
+        outstanding.removeIf(_rec -> _rec.seg == head);
+        if (head == cursorSeg) {
+            cursorSeg = null;
+        }
+        totalBytes -= head.buf.capacity();
+        try {
+            Files.deleteIfExists(head.path);
+        } catch (IOException e) {
+            log.warn("failed deleting spool segment {}: {}", head.path, e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the end of the records written to a segment from a previous run.
+     *
+     * @return the number of records not yet consumed
+     */
+    private int recover(Segment _seg) {
+        MappedByteBuffer buf = _seg.buf;
+        int n = 0;
+        int pos = 0;
+        while (pos + HEADER_BYTES <= buf.capacity()) {
+            int len = buf.getInt(pos);
+            int bodyLen = Math.abs(len);
+            if (len == 0 || bodyLen < BODY_FIXED_BYTES || pos + HEADER_BYTES + bodyLen > buf.capacity()) {
+                break;
+            }
+            if (len > 0) {
+                if (crcOf(buf, pos + HEADER_BYTES, pos + HEADER_BYTES + bodyLen) != buf.getInt(pos + 4)) {
+                    log.warn("spool segment {} is corrupt at {}, discarding the rest", _seg.path, pos);
+                    break;
+                }
+                n++;
+            }
+            _seg.lastTimestamp = buf.getLong(pos + HEADER_BYTES);
+            pos += HEADER_BYTES + bodyLen;
+        }
+        _seg.writePos = pos;
+        _seg.sealed = true;
+        return n;
+    }
+
+    private int crcOf(ByteBuffer _buf, int _from, int _to) {
+        ByteBuffer b = _buf.duplicate();
+        b.limit(_to);
+        b.position(_from);
+        crc.reset();
+        crc.update(b);
+        return (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(Path _path, long _size) throws IOException {
+        try (FileChannel fc = FileChannel.open(_path,
+                                               StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE)) {
+            return fc.map(FileChannel.MapMode.READ_WRITE, 0, _size);
+        }
+    }
+
+    private List<Long> listSegments() {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                          name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.warn("ignoring unexpected spool file {}", p);
+                }
+            }
+        } catch (IOException e) {
+            log.error("failed listing spool segments in {}: {}", dir, e.getMessage());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    public synchronized long getNumSpooled() { return numSpooled; }
+
+    public synchronized long getNumReplayed() { return numReplayed; }
+
+    public synchronized long getNumDropped() { return numDropped; }
+
+    public synchronized long getNumExpired() { return numExpired; }
+
+}
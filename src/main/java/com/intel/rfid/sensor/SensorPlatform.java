@@ -28,7 +28,6 @@ import com.intel.rfid.api.sensor.GetGeoRegionRequest;
 import com.intel.rfid.api.sensor.GetSoftwareVersionRequest;
 import com.intel.rfid.api.sensor.GetStateRequest;
 import com.intel.rfid.api.sensor.InventoryCompleteNotification;
-import com.intel.rfid.api.sensor.InventoryDataNotification;
 import com.intel.rfid.api.sensor.LEDState;
 import com.intel.rfid.api.sensor.MotionEventNotification;
 import com.intel.rfid.api.sensor.OemCfgUpdateNotification;
@@ -46,6 +45,7 @@ import com.intel.rfid.api.sensor.SetMotionEventRequest;
 import com.intel.rfid.api.sensor.ShutdownRequest;
 import com.intel.rfid.api.sensor.SoftwareUpdateRequest;
 import com.intel.rfid.api.sensor.StatusUpdateNotification;
+import com.intel.rfid.api.sensor.TagRead;
 import com.intel.rfid.api.sensor.VirtualPort;
 import com.intel.rfid.exception.RspControllerException;
 import com.intel.rfid.helpers.ExecutorUtils;
@@ -500,8 +500,8 @@ public class SensorPlatform
         }
     }
 
-    public void onInventoryData(InventoryDataNotification _invData) {
-        sensorStats.onInventoryData(_invData);
+    public void onTagRead(TagRead _read) {
+        sensorStats.onTagRead(_read);
     }
 
     private void onMotionEvent(MotionEventNotification _msg) {
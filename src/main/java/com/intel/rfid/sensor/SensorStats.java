@@ -4,14 +4,12 @@
  */
 package com.intel.rfid.sensor;
 
-import com.intel.rfid.api.sensor.InventoryDataNotification;
 import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.SampleSeries;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
-
 import static com.intel.rfid.helpers.RfUtils.milliwattsToRssi;
 import static com.intel.rfid.helpers.RfUtils.rssiToMilliwatts;
 
@@ -46,38 +44,28 @@ public class SensorStats {
 
     }
 
-    public Data prev10Minutes() {
-        return compile(0, 10 / SAMPLE_RATE_MINUTES);
+    public synchronized Data prev10Minutes() {
+        return compile(10 / SAMPLE_RATE_MINUTES);
     }
 
-    public Data prevHour() {
-        return compile(0, 60 / SAMPLE_RATE_MINUTES);
+    public synchronized Data prevHour() {
+        return compile(60 / SAMPLE_RATE_MINUTES);
     }
 
-    public Data prevDay() {
-        return compile(0, 24 * 60 / SAMPLE_RATE_MINUTES);
+    public synchronized Data prevDay() {
+        return compile(24 * 60 / SAMPLE_RATE_MINUTES);
     }
 
-    public Data prevWeek() {
-        return compile(0, 7 * 24 * 60 / SAMPLE_RATE_MINUTES);
+    public synchronized Data prevWeek() {
+        return compile(7 * 24 * 60 / SAMPLE_RATE_MINUTES);
     }
 
-    private Data compile(int _from, int _n) {
+    private Data compile(int _n) {
         // stay with data collected boundaries
-        int to = _from + _n;
-        if (_from < 0 || to > dequeTagCount.size()) {
+        if (_n > tagCounts.size()) {
             return null;
         }
-        SummaryStatistics count = new SummaryStatistics();
-        SummaryStatistics rssi = new SummaryStatistics();
-        SummaryStatistics util = new SummaryStatistics();
-        for (int i = _from; i < to; i++) {
-            count.addValue(dequeTagCount.get(i));
-            rssi.addValue(dequeRssiMw.get(i));
-            util.addValue(dequeUtilization.get(i));
-        }
-
-        return new Data(count.getMean(), rssi.getMean(), util.getMean());
+        return new Data(tagCounts.mean(_n), rssiMw.mean(_n), utilization.mean(_n));
     }
 
     // sample every 10 minutes and keep those samples for one week.
@@ -88,17 +76,14 @@ public class SensorStats {
     // number of reads total
     // avg rssi
     // utilization %
-    private LinkedList<Double> dequeTagCount = new LinkedList<>();
-    private LinkedList<Double> dequeRssiMw = new LinkedList<>();
-    private LinkedList<Double> dequeUtilization = new LinkedList<>();
+    private final SampleSeries tagCounts = new SampleSeries(TOTAL_N);
+    private final SampleSeries rssiMw = new SampleSeries(TOTAL_N);
+    private final SampleSeries utilization = new SampleSeries(TOTAL_N);
 
     private SummaryStatistics curReadStats = new SummaryStatistics();
 
-    synchronized void onInventoryData(InventoryDataNotification _invData) {
-        for (TagRead readData : _invData.params.data) {
-            double d = rssiToMilliwatts(readData.rssi);
-            curReadStats.addValue(d);
-        }
+    synchronized void onTagRead(TagRead _read) {
+        curReadStats.addValue(rssiToMilliwatts(_read.rssi));
     }
 
     // utilization
@@ -123,18 +108,12 @@ public class SensorStats {
     // copy over the stats
     synchronized void sample() {
 
-        // adjust deques
-        while (dequeTagCount.size() >= TOTAL_N) {
-            dequeTagCount.removeLast();
-            dequeRssiMw.removeLast();
-            dequeUtilization.removeLast();
-        }
-
-        dequeTagCount.addFirst((double) curReadStats.getN());
-        dequeRssiMw.addFirst(curReadStats.getMean());
-        dequeUtilization.addFirst(curUtilStats.getUtilizationPercent());
+        // the oldest sample drops off once a series is full
+        tagCounts.add(curReadStats.getN());
+        rssiMw.add(curReadStats.getMean());
+        utilization.add(curUtilStats.getUtilizationPercent());
 
-        curReadStats = new SummaryStatistics();
+        curReadStats.clear();
         curUtilStats.snapForward();
     }
 
@@ -0,0 +1,759 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.sim;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.data.DataHandlerStatus;
+import com.intel.rfid.api.data.MqttStatus;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.upstream.DownstreamGetMqttStatusRequest;
+import com.intel.rfid.helpers.Jackson;
+import com.intel.rfid.mqtt.Mqtt;
+import com.intel.rfid.upstream.MqttUpstream;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.intel.rfid.downstream.MqttDownstream.COMMAND_TOPIC;
+import static com.intel.rfid.downstream.MqttDownstream.CONNECT_TOPIC;
+
+/**
+ * Drives a controller with hundreds of simulated RSPs through an MQTT
+ * broker to find the inventory data rate it keeps up with.
+ * <p>
+ * The sensors connect and answer commands as real ones do (see SimSensor)
+ * and read a population of tags that move between them (see
+ * TagPopulation). Inventory data is sent round robin across the sensors at
+ * a rate that is raised step by step. After every step the controller is
+ * asked for its downstream status over the upstream broker, and the ramp
+ * stops at the first step where its data handlers dropped messages. The
+ * last step before that is the rate it sustains.
+ * <p>
+ * Nothing of the controller is used besides the API classes, so it runs
+ * from its own JVM against the controller under test, see bin/loadgen.sh.
+ */
+public class LoadGenerator {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    public static final int MAX_INFLIGHT = 1000;
+    public static final long PROBE_TIMEOUT_MILLIS = 5000;
+    public static final int PROBE_ATTEMPTS = 3;
+
+    public static class Options {
+        public String brokerURI = "tcp://localhost:1883";
+        // null for the same broker
+        public String upstreamURI = null;
+        public String username = null;
+        public String password = null;
+        public boolean probe = true;
+        public int numSensors = 100;
+        public int numConnections = 10;
+        public int hostBase = 150000;
+        public int numTags = 10000;
+        public TagPopulation.Movement movement = TagPopulation.Movement.WANDER;
+        public long dwellMillis = 30000;
+        public int readsPerMessage = 50;
+        // inventory_data messages per second, over all sensors
+        public double startRate = 50;
+        public double rateFactor = 1.5;
+        public double maxRate = 20000;
+        public long stepMillis = 10000;
+        public int heartbeatSeconds = 30;
+        public int qos = 1;
+        // only read between apply_behavior START and STOP
+        public boolean onDemand = false;
+        public long seed = 1;
+        public long connectTimeoutMillis = 30000;
+
+        public static Options parse(String[] _args) {
+            Options o = new Options();
+            for (int i = 0; i < _args.length; i++) {
+                String arg = _args[i];
+                if (arg.equals("--no-probe")) {
+                    o.probe = false;
+                    continue;
+                }
+                if (arg.equals("--on-demand")) {
+                    o.onDemand = true;
+                    continue;
+                }
+                if (i + 1 == _args.length) {
+                    throw new IllegalArgumentException("missing value for " + arg);
+                }
+                String val = _args[++i];
+                switch (arg) {
+                    case "--broker":
+                        o.brokerURI = val;
+                        break;
+                    case "--upstream":
+                        o.upstreamURI = val;
+                        break;
+                    case "--username":
+                        o.username = val;
+                        break;
+                    case "--password":
+                        o.password = val;
+                        break;
+                    case "--sensors":
+                        o.numSensors = Integer.parseInt(val);
+                        break;
+                    case "--connections":
+                        o.numConnections = Integer.parseInt(val);
+                        break;
+                    case "--host-base":
+                        o.hostBase = Integer.parseInt(val);
+                        break;
+                    case "--tags":
+                        o.numTags = Integer.parseInt(val);
+                        break;
+                    case "--movement":
+                        o.movement = TagPopulation.Movement.valueOf(val.toUpperCase());
+                        break;
+                    case "--dwell":
+                        o.dwellMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(val));
+                        break;
+                    case "--reads":
+                        o.readsPerMessage = Integer.parseInt(val);
+                        break;
+                    case "--rate":
+                        o.startRate = Double.parseDouble(val);
+                        break;
+                    case "--factor":
+                        o.rateFactor = Double.parseDouble(val);
+                        break;
+                    case "--max-rate":
+                        o.maxRate = Double.parseDouble(val);
+                        break;
+                    case "--step":
+                        o.stepMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(val));
+                        break;
+                    case "--heartbeat":
+                        o.heartbeatSeconds = Integer.parseInt(val);
+                        break;
+                    case "--qos":
+                        o.qos = Integer.parseInt(val);
+                        break;
+                    case "--seed":
+                        o.seed = Long.parseLong(val);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + arg);
+                }
+            }
+            if (o.numSensors < 1 || o.numConnections < 1 || o.numTags < 0 || o.readsPerMessage < 0) {
+                throw new IllegalArgumentException("sensors and connections must be positive, tags and reads not negative");
+            }
+            if (o.startRate <= 0 || o.maxRate < o.startRate || o.rateFactor <= 1.0) {
+                throw new IllegalArgumentException("need 0 < rate <= max rate and a factor above 1");
+            }
+            if (o.stepMillis < 1000 || o.heartbeatSeconds < 1 || o.qos < 0 || o.qos > 2) {
+                throw new IllegalArgumentException("need a step of a second or more, a positive heartbeat and qos 0 to 2");
+            }
+            return o;
+        }
+    }
+
+    public static class Step {
+        public double targetRate;
+        public long millis;
+        public long numSent = 0;
+        public long numFailed = 0;
+        public long numReads = 0;
+        // times none of the sensors was reading to send
+        public long numIdle = 0;
+        // as counted by the controller's data handlers, -1 when not known
+        public long numReceived = -1;
+        public long numDropped = -1;
+        public int peakDepth = -1;
+        public int capacity = -1;
+
+        public double getSentRate() {
+            return millis == 0 ? 0 : numSent * 1000.0 / millis;
+        }
+
+        public double getReadRate() {
+            return millis == 0 ? 0 : numReads * 1000.0 / millis;
+        }
+
+        /**
+         * @return messages per second that reached the controller's data
+         * handlers, 0 when not known
+         */
+        public double getReceivedRate() {
+            return millis == 0 || numReceived < 0 ? 0 : numReceived * 1000.0 / millis;
+        }
+
+        public double getReceivedReadRate() {
+            return numSent == 0 ? 0 : getReceivedRate() * numReads / numSent;
+        }
+    }
+
+    public static class Results {
+        private static final String STEP_FMT = "%10s %10s %10s %8s %10s %9s %11s";
+
+        public int numSensors = 0;
+        public int numConnected = 0;
+        public long numTagMoves = 0;
+        // the ramp ended because the load could not be sent any faster
+        public boolean sendLimited = false;
+        // the ramp was stopped early, i.e. with ctrl-c
+        public boolean stopped = false;
+        public final List<Step> steps = new ArrayList<>();
+
+        /**
+         * @return the fastest step the controller took without dropping,
+         * null if it dropped from the first or could not be asked
+         */
+        public Step getSustained() {
+            Step sustained = null;
+            for (Step s : steps) {
+                if (s.numDropped == 0 && (sustained == null || s.getReceivedRate() > sustained.getReceivedRate())) {
+                    sustained = s;
+                }
+            }
+            return sustained;
+        }
+
+        public static void printHeader(PrintStream _out) {
+            _out.println(String.format(STEP_FMT, "target/s", "sent/s", "reads/s", "failed",
+                                       "received", "dropped", "peak depth"));
+        }
+
+        public static void print(PrintStream _out, Step _step) {
+            _out.println(String.format(STEP_FMT,
+                                       String.format("%.0f", _step.targetRate),
+                                       String.format("%.0f", _step.getSentRate()),
+                                       String.format("%.0f", _step.getReadRate()),
+                                       _step.numFailed,
+                                       _step.numReceived < 0 ? "-" : String.valueOf(_step.numReceived),
+                                       _step.numDropped < 0 ? "-" : String.valueOf(_step.numDropped),
+                                       _step.peakDepth < 0 ? "-" : _step.peakDepth + "/" + _step.capacity));
+        }
+
+        public void print(PrintStream _out) {
+            _out.println(String.format("sensors: %d of %d connected  tag moves: %d",
+                                       numConnected, numSensors, numTagMoves));
+            if (steps.isEmpty()) {
+                _out.println("no load was generated");
+                return;
+            }
+            Step last = steps.get(steps.size() - 1);
+            Step sustained = getSustained();
+            if (last.numDropped < 0 && sustained == null) {
+                _out.println("the controller could not be asked for its drops, " +
+                                     "is its upstream on the same broker or given with --upstream?");
+            } else if (sustained == null) {
+                _out.println(String.format("dropped from the first step at %.0f msg/s", last.getSentRate()));
+            } else {
+                _out.println(String.format("sustained %.0f msg/s, %.0f reads/s without dropping",
+                                           sustained.getReceivedRate(), sustained.getReceivedReadRate()));
+                if (sustained.numReceived < sustained.numSent * 0.95) {
+                    _out.println(String.format("only %.0f%% of the %.0f msg/s sent got to the controller, " +
+                                                       "the broker may be the limit",
+                                               100.0 * sustained.numReceived / sustained.numSent,
+                                               sustained.getSentRate()));
+                }
+                if (last.numDropped > 0) {
+                    _out.println(String.format("dropped %d at %.0f msg/s, %.0f reads/s",
+                                               last.numDropped, last.getReceivedRate(), last.getReceivedReadRate()));
+                } else if (last.numDropped < 0) {
+                    _out.println("the controller did not answer after the last step");
+                } else if (stopped) {
+                    _out.println("stopped before any drops");
+                } else if (sendLimited) {
+                    _out.println(String.format("could not send faster than %.0f msg/s, " +
+                                                       "the broker or the generator is the limit",
+                                               last.getSentRate()));
+                } else {
+                    _out.println("no drops up to the maximum rate");
+                }
+            }
+        }
+    }
+
+    private final Options options;
+    private final ObjectMapper mapper = Jackson.getMapper();
+    private final TagPopulation tags;
+    private final List<Connection> connections = new ArrayList<>();
+    private final SimSensor[] sensors;
+    private ControllerProbe probe;
+
+    private final Results results = new Results();
+    private final AtomicInteger peakDepth = new AtomicInteger(-1);
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile boolean stopped = false;
+    private int nextSensor = 0;
+    private long lastSecond = 0;
+
+    public LoadGenerator(Options _options) {
+        options = _options;
+        tags = new TagPopulation(_options.numTags, _options.numSensors, _options.movement,
+                                 _options.dwellMillis, _options.seed);
+        sensors = new SimSensor[_options.numSensors];
+        results.numSensors = sensors.length;
+    }
+
+    /**
+     * Stops the ramp after the current step, waiting for the sensors to
+     * shut down.
+     */
+    public void stop() throws InterruptedException {
+        stopped = true;
+        closed.await(options.stepMillis + PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public Results run(PrintStream _out) throws MqttException, InterruptedException {
+        try {
+            open(_out);
+            waitForConnected();
+            _out.println(String.format("%d of %d sensors connected over %d connections",
+                                       results.numConnected, sensors.length, connections.size()));
+            if (results.numConnected > 0) {
+                ramp(_out);
+            }
+        } finally {
+            close();
+        }
+        return results;
+    }
+
+    private void open(PrintStream _out) throws MqttException {
+        for (int i = 0; i < options.numConnections && i < sensors.length; i++) {
+            connections.add(new Connection(i));
+        }
+        for (int i = 0; i < sensors.length; i++) {
+            Connection c = connections.get(i % connections.size());
+            sensors[i] = new SimSensor(i, options.hostBase + i, c);
+            c.members.put(sensors[i].getDeviceId(), sensors[i]);
+        }
+        for (Connection c : connections) {
+            c.connect();
+        }
+        if (options.probe) {
+            String uri = options.upstreamURI != null ? options.upstreamURI : options.brokerURI;
+            try {
+                ControllerProbe p = new ControllerProbe(uri);
+                p.connect();
+                probe = p;
+            } catch (MqttException e) {
+                _out.println("no controller status from " + uri + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void waitForConnected() throws InterruptedException {
+        for (SimSensor s : sensors) {
+            s.connect();
+        }
+        long deadline = System.currentTimeMillis() + options.connectTimeoutMillis;
+        int n;
+        do {
+            TimeUnit.MILLISECONDS.sleep(100);
+            n = 0;
+            for (SimSensor s : sensors) {
+                n += s.isConnected() ? 1 : 0;
+            }
+        } while (n < sensors.length && System.currentTimeMillis() < deadline && !stopped);
+        results.numConnected = n;
+    }
+
+    private void ramp(PrintStream _out) throws InterruptedException {
+        tags.start(System.currentTimeMillis());
+        Counts last = queryCounts();
+        Results.printHeader(_out);
+        double rate = options.startRate;
+        while (!stopped) {
+            Step step = runStep(rate);
+            Counts next = queryCounts();
+            if (last != null && next != null) {
+                step.numReceived = next.received - last.received;
+                step.numDropped = next.dropped - last.dropped;
+                step.peakDepth = Math.max(step.peakDepth, next.depth);
+                step.capacity = next.capacity;
+            }
+            last = next;
+            results.steps.add(step);
+            Results.print(_out, step);
+            if (step.numDropped > 0 || rate >= options.maxRate) {
+                break;
+            }
+            if (step.numSent + step.numIdle < rate * step.millis / 1000 * 0.9) {
+                results.sendLimited = true;
+                break;
+            }
+            rate = Math.min(options.maxRate, rate * options.rateFactor);
+        }
+        results.numTagMoves = tags.getNumMoves();
+        results.stopped = stopped;
+    }
+
+    // the controller may be too busy to answer straight after a step,
+    // with the load paused it catches up
+    private Counts queryCounts() throws InterruptedException {
+        for (int i = 0; probe != null && i < PROBE_ATTEMPTS; i++) {
+            Counts c = Counts.of(probe.query());
+            if (c != null || stopped) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private Step runStep(double _rate) throws InterruptedException {
+        Step step = new Step();
+        step.targetRate = _rate;
+        peakDepth.set(-1);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(options.stepMillis);
+        long offered = 0;
+        long now;
+        while ((now = System.nanoTime()) < end && !stopped) {
+            long due = (long) ((now - start) / 1e9 * _rate) + 1;
+            long wall = System.currentTimeMillis();
+            tick(wall);
+            while (offered < due) {
+                offered++;
+                SimSensor s = nextReader();
+                if (s == null) {
+                    step.numIdle++;
+                    continue;
+                }
+                InventoryDataNotification data = s.read(tags, options.readsPerMessage, wall);
+                if (s.send(data)) {
+                    step.numSent++;
+                    step.numReads += data.params.data.size();
+                } else {
+                    step.numFailed++;
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        step.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        step.peakDepth = peakDepth.get();
+        return step;
+    }
+
+    private SimSensor nextReader() {
+        for (int i = 0; i < sensors.length; i++) {
+            SimSensor s = sensors[nextSensor];
+            nextSensor = (nextSensor + 1) % sensors.length;
+            if (s.isConnected() && (!options.onDemand || s.isReading())) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    // once a second the tags move, a share of the sensors send their
+    // heartbeat and the controller is asked how full its queues are
+    private void tick(long _now) {
+        long second = _now / 1000;
+        if (second == lastSecond) {
+            return;
+        }
+        lastSecond = second;
+        tags.advance(_now);
+        for (SimSensor s : sensors) {
+            if ((second + s.getIndex()) % options.heartbeatSeconds == 0) {
+                s.heartbeat();
+            }
+        }
+        if (probe != null) {
+            probe.request().thenAccept(status -> {
+                Counts c = Counts.of(status);
+                if (c != null) {
+                    peakDepth.accumulateAndGet(c.depth, Math::max);
+                }
+            });
+        }
+    }
+
+    private void close() {
+        for (SimSensor s : sensors) {
+            if (s != null && s.isConnected()) {
+                s.shutdown();
+            }
+        }
+        for (Connection c : connections) {
+            c.close();
+        }
+        if (probe != null) {
+            probe.close();
+        }
+        closed.countDown();
+    }
+
+    private MqttConnectOptions connectOptions() {
+        MqttConnectOptions o = new MqttConnectOptions();
+        o.setCleanSession(true);
+        o.setMaxInflight(MAX_INFLIGHT);
+        if (options.username != null && !options.username.isEmpty()) {
+            o.setUserName(options.username);
+        }
+        if (options.password != null && !options.password.isEmpty()) {
+            o.setPassword(options.password.toCharArray());
+        }
+        return o;
+    }
+
+    private void close(MqttAsyncClient _client) {
+        try {
+            if (_client.isConnected()) {
+                _client.disconnect(2000).waitForCompletion();
+            }
+            _client.close();
+        } catch (MqttException e) {
+            log.warn("error closing {}: {}", _client.getClientId(), e.getMessage());
+        }
+    }
+
+    // the controller's data handler counters, summed over the shards
+    private static class Counts {
+        long received = 0;
+        long dropped = 0;
+        int depth = 0;
+        int capacity = 0;
+
+        static Counts of(MqttStatus _status) {
+            if (_status == null) {
+                return null;
+            }
+            Counts c = new Counts();
+            for (DataHandlerStatus dhs : _status.data_handlers) {
+                c.received += dhs.num_queued + dhs.num_dropped;
+                c.dropped += dhs.num_dropped;
+                c.depth = Math.max(c.depth, dhs.queue_depth);
+                c.capacity = Math.max(c.capacity, dhs.queue_capacity);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * A broker connection shared by a share of the sensors, like their own
+     * would be but without a client per sensor.
+     */
+    private class Connection implements MqttCallback, SimSensor.Link {
+
+        private final MqttAsyncClient client;
+        // filled in before connecting, only read after
+        private final Map<String, SimSensor> members = new HashMap<>();
+
+        private Connection(int _n) throws MqttException {
+            client = new MqttAsyncClient(options.brokerURI, "rsp-sim-" + options.hostBase + "-" + _n,
+                                         new MemoryPersistence());
+            client.setCallback(this);
+        }
+
+        private void connect() throws MqttException {
+            client.connect(connectOptions()).waitForCompletion();
+            List<String> topics = new ArrayList<>();
+            for (String deviceId : members.keySet()) {
+                topics.add(CONNECT_TOPIC + "/" + deviceId);
+                topics.add(COMMAND_TOPIC + "/" + deviceId);
+            }
+            int[] qos = new int[topics.size()];
+            Arrays.fill(qos, options.qos);
+            client.subscribe(topics.toArray(new String[0]), qos).waitForCompletion();
+        }
+
+        @Override
+        public boolean publish(String _topic, Object _msg) {
+            try {
+                client.publish(_topic, mapper.writeValueAsBytes(_msg), options.qos, false);
+                return true;
+            } catch (MqttException | JsonProcessingException e) {
+                // i.e. the in flight window is full, counted by the caller
+                return false;
+            }
+        }
+
+        @Override
+        public void messageArrived(String _topic, MqttMessage _msg) {
+            SimSensor s = members.get(_topic.substring(_topic.lastIndexOf('/') + 1));
+            if (s == null) {
+                return;
+            }
+            try {
+                JsonNode root = mapper.readTree(_msg.getPayload());
+                if (_topic.startsWith(CONNECT_TOPIC)) {
+                    s.onConnectResponse(root);
+                } else {
+                    s.onCommand(root);
+                }
+            } catch (Exception e) {
+                log.error("{} error handling {}", s.getDeviceId(), _topic, e);
+            }
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken _token) { }
+
+        @Override
+        public void connectionLost(Throwable _cause) {
+            log.warn("{} lost connection to {}: {}", client.getClientId(), options.brokerURI, _cause.getMessage());
+        }
+
+        private void close() {
+            LoadGenerator.this.close(client);
+        }
+    }
+
+    /**
+     * Asks the controller for its downstream status over the upstream
+     * broker, the same as any upstream application would.
+     */
+    private class ControllerProbe implements MqttCallback {
+
+        private final MqttAsyncClient client;
+        private final Map<String, CompletableFuture<MqttStatus>> pending = new ConcurrentHashMap<>();
+
+        private ControllerProbe(String _uri) throws MqttException {
+            client = new MqttAsyncClient(_uri, "rsp-sim-" + options.hostBase + "-probe", new MemoryPersistence());
+            client.setCallback(this);
+        }
+
+        private void connect() throws MqttException {
+            client.connect(connectOptions()).waitForCompletion();
+            client.subscribe(MqttUpstream.RESPONSE_TOPIC, 1).waitForCompletion();
+        }
+
+        private CompletableFuture<MqttStatus> request() {
+            DownstreamGetMqttStatusRequest req = new DownstreamGetMqttStatusRequest();
+            CompletableFuture<MqttStatus> f = new CompletableFuture<>();
+            pending.put(req.getId(), f);
+            try {
+                client.publish(MqttUpstream.COMMAND_TOPIC, mapper.writeValueAsBytes(req), 1, false);
+            } catch (MqttException | JsonProcessingException e) {
+                pending.remove(req.getId());
+                f.completeExceptionally(e);
+            }
+            return f;
+        }
+
+        /**
+         * @return null when the controller did not answer in time
+         */
+        private MqttStatus query() throws InterruptedException {
+            CompletableFuture<MqttStatus> f = request();
+            try {
+                return f.get(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                pending.values().remove(f);
+                log.warn("no downstream status from the controller within {} ms", PROBE_TIMEOUT_MILLIS);
+                return null;
+            } catch (ExecutionException e) {
+                log.warn("no downstream status from the controller: {}", e.getCause().getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        public void messageArrived(String _topic, MqttMessage _msg) {
+            try {
+                JsonNode root = mapper.readTree(_msg.getPayload());
+                CompletableFuture<MqttStatus> f = pending.remove(root.path("id").asText());
+                if (f == null) {
+                    return;
+                }
+                JsonNode result = root.get("result");
+                f.complete(result == null ? null : mapper.treeToValue(result, MqttStatus.class));
+            } catch (Exception e) {
+                log.error("error handling {}", _topic, e);
+            }
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken _token) { }
+
+        @Override
+        public void connectionLost(Throwable _cause) {
+            log.warn("lost connection for the controller status: {}", _cause.getMessage());
+        }
+
+        private void close() {
+            LoadGenerator.this.close(client);
+        }
+    }
+
+    private static void usage() {
+        System.out.println("usage: loadgen [options]");
+        System.out.println("  --broker <uri>       downstream broker (default tcp://localhost:1883)");
+        System.out.println("  --upstream <uri>     upstream broker to ask the controller for drops (default the same)");
+        System.out.println("  --no-probe           do not ask the controller, only generate the load");
+        System.out.println("  --username <name>    --password <password>  for the brokers");
+        System.out.println("  --sensors <N>        simulated RSPs (default 100)");
+        System.out.println("  --connections <N>    broker connections the sensors share (default 10)");
+        System.out.println("  --host-base <N>      device ids start at RSP-<N> (default 150000)");
+        System.out.println("  --tags <N>           tag population (default 10000)");
+        System.out.println("  --movement <M>       static, wander or conveyor (default wander)");
+        System.out.println("  --dwell <seconds>    time a tag stays at a sensor (default 30)");
+        System.out.println("  --reads <N>          most reads per inventory_data message (default 50)");
+        System.out.println("  --rate <N>           messages per second to start at (default 50)");
+        System.out.println("  --factor <F>         rate increase per step (default 1.5)");
+        System.out.println("  --max-rate <N>       messages per second to stop at (default 20000)");
+        System.out.println("  --step <seconds>     length of a step (default 10)");
+        System.out.println("  --heartbeat <secs>   heartbeat interval (default 30)");
+        System.out.println("  --qos <0|1|2>        qos of everything published (default 1)");
+        System.out.println("  --on-demand          only read when the controller starts the sensor");
+        System.out.println("  --seed <N>           seed for the tag movement");
+    }
+
+    public static void main(String[] _args) throws Exception {
+        for (String arg : _args) {
+            if (arg.equals("-h") || arg.equals("--help")) {
+                usage();
+                return;
+            }
+        }
+        Options options;
+        try {
+            options = Options.parse(_args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            usage();
+            return;
+        }
+
+        LoadGenerator generator = new LoadGenerator(options);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                generator.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            generator.run(System.out).print(System.out);
+        } catch (MqttException e) {
+            System.out.println("could not connect to " + options.brokerURI + ": " + Mqtt.unroll(e));
+        }
+        System.exit(0);
+    }
+
+}
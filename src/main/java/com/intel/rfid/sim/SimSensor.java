@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.sim;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.intel.rfid.api.JsonResponseOK;
+import com.intel.rfid.api.sensor.ApplyBehaviorRequest;
+import com.intel.rfid.api.sensor.ConnectRequest;
+import com.intel.rfid.api.sensor.GeoRegion;
+import com.intel.rfid.api.sensor.GetGeoRegionRequest;
+import com.intel.rfid.api.sensor.GetGeoRegionResponse;
+import com.intel.rfid.api.sensor.GetSoftwareVersionRequest;
+import com.intel.rfid.api.sensor.GetSoftwareVersionResponse;
+import com.intel.rfid.api.sensor.GetStateRequest;
+import com.intel.rfid.api.sensor.GetStateResponse;
+import com.intel.rfid.api.sensor.InventoryCompleteNotification;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.RebootRequest;
+import com.intel.rfid.api.sensor.ResetRequest;
+import com.intel.rfid.api.sensor.RspInfo;
+import com.intel.rfid.api.sensor.SensorHeartbeatNotification;
+import com.intel.rfid.api.sensor.SensorSoftwareVersions;
+import com.intel.rfid.api.sensor.SetFacilityIdRequest;
+import com.intel.rfid.api.sensor.SetGeoRegionRequest;
+import com.intel.rfid.api.sensor.ShutdownRequest;
+import com.intel.rfid.api.sensor.StatusUpdateNotification;
+import com.intel.rfid.api.sensor.TagRead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+import static com.intel.rfid.downstream.MqttDownstream.CONNECT_TOPIC;
+import static com.intel.rfid.downstream.MqttDownstream.DATA_TOPIC;
+import static com.intel.rfid.downstream.MqttDownstream.RESPONSE_TOPIC;
+import static com.intel.rfid.downstream.MqttDownstream.RSP_STATUS_TOPIC;
+
+/**
+ * One simulated RSP, speaking the downstream protocol the way the sensor
+ * software does: connect, status_update ready once the controller has
+ * answered, heartbeats, a response to every command on its command topic
+ * and inventory_data for the tags in its view.
+ * <p>
+ * Commands are answered from the MQTT client's thread, the load generator
+ * builds the heartbeats and the inventory data from its own.
+ */
+public class SimSensor {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Where the sensor's messages go, i.e. the MQTT client it shares.
+     */
+    public interface Link {
+        /**
+         * @return false if the message could not be handed on
+         */
+        boolean publish(String _topic, Object _msg);
+    }
+
+    public static final String APP_VERSION = "19.7.sim";
+    public static final int NUM_PORTS = 2;
+    public static final String UNKNOWN_FACILITY_ID = "UNKNOWN";
+
+    private final int index;
+    private final String deviceId;
+    private final RspInfo info = new RspInfo();
+    private final Link link;
+    // only used from the load generator's thread
+    private final Random random;
+    private int cursor = 0;
+
+    private volatile String facilityId = UNKNOWN_FACILITY_ID;
+    private volatile GeoRegion region = GeoRegion.USA;
+    private volatile boolean connected = false;
+    private volatile boolean reading = false;
+
+    /**
+     * @param _index    the sensor's index in the population
+     * @param _hostNum  numbers the device id and the hardware address,
+     *                  RSP-150000 is 98:4f:ee:02:49:f0
+     */
+    public SimSensor(int _index, int _hostNum, Link _link) {
+        index = _index;
+        deviceId = "RSP-" + _hostNum;
+        link = _link;
+        random = new Random(_hostNum);
+        info.hostname = deviceId;
+        info.hwaddress = String.format("98:4f:ee:%02x:%02x:%02x",
+                                       (_hostNum >> 16) & 0xff, (_hostNum >> 8) & 0xff, _hostNum & 0xff);
+        info.app_version = APP_VERSION;
+        info.module_version = "none";
+        info.num_physical_ports = NUM_PORTS;
+        info.motion_sensor = true;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getFacilityId() {
+        return facilityId;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isReading() {
+        return reading;
+    }
+
+    public void connect() {
+        connected = false;
+        reading = false;
+        link.publish(CONNECT_TOPIC, new ConnectRequest(new RspInfo(info)));
+    }
+
+    /**
+     * The controller's answer to connect, which carries the facility.
+     */
+    public void onConnectResponse(JsonNode _root) {
+        JsonNode result = _root.get("result");
+        if (result == null || !result.isObject()) {
+            log.warn("{} connect refused: {}", deviceId, _root);
+            return;
+        }
+        facilityId = result.path("facility_id").asText(UNKNOWN_FACILITY_ID);
+        connected = true;
+        sendStatus(StatusUpdateNotification.Status.ready);
+    }
+
+    public void onCommand(JsonNode _root) {
+        String id = _root.path("id").asText();
+        String method = _root.path("method").asText();
+        JsonNode params = _root.path("params");
+
+        switch (method) {
+            case ApplyBehaviorRequest.METHOD_NAME:
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+                if (ApplyBehaviorRequest.Action.STOP.name().equals(params.path("action").asText())) {
+                    stopReading();
+                } else {
+                    reading = true;
+                }
+                break;
+
+            case GetStateRequest.METHOD_NAME:
+                respond(new GetStateResponse(id, new RspInfo(info)));
+                break;
+
+            case GetSoftwareVersionRequest.METHOD_NAME:
+                GetSoftwareVersionResponse versions = new GetSoftwareVersionResponse();
+                SensorSoftwareVersions result = new SensorSoftwareVersions();
+                result.app_version = info.app_version;
+                result.module_version = info.module_version;
+                versions.id = id;
+                versions.result = result;
+                respond(versions);
+                break;
+
+            case GetGeoRegionRequest.METHOD_NAME:
+                respond(new GetGeoRegionResponse(id, region));
+                break;
+
+            case SetGeoRegionRequest.METHOD_NAME:
+                try {
+                    region = GeoRegion.valueOf(params.path("region").asText().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    log.warn("{} unknown region: {}", deviceId, params);
+                }
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+                break;
+
+            case SetFacilityIdRequest.METHOD_NAME:
+                facilityId = params.asText(UNKNOWN_FACILITY_ID);
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+                break;
+
+            case ResetRequest.METHOD_NAME:
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+                stopReading();
+                sendStatus(StatusUpdateNotification.Status.in_reset);
+                sendStatus(StatusUpdateNotification.Status.ready);
+                break;
+
+            case RebootRequest.METHOD_NAME:
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+                shutdown();
+                connect();
+                break;
+
+            case ShutdownRequest.METHOD_NAME:
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+                shutdown();
+                break;
+
+            default:
+                // alerts, leds, antennas and the rest have nothing to simulate
+                respond(new JsonResponseOK(id, Boolean.TRUE));
+        }
+    }
+
+    public void heartbeat() {
+        if (!connected) {
+            return;
+        }
+        SensorHeartbeatNotification hb = new SensorHeartbeatNotification(deviceId);
+        hb.params.facility_id = facilityId;
+        link.publish(RSP_STATUS_TOPIC + "/" + deviceId, hb);
+    }
+
+    public void shutdown() {
+        stopReading();
+        sendStatus(StatusUpdateNotification.Status.shutting_down);
+        connected = false;
+    }
+
+    /**
+     * Reads up to _maxReads of the tags in view, carrying on from where the
+     * last read left off when there are more.
+     */
+    public InventoryDataNotification read(TagPopulation _tags, int _maxReads, long _now) {
+        InventoryDataNotification data = new InventoryDataNotification();
+        data.params.sent_on = _now;
+        data.params.device_id = deviceId;
+        data.params.facility_id = facilityId;
+        int[] inView = _tags.tagsAt(index);
+        int n = Math.min(_maxReads, inView.length);
+        for (int i = 0; i < n; i++) {
+            if (cursor >= inView.length) {
+                cursor = 0;
+            }
+            TagRead read = new TagRead();
+            read.epc = _tags.getEpc(inView[cursor++]);
+            read.antenna_id = random.nextInt(NUM_PORTS);
+            read.last_read_on = _now;
+            read.rssi = -450 - random.nextInt(300);
+            read.phase = random.nextInt(64);
+            read.frequency = region.centerFrequency;
+            data.params.data.add(read);
+        }
+        return data;
+    }
+
+    /**
+     * @return false if the data could not be handed on
+     */
+    public boolean send(InventoryDataNotification _data) {
+        return link.publish(DATA_TOPIC + "/" + deviceId, _data);
+    }
+
+    private void stopReading() {
+        if (reading) {
+            reading = false;
+            link.publish(RSP_STATUS_TOPIC + "/" + deviceId,
+                         new InventoryCompleteNotification(deviceId, facilityId));
+        }
+    }
+
+    private void sendStatus(StatusUpdateNotification.Status _status) {
+        StatusUpdateNotification update = new StatusUpdateNotification();
+        update.params.sent_on = System.currentTimeMillis();
+        update.params.device_id = deviceId;
+        update.params.facility_id = facilityId;
+        update.params.status = _status;
+        link.publish(RSP_STATUS_TOPIC + "/" + deviceId, update);
+    }
+
+    private void respond(Object _rsp) {
+        link.publish(RESPONSE_TOPIC + "/" + deviceId, _rsp);
+    }
+
+}
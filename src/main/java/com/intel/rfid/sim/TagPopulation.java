@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.sim;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The tags in view of the simulated sensors, and how they move between
+ * them. Tags start out spread evenly over the sensors, then
+ * <ul>
+ * <li>STATIC: never move</li>
+ * <li>WANDER: stay for the dwell time on average, then move on to any
+ * other sensor at random</li>
+ * <li>CONVEYOR: move on to the next sensor every dwell time, staggered so
+ * the same share of tags moves all the time</li>
+ * </ul>
+ * Not thread safe, the load generator advances it from its one thread.
+ */
+public class TagPopulation {
+
+    public enum Movement {STATIC, WANDER, CONVEYOR}
+
+    public static final String EPC_BASE = "30143639F8419145";
+
+    private final String[] epcs;
+    private final int[] location;
+    private final long[] nextMove;
+    private final int numSensors;
+    private final Movement movement;
+    private final long dwellMillis;
+    private final Random random;
+
+    // tag indexes by sensor, rebuilt when tags have moved
+    private int[][] bySensor;
+    private boolean moved = true;
+    private long numMoves = 0;
+
+    public TagPopulation(int _numTags, int _numSensors, Movement _movement, long _dwellMillis, long _seed) {
+        if (_numTags < 0 || _numSensors < 1) {
+            throw new IllegalArgumentException("need tags >= 0 and sensors >= 1: " + _numTags + " " + _numSensors);
+        }
+        if (_movement != Movement.STATIC && _dwellMillis < 1) {
+            throw new IllegalArgumentException("dwell must be positive: " + _dwellMillis);
+        }
+        epcs = new String[_numTags];
+        location = new int[_numTags];
+        nextMove = new long[_numTags];
+        numSensors = _numSensors;
+        movement = _movement;
+        dwellMillis = _dwellMillis;
+        random = new Random(_seed);
+        for (int i = 0; i < _numTags; i++) {
+            epcs[i] = String.format("%s%08d", EPC_BASE, i);
+            location[i] = i % _numSensors;
+        }
+        // nothing moves until started
+        Arrays.fill(nextMove, Long.MAX_VALUE);
+    }
+
+    /**
+     * Sets the time the tags arrived at their first sensor, so they start
+     * moving from then on.
+     */
+    public void start(long _now) {
+        for (int i = 0; i < epcs.length; i++) {
+            switch (movement) {
+                case WANDER:
+                    nextMove[i] = _now + nextDwell();
+                    break;
+                case CONVEYOR:
+                    nextMove[i] = _now + dwellMillis * (i + 1) / Math.max(1, epcs.length);
+                    break;
+                default:
+                    nextMove[i] = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Moves the tags that are due by now.
+     */
+    public void advance(long _now) {
+        if (movement == Movement.STATIC || numSensors == 1) {
+            return;
+        }
+        for (int i = 0; i < epcs.length; i++) {
+            while (nextMove[i] <= _now) {
+                if (movement == Movement.WANDER) {
+                    // any sensor but the current one
+                    location[i] = (location[i] + 1 + random.nextInt(numSensors - 1)) % numSensors;
+                    nextMove[i] += nextDwell();
+                } else {
+                    location[i] = (location[i] + 1) % numSensors;
+                    nextMove[i] += dwellMillis;
+                }
+                numMoves++;
+                moved = true;
+            }
+        }
+    }
+
+    // exponential, so a tag is as likely to move whenever it is looked at
+    private long nextDwell() {
+        return Math.max(1, (long) (-dwellMillis * Math.log(1.0 - random.nextDouble())));
+    }
+
+    public int getNumTags() {
+        return epcs.length;
+    }
+
+    public long getNumMoves() {
+        return numMoves;
+    }
+
+    public String getEpc(int _tag) {
+        return epcs[_tag];
+    }
+
+    public int getLocation(int _tag) {
+        return location[_tag];
+    }
+
+    /**
+     * @return the indexes of the tags in view of the sensor, only valid
+     * until the next advance
+     */
+    public int[] tagsAt(int _sensor) {
+        if (moved) {
+            int[] counts = new int[numSensors];
+            for (int loc : location) {
+                counts[loc]++;
+            }
+            int[][] next = new int[numSensors][];
+            for (int s = 0; s < numSensors; s++) {
+                next[s] = new int[counts[s]];
+                counts[s] = 0;
+            }
+            for (int i = 0; i < location.length; i++) {
+                int loc = location[i];
+                next[loc][counts[loc]++] = i;
+            }
+            bySensor = next;
+            moved = false;
+        }
+        return bySensor[_sensor];
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.tag;
+
+/**
+ * An EPC of up to 32 upper case hex digits (i.e. a 96 bit SGTIN or a
+ * 128 bit EPC) packed into two longs and a length. The first 16 digits go
+ * in the high long and the rest in the low one, the length keeps leading
+ * zeros significant so the packing is one to one.
+ * <p>
+ * The static methods pack straight from the characters, of a String or of
+ * the buffer of the streaming InventoryDataParser, so that a lookup needs
+ * no intermediate objects. EPCs that do not pack
+ * (longer, lower case or not hex at all) are left to the caller to key by
+ * the String itself.
+ */
+public final class EpcKey {
+
+    public static final int MAX_DIGITS = 32;
+    private static final int DIGITS_PER_LONG = 16;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    public final long high;
+    public final long low;
+    public final int length;
+
+    private EpcKey(long _high, long _low, int _length) {
+        high = _high;
+        low = _low;
+        length = _length;
+    }
+
+    /**
+     * @return the packed key, or null when the EPC does not pack
+     */
+    public static EpcKey of(CharSequence _epc) {
+        if (!isPackable(_epc)) {
+            return null;
+        }
+        return new EpcKey(high(_epc), low(_epc), _epc.length());
+    }
+
+    public static boolean isPackable(CharSequence _epc) {
+        int len = _epc.length();
+        if (len == 0 || len > MAX_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (digit(_epc.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isPackable(char[] _chars, int _offset, int _len) {
+        if (_len == 0 || _len > MAX_DIGITS) {
+            return false;
+        }
+        for (int i = _offset; i < _offset + _len; i++) {
+            if (digit(_chars[i]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // only valid for a packable EPC
+    public static long high(CharSequence _epc) {
+        return pack(_epc, 0, Math.min(_epc.length(), DIGITS_PER_LONG));
+    }
+
+    // only valid for a packable EPC
+    public static long low(CharSequence _epc) {
+        return pack(_epc, DIGITS_PER_LONG, _epc.length());
+    }
+
+    // only valid for a packable EPC
+    public static long high(char[] _chars, int _offset, int _len) {
+        return pack(_chars, _offset, _offset + Math.min(_len, DIGITS_PER_LONG));
+    }
+
+    // only valid for a packable EPC
+    public static long low(char[] _chars, int _offset, int _len) {
+        return pack(_chars, _offset + DIGITS_PER_LONG, _offset + _len);
+    }
+
+    private static long pack(char[] _chars, int _from, int _to) {
+        long v = 0;
+        for (int i = _from; i < _to; i++) {
+            v = (v << 4) | digit(_chars[i]);
+        }
+        return v;
+    }
+
+    private static long pack(CharSequence _epc, int _from, int _to) {
+        long v = 0;
+        for (int i = _from; i < _to; i++) {
+            v = (v << 4) | digit(_epc.charAt(i));
+        }
+        return v;
+    }
+
+    private static int digit(char _c) {
+        if (_c >= '0' && _c <= '9') {
+            return _c - '0';
+        }
+        if (_c >= 'A' && _c <= 'F') {
+            return _c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    public static int hash(long _high, long _low, int _length) {
+        // the 64 bit finalizer from MurmurHash3, the low bits of packed
+        // EPCs are mostly serial numbers but the high ones are not
+        long h = _high * 31 + _low + _length;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @Override
+    public boolean equals(Object _o) {
+        if (this == _o) { return true; }
+        if (!(_o instanceof EpcKey)) { return false; }
+        EpcKey k = (EpcKey) _o;
+        return high == k.high && low == k.low && length == k.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(high, low, length);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        int numHigh = Math.min(length, DIGITS_PER_LONG);
+        unpack(high, chars, 0, numHigh);
+        unpack(low, chars, numHigh, length);
+        return new String(chars);
+    }
+
+    private static void unpack(long _v, char[] _chars, int _from, int _to) {
+        for (int i = _to - 1; i >= _from; i--) {
+            _chars[i] = HEX[(int) (_v & 0xF)];
+            _v >>>= 4;
+        }
+    }
+
+}
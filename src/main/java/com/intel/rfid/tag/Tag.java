@@ -7,14 +7,13 @@ package com.intel.rfid.tag;
 import com.intel.rfid.api.data.TagStatsInfo;
 import com.intel.rfid.api.sensor.TagRead;
 import com.intel.rfid.helpers.DateTimeHelper;
+import com.intel.rfid.helpers.StringDictionary;
 import com.intel.rfid.inventory.RssiAdjuster;
 import com.intel.rfid.sensor.SensorPlatform;
 
 import java.io.PrintWriter;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
 
 import static com.intel.rfid.tag.TagState.DEPARTED_EXIT;
 import static com.intel.rfid.tag.TagState.DEPARTED_POS;
@@ -23,11 +22,19 @@ import static com.intel.rfid.tag.TagState.PRESENT;
 
 public class Tag implements Comparable<Tag> {
 
+    // aliases, device ids and facilities repeat across every tag in the
+    // inventory so they are stored as codes into a shared dictionary
+    static final StringDictionary dictionary = new StringDictionary();
+    private static final int UNKNOWN = dictionary.encode("UNKNOWN");
+
+    private static final int[] NO_ALIASES = new int[0];
+    private static final TagStats[] NO_STATS = new TagStats[0];
+
     private String epc;
     private String tid;
-    private String location = "UNKNOWN";
-    private String deviceLocation = "UNKNOWN";
-    private String facility = "UNKNOWN";
+    private int location = UNKNOWN;
+    private int deviceLocation = UNKNOWN;
+    private int facility = UNKNOWN;
     private long lastRead = 0;
     private long lastDeparted = 0;
     private long lastArrived = 0;
@@ -35,8 +42,24 @@ public class Tag implements Comparable<Tag> {
     private TagDirection direction = TagDirection.Stationary;
     private TagHistory history = new TagHistory(10);
 
+    // per alias stats, kept sorted by alias name
+    private int[] statsAliases = NO_ALIASES;
+    private TagStats[] stats = NO_STATS;
+
+    private Observer observer;
+
+    /**
+     * Notified of the changes an inventory keeps running counts and indexes
+     * of. It is called on the thread making the change, for tags in an
+     * inventory that thread holds the inventory lock for the tag.
+     */
+    public interface Observer {
+        void onStateChange(Tag _tag, TagState _from, TagState _to);
+
+        void onLastReadChange(Tag _tag, long _from, long _to);
 
-    private Map<String, TagStats> deviceStatsMap = new TreeMap<>();
+        void onLocationChange(Tag _tag, String _fromLocation, String _fromFacility);
+    }
 
     public Tag(String _epc) {
         epc = _epc;
@@ -46,11 +69,11 @@ public class Tag implements Comparable<Tag> {
 
     public String getTID() { return tid; }
 
-    public String getLocation() { return location; }
+    public String getLocation() { return dictionary.decode(location); }
 
-    public String getDeviceLocation() { return deviceLocation; }
+    public String getDeviceLocation() { return dictionary.decode(deviceLocation); }
 
-    public String getFacility() { return facility; }
+    public String getFacility() { return dictionary.decode(facility); }
 
     public long getLastRead() { return lastRead; }
 
@@ -62,6 +85,8 @@ public class Tag implements Comparable<Tag> {
 
     public TagDirection getDirection() { return direction; }
 
+    public void setObserver(Observer _observer) { observer = _observer; }
+
     public void setState(TagState _state) {
         setState(_state, lastRead);
     }
@@ -69,6 +94,7 @@ public class Tag implements Comparable<Tag> {
     // capture transition times
     public void setState(TagState _state, long _time) {
 
+        TagState prev = state;
         switch (_state) {
             case PRESENT:
                 lastArrived = _time;
@@ -85,6 +111,9 @@ public class Tag implements Comparable<Tag> {
             default:
                 state = _state;
         }
+        if (observer != null && prev != state) {
+            observer.onStateChange(this, prev, state);
+        }
     }
 
     public synchronized void update(SensorPlatform _rsp,
@@ -95,13 +124,17 @@ public class Tag implements Comparable<Tag> {
             throw new IllegalArgumentException("null arguments to TagEvent.update are not allowed");
         }
         String srcAlias = _rsp.getAlias(_tagRead.antenna_id);
+        int srcCode = dictionary.encode(srcAlias);
 
+        long prevRead = lastRead;
         lastRead = _tagRead.last_read_on;
+        if (observer != null && prevRead != lastRead) {
+            observer.onLastReadChange(this, prevRead, lastRead);
+        }
 
-        TagStats curStats = deviceStatsMap.get(srcAlias);
+        TagStats curStats = getStats(srcCode);
         if (curStats == null) {
-            curStats = new TagStats();
-            deviceStatsMap.put(srcAlias, curStats);
+            curStats = addStats(srcCode);
         }
         curStats.update(_tagRead);
 
@@ -109,30 +142,64 @@ public class Tag implements Comparable<Tag> {
             tid = _tagRead.tid;
         }
 
-        if (!location.equals(srcAlias)) {
+        if (location != srcCode) {
 
-            TagStats locationStats = deviceStatsMap.get(location);
+            TagStats locationStats = getStats(location);
             if (locationStats == null) {
                 // this means the tag has never been read (somehow)
-                location = srcAlias;
-                deviceLocation = _rsp.getDeviceId();
-                facility = _rsp.getFacilityId();
-                history.add(location, lastRead);
+                moveTo(srcCode, _rsp);
             } else if (curStats.getN() > 2) {
                 double w = 0.0;
                 if (_weighter != null) {
                     w = _weighter.getWeight(locationStats.getLastRead(), _rsp);
                 }
                 if (curStats.getRssiMeanDBM() > locationStats.getRssiMeanDBM() + w) {
-                    location = srcAlias;
-                    deviceLocation = _rsp.getDeviceId();
-                    facility = _rsp.getFacilityId();
-                    history.add(location, lastRead);
+                    moveTo(srcCode, _rsp);
                 }
             }
         }
     }
 
+    private void moveTo(int _aliasCode, SensorPlatform _rsp) {
+        int prevLocation = location;
+        int prevFacility = facility;
+        location = _aliasCode;
+        deviceLocation = dictionary.encode(_rsp.getDeviceId());
+        facility = dictionary.encode(_rsp.getFacilityId());
+        history.add(getLocation(), lastRead);
+        if (observer != null) {
+            observer.onLocationChange(this, dictionary.decode(prevLocation), dictionary.decode(prevFacility));
+        }
+    }
+
+    private TagStats getStats(int _aliasCode) {
+        for (int i = 0; i < statsAliases.length; i++) {
+            if (statsAliases[i] == _aliasCode) {
+                return stats[i];
+            }
+        }
+        return null;
+    }
+
+    private TagStats addStats(int _aliasCode) {
+        String alias = dictionary.decode(_aliasCode);
+        int pos = 0;
+        while (pos < statsAliases.length && dictionary.decode(statsAliases[pos]).compareTo(alias) < 0) {
+            pos++;
+        }
+        int[] aliases = new int[statsAliases.length + 1];
+        TagStats[] tagStats = new TagStats[stats.length + 1];
+        System.arraycopy(statsAliases, 0, aliases, 0, pos);
+        System.arraycopy(stats, 0, tagStats, 0, pos);
+        System.arraycopy(statsAliases, pos, aliases, pos + 1, statsAliases.length - pos);
+        System.arraycopy(stats, pos, tagStats, pos + 1, stats.length - pos);
+        aliases[pos] = _aliasCode;
+        tagStats[pos] = new TagStats();
+        statsAliases = aliases;
+        stats = tagStats;
+        return tagStats[pos];
+    }
+
     public static class Cached {
         public String epc;
         public String tid;
@@ -148,9 +215,9 @@ public class Tag implements Comparable<Tag> {
         ct.epc = epc;
         ct.tid = tid;
         ct.state = state;
-        ct.location = location;
-        ct.deviceLocation = deviceLocation;
-        ct.facility = facility;
+        ct.location = getLocation();
+        ct.deviceLocation = getDeviceLocation();
+        ct.facility = getFacility();
         ct.lastRead = lastRead;
         return ct;
     }
@@ -162,11 +229,11 @@ public class Tag implements Comparable<Tag> {
         if (t.state == EXITING) {
             t.state = PRESENT;
         }
-        t.location = _ct.location;
-        t.deviceLocation = _ct.deviceLocation;
-        t.facility = _ct.facility;
+        t.location = dictionary.encode(_ct.location);
+        t.deviceLocation = dictionary.encode(_ct.deviceLocation);
+        t.facility = dictionary.encode(_ct.facility);
         t.lastRead = _ct.lastRead;
-        t.history.add(t.location, t.lastRead);
+        t.history.add(_ct.location, t.lastRead);
         return t;
     }
 
@@ -176,14 +243,17 @@ public class Tag implements Comparable<Tag> {
         return epc + ", " +
                 tid + ", " +
                 state.abbrev() + ", " +
-                location + ", " +
+                getLocation() + ", " +
                 DateTimeHelper.timeAsHMS_MS(now - lastRead) + ", " +
-                facility;
+                getFacility();
     }
 
     public void getStatsUpdate(TagStatsInfo _statsUpdate) {
-        for (String srcAlias : deviceStatsMap.keySet()) {
-            _statsUpdate.addStat(epc, srcAlias, location.equals(srcAlias), deviceStatsMap.get(srcAlias).inDBM());
+        for (int i = 0; i < statsAliases.length; i++) {
+            _statsUpdate.addStat(epc,
+                                 dictionary.decode(statsAliases[i]),
+                                 location == statsAliases[i],
+                                 stats[i].inDBM());
         }
     }
 
@@ -195,8 +265,9 @@ public class Tag implements Comparable<Tag> {
                     "mean-readInt, stddev-readInt";
 
     public void statsSummary(PrintWriter _pw, long _timeRef) {
-        for (String srcAlias : deviceStatsMap.keySet()) {
-            TagStats stats = deviceStatsMap.get(srcAlias);
+        for (int i = 0; i < statsAliases.length; i++) {
+            String srcAlias = dictionary.decode(statsAliases[i]);
+            TagStats stats = this.stats[i];
             TagStats.Results r = stats.inDBM();
 
 
@@ -206,7 +277,7 @@ public class Tag implements Comparable<Tag> {
                     tid,
                     state.abbrev(),
                     DateTimeHelper.timeAsHMS_MS(_timeRef - r.lastRead),
-                    (location.equals(srcAlias) ? "@" : " "),
+                    (location == statsAliases[i] ? "@" : " "),
                     srcAlias,
                     r.n, r.mean, r.stdDev, r.min, r.max,
                     stats.getReadIntervalMean(),
@@ -223,8 +294,9 @@ public class Tag implements Comparable<Tag> {
                     "mean-readInt,stddev-readInt";
 
     public void statsDetail(PrintWriter _pw, long _timeRef) {
-        for (String srcAlias : deviceStatsMap.keySet()) {
-            TagStats stats = deviceStatsMap.get(srcAlias);
+        for (int i = 0; i < statsAliases.length; i++) {
+            String srcAlias = dictionary.decode(statsAliases[i]);
+            TagStats stats = this.stats[i];
             TagStats.Results db = stats.inDBM();
             TagStats.Results mw = stats.inMilliWatts();
 
@@ -232,7 +304,7 @@ public class Tag implements Comparable<Tag> {
                     "%s,%s,%s,%s,%s,%s,%s,%s,%2d,%.1f,%.1f,%.1f,%.1f,%.14f,%.14f,%.14f,%.14f,%.1f,%.1f",
                     epc, tid, state.abbrev(), _timeRef, db.lastRead,
                     DateTimeHelper.timeAsHMS_MS(_timeRef - db.lastRead),
-                    (location.equals(srcAlias) ? "@" : " "), srcAlias,
+                    (location == statsAliases[i] ? "@" : " "), srcAlias,
                     db.n,
                     db.mean, db.stdDev, db.min, db.max,
                     mw.mean, mw.stdDev, mw.min, mw.max,
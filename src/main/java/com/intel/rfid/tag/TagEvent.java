@@ -13,5 +13,7 @@ public enum TagEvent {
     moved,
     departed,
     returned,
-    cycle_count
+    cycle_count,
+    // only reported to listeners of the inventory itself, see InventoryManager.UpstreamEventListener
+    aged_out
 }
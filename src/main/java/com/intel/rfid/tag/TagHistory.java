@@ -5,7 +5,6 @@
 package com.intel.rfid.tag;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 public class TagHistory {
@@ -25,23 +24,56 @@ public class TagHistory {
         }
     }
 
-    private LinkedList<Waypoint> waypoints;
+    // waypoints are kept in a ring of primitives, the device ids are
+    // dictionary encoded, and the ring only grows as far as it is needed
+    private int[] deviceIds;
+    private long[] timestamps;
+    private int head = 0;
+    private int count = 0;
     private final int maxSize;
 
     public TagHistory(int _size) {
-        maxSize = _size;
-        waypoints = new LinkedList<>();
+        maxSize = Math.max(1, _size);
+        deviceIds = new int[Math.min(2, maxSize)];
+        timestamps = new long[deviceIds.length];
     }
 
     public synchronized void add(String _deviceId, long _timestamp) {
-        waypoints.addLast(new Waypoint(_deviceId, _timestamp));
-        while (waypoints.size() > maxSize) {
-            waypoints.removeFirst();
+        if (count == deviceIds.length && count < maxSize) {
+            grow();
+        }
+        int idx = (head + count) % deviceIds.length;
+        deviceIds[idx] = Tag.dictionary.encode(_deviceId);
+        timestamps[idx] = _timestamp;
+        if (count < deviceIds.length) {
+            count++;
+        } else {
+            // full, the oldest is overwritten
+            head = (head + 1) % deviceIds.length;
         }
     }
 
+    private void grow() {
+        int newSize = Math.min(maxSize, deviceIds.length * 2);
+        int[] ids = new int[newSize];
+        long[] times = new long[newSize];
+        for (int i = 0; i < count; i++) {
+            int idx = (head + i) % deviceIds.length;
+            ids[i] = deviceIds[idx];
+            times[i] = timestamps[idx];
+        }
+        deviceIds = ids;
+        timestamps = times;
+        head = 0;
+    }
+
     public synchronized List<Waypoint> getWaypoints() {
-        return new ArrayList<>(waypoints);
+        List<Waypoint> waypoints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int idx = (head + i) % deviceIds.length;
+            waypoints.add(new Waypoint(Tag.dictionary.decode(deviceIds[idx]), timestamps[idx]));
+        }
+        return waypoints;
     }
 
 }
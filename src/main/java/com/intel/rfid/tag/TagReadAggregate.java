@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.tag;
+
+import com.intel.rfid.api.sensor.TagRead;
+
+/**
+ * Repeated reads of one EPC on one antenna of one sensor folded into a
+ * single read. As a TagRead it looks like the last read, with the mean
+ * rssi, so everything downstream handles it as is and only TagStats
+ * looks at the count, sum and range to update its statistics in bulk.
+ */
+public class TagReadAggregate extends TagRead {
+
+    public int count = 0;
+    public long first_read_on = 0;
+    // all in dBm * 10 like TagRead.rssi
+    public long rssi_sum = 0;
+    public int rssi_min = 0;
+    public int rssi_max = 0;
+
+    public void add(TagRead _read) {
+        if (count == 0) {
+            epc = _read.epc;
+            epc_high = _read.epc_high;
+            epc_low = _read.epc_low;
+            epc_digits = _read.epc_digits;
+            antenna_id = _read.antenna_id;
+            first_read_on = _read.last_read_on;
+            rssi_min = _read.rssi;
+            rssi_max = _read.rssi;
+        } else {
+            rssi_min = Math.min(rssi_min, _read.rssi);
+            rssi_max = Math.max(rssi_max, _read.rssi);
+        }
+        count++;
+        rssi_sum += _read.rssi;
+        rssi = (int) (rssi_sum / count);
+        if (_read.tid != null) {
+            tid = _read.tid;
+        }
+        first_read_on = Math.min(first_read_on, _read.last_read_on);
+        last_read_on = Math.max(last_read_on, _read.last_read_on);
+        phase = _read.phase;
+        frequency = _read.frequency;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() +
+                ", count =" + count +
+                ", first_read_on =" + first_read_on +
+                ", rssi_min =" + rssi_min +
+                ", rssi_max =" + rssi_max;
+    }
+}
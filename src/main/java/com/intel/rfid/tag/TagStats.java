@@ -5,7 +5,7 @@
 package com.intel.rfid.tag;
 
 import com.intel.rfid.api.sensor.TagRead;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import com.intel.rfid.helpers.RollingStats;
 
 import static com.intel.rfid.helpers.RfUtils.milliwattsToRssi;
 import static com.intel.rfid.helpers.RfUtils.rssiToMilliwatts;
@@ -32,9 +32,43 @@ public class TagStats {
 
     public static final int WINDOW_SIZE = 20;
 
+    // rssi is reported in dBm * 10 but the stats are computed on whole dBm
+    // values, so the window only needs to hold a byte per read
+    private static final int MIN_DBM = Byte.MIN_VALUE;
+    private static final double[] DBM_TO_MW = new double[256];
+
+    static {
+        for (int i = 0; i < DBM_TO_MW.length; i++) {
+            DBM_TO_MW[i] = rssiToMilliwatts(MIN_DBM + i);
+        }
+    }
+
+    private static int clampDbm(int _dbm) {
+        return Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, _dbm));
+    }
+
+    static class DbmStats extends RollingStats {
+        private final byte[] dbm;
+
+        DbmStats(int _windowSize) {
+            super(_windowSize);
+            dbm = new byte[_windowSize];
+        }
+
+        protected double valueAt(int _idx) {
+            return DBM_TO_MW[dbm[_idx] - MIN_DBM];
+        }
+
+        protected double store(int _idx, double _mw) {
+            dbm[_idx] = (byte) clampDbm((int) Math.round(milliwattsToRssi(_mw)));
+            return valueAt(_idx);
+        }
+    }
+
     private long lastRead = -1L;
-    private DescriptiveStatistics rssiMw = new DescriptiveStatistics(WINDOW_SIZE);
-    private DescriptiveStatistics readInterval = new DescriptiveStatistics(WINDOW_SIZE);
+    private final RollingStats rssiMw = new DbmStats(WINDOW_SIZE);
+    // read intervals are in whole millis
+    private final RollingStats readInterval = RollingStats.ofInts(WINDOW_SIZE);
 
     public synchronized void reset() {
         lastRead = -1L;
@@ -43,7 +77,11 @@ public class TagStats {
     }
 
     public synchronized void update(TagRead _tagRead) {
-        updateInternal(_tagRead.last_read_on, _tagRead.rssi);
+        if (_tagRead instanceof TagReadAggregate && ((TagReadAggregate) _tagRead).count > 1) {
+            updateInternal((TagReadAggregate) _tagRead);
+        } else {
+            updateInternal(_tagRead.last_read_on, _tagRead.rssi);
+        }
     }
 
     public synchronized void update(long _lastRead, int _rssi) {
@@ -55,8 +93,29 @@ public class TagStats {
             readInterval.addValue(_lastRead - lastRead);
         }
         lastRead = _lastRead;
-        double d = rssiToMilliwatts(_rssi / 10);
-        rssiMw.addValue(d);
+        rssiMw.addValue(DBM_TO_MW[clampDbm(_rssi / 10) - MIN_DBM]);
+    }
+
+    // the window gets as many values as the aggregate has reads, up to its
+    // size: the min, the max and the mean for the rest, with the reads
+    // spread evenly between the first and the last
+    private void updateInternal(TagReadAggregate _agg) {
+        int n = Math.min(_agg.count, WINDOW_SIZE);
+        if (lastRead != -1L) {
+            readInterval.addValue(_agg.first_read_on - lastRead);
+        }
+        double interval = (double) (_agg.last_read_on - _agg.first_read_on) / (_agg.count - 1);
+        for (int i = 1; i < n; i++) {
+            readInterval.addValue(interval);
+        }
+        lastRead = _agg.last_read_on;
+
+        double meanMw = DBM_TO_MW[clampDbm(_agg.rssi / 10) - MIN_DBM];
+        for (int i = 2; i < n; i++) {
+            rssiMw.addValue(meanMw);
+        }
+        rssiMw.addValue(DBM_TO_MW[clampDbm(_agg.rssi_min / 10) - MIN_DBM]);
+        rssiMw.addValue(DBM_TO_MW[clampDbm(_agg.rssi_max / 10) - MIN_DBM]);
     }
 
 
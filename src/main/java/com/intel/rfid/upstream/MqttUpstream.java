@@ -8,14 +8,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intel.rfid.api.data.MqttStatus;
 import com.intel.rfid.api.upstream.RspControllerStatusUpdateNotification;
 import com.intel.rfid.controller.ConfigManager;
+import com.intel.rfid.controller.Env;
 import com.intel.rfid.controller.RspControllerStatus;
 import com.intel.rfid.exception.RspControllerException;
 import com.intel.rfid.helpers.Jackson;
 import com.intel.rfid.helpers.PrettyPrinter;
 import com.intel.rfid.mqtt.Mqtt;
+import com.intel.rfid.mqtt.MqttSpool;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class MqttUpstream extends Mqtt {
 
@@ -29,20 +34,81 @@ public class MqttUpstream extends Mqtt {
     public static final String RESPONSE_TOPIC = TOPIC_PREFIX + "/response";
     public static final String NOTIFICATION_TOPIC = TOPIC_PREFIX + "/notification";
 
+    public static final String CFG_KEY_SPOOL_ENABLED = "mqtt.upstream.spool.enabled";
+    public static final boolean DEFAULT_SPOOL_ENABLED = true;
+    public static final String CFG_KEY_SPOOL_SEGMENT_BYTES = "mqtt.upstream.spool.segment.bytes";
+    public static final int DEFAULT_SPOOL_SEGMENT_BYTES = 4 * 1024 * 1024;
+    public static final String CFG_KEY_SPOOL_MAX_BYTES = "mqtt.upstream.spool.max.bytes";
+    public static final long DEFAULT_SPOOL_MAX_BYTES = 64L * 1024 * 1024;
+    public static final String CFG_KEY_SPOOL_MAX_AGE = "mqtt.upstream.spool.max.age.hours";
+    public static final long DEFAULT_SPOOL_MAX_AGE_HOURS = 24;
+
+    // inventory events that can not be published are held here until
+    // the broker is back, null when spooling is disabled
+    protected MqttSpool spool;
+    protected final Object spoolLock = new Object();
+    protected ScheduledExecutorService spoolExec;
+
     public MqttUpstream(Dispatch _dispatch) {
         ConfigManager cm = ConfigManager.instance;
         credentials = cm.getMQTTUpstreamCredentials();
         brokerURI = cm.getMQTTUpstreamURI();
         dispatch = _dispatch;
+
+        if (cm.getOptBool(CFG_KEY_SPOOL_ENABLED, DEFAULT_SPOOL_ENABLED)) {
+            spool = new MqttSpool(Env.getCachePath(),
+                                  cm.getOptInt(CFG_KEY_SPOOL_SEGMENT_BYTES, DEFAULT_SPOOL_SEGMENT_BYTES),
+                                  cm.getOptLong(CFG_KEY_SPOOL_MAX_BYTES, DEFAULT_SPOOL_MAX_BYTES),
+                                  TimeUnit.HOURS.toMillis(cm.getOptLong(CFG_KEY_SPOOL_MAX_AGE,
+                                                                        DEFAULT_SPOOL_MAX_AGE_HOURS)));
+        }
     }
 
     @Override
     public void start() {
         subscribe(COMMAND_TOPIC);
 
+        if (spool != null) {
+            try {
+                spool.open();
+            } catch (IOException e) {
+                log.error("failed opening upstream spool, events will be lost while disconnected: {}",
+                          e.getMessage());
+            }
+            spoolExec = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "upstream-spool");
+                t.setDaemon(true);
+                return t;
+            });
+            // also picks up anything spooled because the outbound queue was full
+            spoolExec.scheduleWithFixedDelay(this::replaySpool, 1000, 1000, TimeUnit.MILLISECONDS);
+        }
+
         super.start();
     }
 
+    @Override
+    public void stop() {
+        if (spoolExec != null) {
+            spoolExec.shutdown();
+            try {
+                if (!spoolExec.awaitTermination(2000, TimeUnit.MILLISECONDS)) {
+                    spoolExec.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("interrupted waiting for spool replay to shut down");
+            }
+            spoolExec = null;
+        }
+
+        super.stop();
+
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
     public interface Dispatch {
         void onMessage(final String _topic, final MqttMessage _msg);
     }
@@ -58,6 +124,57 @@ public class MqttUpstream extends Mqtt {
         } catch (Exception e) {
             log.warn("Error publishing {}", RspControllerStatus.RSP_CONTROLLER_STARTED.label, e);
         }
+        ScheduledExecutorService exec = spoolExec;
+        if (exec != null) {
+            // anything in flight on the previous client will never be acknowledged
+            spool.rewind();
+            try {
+                exec.execute(this::replaySpool);
+            } catch (RuntimeException e) {
+                log.warn("unable to start spool replay: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publishes spooled messages oldest first for as long as the client is
+     * connected. A message stays in the spool until the broker acknowledges
+     * it. Replay stops at the first message that can not be queued and is
+     * retried on the next connect or tick.
+     */
+    protected void replaySpool() {
+        if (spool == null) {
+            return;
+        }
+        int sent = 0;
+        while (isConnected() && !Thread.currentThread().isInterrupted()) {
+            synchronized (spoolLock) {
+                MqttSpool.Record rec = spool.next();
+                if (rec == null) {
+                    break;
+                }
+                try {
+                    publish(rec.topic, rec.payload, DEFAULT_QOS, _delivered -> onSpoolDelivery(rec, _delivered));
+                } catch (RspControllerException e) {
+                    spool.rewind();
+                    break;
+                }
+                sent++;
+            }
+        }
+        if (sent > 0) {
+            log.info("resent {} spooled messages, {} not yet acknowledged", sent, spool.size());
+            spool.flush();
+        }
+    }
+
+    protected void onSpoolDelivery(MqttSpool.Record _rec, boolean _delivered) {
+        if (_delivered) {
+            spool.advance(_rec);
+        } else {
+            // sent again from the oldest unacknowledged on the next tick
+            spool.rewind();
+        }
     }
 
 
@@ -84,6 +201,44 @@ public class MqttUpstream extends Mqtt {
         publish(EVENTS_TOPIC, _msg);
     }
 
+    /**
+     * Publishes an inventory event, spooling it to disk if it can not be
+     * published now. While anything is spooled new events are spooled
+     * behind it so the broker sees them in order.
+     */
+    public void publishInventoryEvent(Object _msg) {
+        byte[] bytes;
+        try {
+            bytes = mapper.writeValueAsBytes(_msg);
+        } catch (IOException _e) {
+            log.error("error {}", _e.getMessage());
+            return;
+        }
+        if (spool == null || !spool.isOpen()) {
+            try {
+                publish(EVENTS_TOPIC, bytes, DEFAULT_QOS);
+            } catch (RspControllerException _e) {
+                log.error("error {}", _e.getMessage());
+            }
+            return;
+        }
+        synchronized (spoolLock) {
+            if (spool.isEmpty() && isConnected()) {
+                try {
+                    publish(EVENTS_TOPIC, bytes, DEFAULT_QOS);
+                    return;
+                } catch (RspControllerException _e) {
+                    log.debug("spooling event: {}", _e.getMessage());
+                }
+            }
+            try {
+                spool.append(EVENTS_TOPIC, bytes, System.currentTimeMillis());
+            } catch (IOException _e) {
+                log.error("error spooling event: {}", _e.getMessage());
+            }
+        }
+    }
+
     public void publishResponse(Object _msg) {
         publish(RESPONSE_TOPIC, _msg);
     }
@@ -108,6 +263,17 @@ public class MqttUpstream extends Mqtt {
         super.status(_out);
         _out.line("pub: " + ALERTS_TOPIC);
         _out.line("pub: " + EVENTS_TOPIC);
+        if (spool != null) {
+            String fmt = "%-12s %-12s %-10s %-10s %-10s %-10s";
+            _out.line(String.format(fmt, "spooled", "spool bytes", "total", "replayed", "dropped", "expired"));
+            _out.line(String.format(fmt,
+                                    spool.size(),
+                                    spool.getBytes(),
+                                    spool.getNumSpooled(),
+                                    spool.getNumReplayed(),
+                                    spool.getNumDropped(),
+                                    spool.getNumExpired()));
+        }
     }
 
     public MqttStatus getSummary() {
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.upstream;
+
+import com.intel.rfid.api.data.InventoryEventItem;
+import com.intel.rfid.helpers.PrettyPrinter;
+import com.intel.rfid.tag.TagEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects upstream inventory events over a time window and publishes
+ * them as size bounded batches.
+ * <p>
+ * While collecting, a moved event is merged into the pending arrival,
+ * returned or moved event for the same EPC in the same facility, so a tag
+ * that moves several times in a window is reported once at its latest
+ * location. Events that change what the tag is (arrivals, departures,
+ * returns, facility changes) are never merged and keep their order.
+ * <p>
+ * A batch is published as soon as it reaches the maximum size, and
+ * whatever is pending is published at the end of every window. Once
+ * started, batches are handed to the sink from the batcher's own thread
+ * in the order they were taken, so a sink that blocks on a busy broker
+ * never holds up the threads adding events. Until then, and with no
+ * window, the sink is called from the thread adding the events.
+ */
+public class UpstreamEventBatcher {
+
+    protected Logger log = LoggerFactory.getLogger(getClass());
+
+    public interface Sink {
+        void onBatch(UpstreamInventoryEventInfo _batch);
+    }
+
+    private static final String MOVED = TagEvent.moved.toString();
+    private static final String ARRIVAL = TagEvent.arrival.toString();
+    private static final String RETURNED = TagEvent.returned.toString();
+
+    private final Sink sink;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    private final Object lock = new Object();
+    private List<InventoryEventItem> pending = new ArrayList<>();
+    // the index in pending of the last event for an epc
+    private final Map<String, Integer> lastByEpc = new HashMap<>();
+
+    private final AtomicLong eventsIn = new AtomicLong();
+    private final AtomicLong itemsIn = new AtomicLong();
+    private final AtomicLong itemsOut = new AtomicLong();
+    private final AtomicLong batchesOut = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    public UpstreamEventBatcher(Sink _sink, long _windowMillis, int _maxBatchSize) {
+        if (_maxBatchSize < 1) {
+            throw new IllegalArgumentException("max batch size must be positive: " + _maxBatchSize);
+        }
+        sink = _sink;
+        windowMillis = _windowMillis;
+        maxBatchSize = _maxBatchSize;
+    }
+
+    public void start() {
+        if (windowMillis <= 0 || scheduler != null) {
+            return;
+        }
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "upstream-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        synchronized (lock) {
+            scheduler = s;
+        }
+    }
+
+    public void stop() {
+        ScheduledExecutorService s = scheduler;
+        if (s != null) {
+            // lets the batches already handed off go out first
+            s.shutdown();
+            try {
+                if (!s.awaitTermination(2000, TimeUnit.MILLISECONDS)) {
+                    s.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("interrupted waiting for scheduler to shut down");
+            }
+            synchronized (lock) {
+                scheduler = null;
+            }
+        }
+        flush();
+    }
+
+    public void add(UpstreamInventoryEventInfo _uie) {
+        eventsIn.incrementAndGet();
+        itemsIn.addAndGet(_uie.data.size());
+
+        // no window means no batching, pass everything straight through
+        if (windowMillis <= 0) {
+            publish(_uie.data);
+            return;
+        }
+
+        synchronized (lock) {
+            for (InventoryEventItem item : _uie.data) {
+                if (!coalesce(item)) {
+                    lastByEpc.put(item.epc_code, pending.size());
+                    pending.add(item);
+                }
+            }
+            if (pending.size() >= maxBatchSize) {
+                handOff(takePending());
+            }
+        }
+    }
+
+    private boolean coalesce(InventoryEventItem _item) {
+        if (!MOVED.equals(_item.event_type)) {
+            return false;
+        }
+        Integer idx = lastByEpc.get(_item.epc_code);
+        if (idx == null) {
+            return false;
+        }
+        InventoryEventItem prev = pending.get(idx);
+        if (!Objects.equals(prev.facility_id, _item.facility_id)) {
+            return false;
+        }
+        if (!MOVED.equals(prev.event_type) &&
+                !ARRIVAL.equals(prev.event_type) &&
+                !RETURNED.equals(prev.event_type)) {
+            return false;
+        }
+        // the items may still be referenced by other listeners of the
+        // original event so the merge goes into a new item
+        InventoryEventItem merged = new InventoryEventItem();
+        merged.facility_id = prev.facility_id;
+        merged.epc_code = prev.epc_code;
+        merged.tid = _item.tid != null ? _item.tid : prev.tid;
+        merged.epc_encode_format = prev.epc_encode_format;
+        merged.event_type = prev.event_type;
+        // an arrival or return keeps its time, only the location moves on
+        merged.timestamp = MOVED.equals(prev.event_type) ? _item.timestamp : prev.timestamp;
+        merged.location = _item.location;
+        pending.set(idx, merged);
+        return true;
+    }
+
+    private List<InventoryEventItem> takePending() {
+        List<InventoryEventItem> items = pending;
+        pending = new ArrayList<>();
+        lastByEpc.clear();
+        return items;
+    }
+
+    public void flush() {
+        synchronized (lock) {
+            if (!pending.isEmpty()) {
+                handOff(takePending());
+            }
+        }
+    }
+
+    // called under the lock so batches are queued in the order they were
+    // taken, the queue is unbounded so this never waits on the sink
+    private void handOff(List<InventoryEventItem> _items) {
+        if (scheduler != null) {
+            try {
+                scheduler.execute(() -> publish(_items));
+                return;
+            } catch (RejectedExecutionException e) {
+                // stopping, published here rather than dropped
+            }
+        }
+        publish(_items);
+    }
+
+    private void publish(List<InventoryEventItem> _items) {
+        for (int from = 0; from < _items.size(); from += maxBatchSize) {
+            UpstreamInventoryEventInfo batch = new UpstreamInventoryEventInfo();
+            int to = Math.min(from + maxBatchSize, _items.size());
+            batch.data.addAll(_items.subList(from, to));
+            itemsOut.addAndGet(batch.data.size());
+            batchesOut.incrementAndGet();
+            try {
+                sink.onBatch(batch);
+            } catch (Throwable t) {
+                log.error("error:", t);
+            }
+        }
+    }
+
+    public long getNumEventsIn() { return eventsIn.get(); }
+
+    public long getNumItemsIn() { return itemsIn.get(); }
+
+    public long getNumItemsOut() { return itemsOut.get(); }
+
+    public long getNumBatchesOut() { return batchesOut.get(); }
+
+    public void show(PrettyPrinter _out) {
+        _out.line(String.format("Event Batching: window %d ms, max batch %d", windowMillis, maxBatchSize));
+        String fmt = "%-12s %-12s %-12s %-12s";
+        _out.line(String.format(fmt, "events in", "items in", "items out", "batches out"));
+        _out.line(String.format(fmt, getNumEventsIn(), getNumItemsIn(), getNumItemsOut(), getNumBatchesOut()));
+        _out.blank();
+    }
+
+}
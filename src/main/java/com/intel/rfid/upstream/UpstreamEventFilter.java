@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.upstream;
+
+import com.intel.rfid.api.data.InventoryEventItem;
+import com.intel.rfid.inventory.EpcQuery;
+import com.intel.rfid.inventory.InventoryManager;
+
+/**
+ * Passes the inventory events (including aged out tags) in a facility
+ * and matching an EPC filter pattern on to a batcher. This is the source
+ * of an inventory_delta subscription, so that a client only receives the
+ * changes to the part of the inventory it is showing.
+ */
+public class UpstreamEventFilter implements InventoryManager.UpstreamEventListener {
+
+    private final String facilityId;
+    private final EpcQuery query;
+    private final UpstreamEventBatcher batcher;
+
+    /**
+     * @param _facilityId    null for all facilities
+     * @param _filterPattern null for all EPCs
+     */
+    public UpstreamEventFilter(String _facilityId, String _filterPattern, UpstreamEventBatcher _batcher) {
+        facilityId = _facilityId;
+        query = EpcQuery.parse(_filterPattern);
+        batcher = _batcher;
+    }
+
+    @Override
+    public void onUpstreamEvent(UpstreamInventoryEventInfo _uie) {
+        if (facilityId == null && query.shape == EpcQuery.Shape.ALL) {
+            batcher.add(_uie);
+            return;
+        }
+        UpstreamInventoryEventInfo filtered = new UpstreamInventoryEventInfo();
+        for (InventoryEventItem item : _uie.data) {
+            if ((facilityId == null || facilityId.equals(item.facility_id)) && query.matches(item.epc_code)) {
+                filtered.data.add(item);
+            }
+        }
+        if (!filtered.data.isEmpty()) {
+            batcher.add(filtered);
+        }
+    }
+
+    @Override
+    public void onAgeout(UpstreamInventoryEventInfo _uie) {
+        onUpstreamEvent(_uie);
+    }
+
+}
@@ -58,6 +58,8 @@ public class UpstreamManager
     protected InventoryManager inventoryMgr;
     protected DownstreamManager downstreamMgr;
 
+    protected UpstreamEventBatcher eventBatcher;
+
     protected JsonRpcController rpcController;
     protected ObjectMapper mapper = Jackson.getMapper();
 
@@ -78,6 +80,9 @@ public class UpstreamManager
         ConfigManager cm = ConfigManager.instance;
         deviceId = cm.getRspControllerDeviceId();
         mqttUpstream = new MqttUpstream(this);
+        eventBatcher = new UpstreamEventBatcher(this::publishBatch,
+                                                cm.getOptLong(CFG_KEY_BATCH_WINDOW, DEFAULT_BATCH_WINDOW_MILLIS),
+                                                cm.getOptInt(CFG_KEY_BATCH_MAX_SIZE, DEFAULT_BATCH_MAX_SIZE));
 
         rpcController = new JsonRpcController(this,
                                               clusterMgr,
@@ -89,15 +94,23 @@ public class UpstreamManager
                                               scheduleMgr);
     }
 
+    public static final String CFG_KEY_BATCH_WINDOW = "upstream.events.batch.window.millis";
+    public static final long DEFAULT_BATCH_WINDOW_MILLIS = 500;
+    public static final String CFG_KEY_BATCH_MAX_SIZE = "upstream.events.batch.max.size";
+    public static final int DEFAULT_BATCH_MAX_SIZE = 500;
+
     public boolean start() {
         rpcController.start();
         mqttUpstream.start();
+        eventBatcher.start();
 
         log.info(getClass().getSimpleName() + " started");
         return true;
     }
 
     public boolean stop() {
+        // publish anything still pending while the client is still up
+        eventBatcher.stop();
         mqttUpstream.stop();
         rpcController.stop();
         log.info(getClass().getSimpleName() + " stopped");
@@ -111,8 +124,12 @@ public class UpstreamManager
 
     @Override
     public void onUpstreamEvent(UpstreamInventoryEventInfo _uie) {
-        _uie.device_id = deviceId;
-        mqttUpstream.publishEvent(new InventoryEventNotification(_uie));
+        eventBatcher.add(_uie);
+    }
+
+    protected void publishBatch(UpstreamInventoryEventInfo _batch) {
+        _batch.device_id = deviceId;
+        mqttUpstream.publishInventoryEvent(new InventoryEventNotification(_batch));
     }
 
     public void send(RspControllerDeviceAlertNotification _alert) {
@@ -189,6 +206,8 @@ public class UpstreamManager
     public void show(PrettyPrinter _out) {
         _out.chunk("MQTT Upstream: ");
         mqttUpstream.status(_out);
+        _out.blank();
+        eventBatcher.show(_out);
     }
 
 }
@@ -14,6 +14,8 @@ import com.intel.rfid.api.data.SensorConnectionStateInfo;
 import com.intel.rfid.api.data.SensorReadStateInfo;
 import com.intel.rfid.api.data.SensorSoftwareRepoVersions;
 import com.intel.rfid.api.data.TagInfo;
+import com.intel.rfid.api.data.TagInfoPage;
+import com.intel.rfid.api.data.TagInfoQuery;
 import com.intel.rfid.api.sensor.BISTResults;
 import com.intel.rfid.api.sensor.Behavior;
 import com.intel.rfid.api.sensor.DeviceAlertNotification;
@@ -44,6 +46,7 @@ import com.intel.rfid.api.upstream.DownstreamMqttStatusNotification;
 import com.intel.rfid.api.upstream.GpioClearMappingsRequest;
 import com.intel.rfid.api.upstream.GpioSetMappingRequest;
 import com.intel.rfid.api.upstream.InventoryActivateMobilityProfileRequest;
+import com.intel.rfid.api.upstream.InventoryDeltaNotification;
 import com.intel.rfid.api.upstream.InventoryEventNotification;
 import com.intel.rfid.api.upstream.InventoryGetActiveMobilityProfileIdRequest;
 import com.intel.rfid.api.upstream.InventoryGetActiveMobilityProfileIdResponse;
@@ -51,8 +54,12 @@ import com.intel.rfid.api.upstream.InventoryGetTagInfoRequest;
 import com.intel.rfid.api.upstream.InventoryGetTagInfoResponse;
 import com.intel.rfid.api.upstream.InventoryGetTagStatsInfoRequest;
 import com.intel.rfid.api.upstream.InventoryGetTagStatsInfoResponse;
+import com.intel.rfid.api.upstream.InventoryGetTagsByFacilityRequest;
+import com.intel.rfid.api.upstream.InventoryGetTagsByLocationRequest;
+import com.intel.rfid.api.upstream.InventoryGetTagsByStateRequest;
 import com.intel.rfid.api.upstream.InventoryReadRateNotification;
 import com.intel.rfid.api.upstream.InventorySummaryNotification;
+import com.intel.rfid.api.upstream.InventoryTagInfoChunkNotification;
 import com.intel.rfid.api.upstream.InventoryUnloadRequest;
 import com.intel.rfid.api.upstream.MobilityProfileDeleteRequest;
 import com.intel.rfid.api.upstream.MobilityProfileGetAllRequest;
@@ -351,6 +358,7 @@ public class ApiTest implements InventoryManager.UpstreamEventListener {
 
         assertThat(upstreamEvents.size()).isGreaterThan(0);
         persistJsonApi(new InventoryEventNotification(upstreamEvents.get(0)));
+        persistJsonApi(new InventoryDeltaNotification(upstreamEvents.get(0)));
 
         readTimeOrig += 2000;
         tagRead01.last_read_on = readTimeOrig;
@@ -372,6 +380,26 @@ public class ApiTest implements InventoryManager.UpstreamEventListener {
         rsp = new InventoryGetTagInfoResponse(invGetTagInfoReq.id, tagInfoList);
         persistJsonApi(rsp);
 
+        InventoryGetTagInfoRequest invGetTagPageReq = new InventoryGetTagInfoRequest(new TagInfoQuery("*", 2, null));
+        persistJsonApi("_page", invGetTagPageReq);
+        TagInfoPage tagInfoPage = invMgr.getTagInfoPage("*", null, 2);
+        persistJsonApi("_page", new InventoryGetTagInfoResponse(invGetTagPageReq.id, tagInfoPage));
+
+        TagInfoQuery streamQuery = new TagInfoQuery("*");
+        streamQuery.stream = true;
+        InventoryGetTagInfoRequest invGetTagStreamReq = new InventoryGetTagInfoRequest(streamQuery);
+        persistJsonApi("_stream", invGetTagStreamReq);
+        persistJsonApi(new InventoryTagInfoChunkNotification(invGetTagStreamReq.id, 0, true, tagInfoList.size(),
+                                                             Jackson.getMapper().writeValueAsString(tagInfoList)));
+        TagInfoPage streamSummary = new TagInfoPage();
+        streamSummary.count = tagInfoList.size();
+        persistJsonApi("_stream", new InventoryGetTagInfoResponse(invGetTagStreamReq.id, streamSummary));
+
+        TagInfo exampleTag = tagInfoList.get(0);
+        persistJsonApi(new InventoryGetTagsByFacilityRequest(exampleTag.facility_id));
+        persistJsonApi(new InventoryGetTagsByLocationRequest(exampleTag.location));
+        persistJsonApi(new InventoryGetTagsByStateRequest(exampleTag.state));
+
         InventoryGetTagStatsInfoRequest invGetTagStatsInfoReq = new InventoryGetTagStatsInfoRequest(wildcard);
         persistJsonApi(invGetTagStatsInfoReq);
 
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.controller;
+
+import com.intel.rfid.helpers.EnvHelper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigManagerTest {
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        EnvHelper.beforeBasicTests();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        EnvHelper.afterTests();
+    }
+
+    @Test
+    public void testReloadSwapsSnapshot() throws IOException {
+        ConfigManager cm = ConfigManager.instance;
+        Path cfg = Env.resolveConfig(ConfigManager.CONFIG_FILE);
+        byte[] original = Files.readAllBytes(cfg);
+        cm.reload();
+
+        ConfigSnapshot before = cm.getSnapshot();
+        assertThat(before.posDepartedThresholdMillis)
+                .isEqualTo(cm.getOptLong(ConfigSnapshot.CFG_KEY_POS_DEPARTED_THRESHOLD,
+                                         ConfigSnapshot.DEFAULT_POS_DEPARTED_THRESHOLD_MILLIS));
+
+        try {
+            String changed = "\n" + ConfigSnapshot.CFG_KEY_POS_DEPARTED_THRESHOLD + " = 1234\n";
+            Files.write(cfg, changed.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            cm.reload();
+
+            ConfigSnapshot after = cm.getSnapshot();
+            assertThat(after).isNotSameAs(before);
+            assertThat(after.posDepartedThresholdMillis).isEqualTo(1234);
+            assertThat(cm.getOptLong(ConfigSnapshot.CFG_KEY_POS_DEPARTED_THRESHOLD, 0)).isEqualTo(1234);
+            // the snapshot taken before is left as it was
+            assertThat(before.posDepartedThresholdMillis).isNotEqualTo(1234);
+            assertThat(after.posReturnThresholdMillis).isEqualTo(before.posReturnThresholdMillis);
+
+            // caught half way through a save, the current values are kept
+            Files.write(cfg, new byte[0]);
+            assertThat(cm.reload()).isFalse();
+            assertThat(cm.getSnapshot()).isSameAs(after);
+            assertThat(cm.getOptLong(ConfigSnapshot.CFG_KEY_POS_DEPARTED_THRESHOLD, 0)).isEqualTo(1234);
+        } finally {
+            Files.write(cfg, original);
+            cm.reload();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.downstream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.Jackson;
+import com.intel.rfid.tag.EpcKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InventoryDataParserTest {
+
+    ObjectMapper mapper = Jackson.getMapper();
+
+    protected InventoryDataNotification generate(int _numReads) {
+        InventoryDataNotification idn = new InventoryDataNotification();
+        idn.params.device_id = "RSP-150000";
+        idn.params.facility_id = "front";
+        idn.params.period = 250;
+        idn.params.motion_detected = true;
+        idn.params.location.latitude = 45.5;
+        for (int i = 0; i < _numReads; i++) {
+            TagRead tr = new TagRead();
+            tr.epc = String.format("30140000000000000000%04d", i % 10);
+            tr.tid = (i % 2 == 0) ? "E28011606000020" + i : null;
+            tr.antenna_id = i % 4;
+            tr.last_read_on = idn.params.sent_on - i;
+            tr.rssi = -600 + i;
+            tr.phase = i % 64;
+            tr.frequency = 902750 + i;
+            idn.params.data.add(tr);
+        }
+        return idn;
+    }
+
+    @Test
+    public void testMatchesDatabind() throws Exception {
+        byte[] payload = mapper.writeValueAsBytes(generate(100));
+        InventoryDataNotification expected = mapper.readValue(payload, InventoryDataNotification.class);
+
+        InventoryDataParser parser = new InventoryDataParser();
+        List<String> parsed = new ArrayList<>();
+        List<String> epcs = new ArrayList<>();
+        List<Boolean> packed = new ArrayList<>();
+        int numReads = parser.parse(payload, read -> {
+            parsed.add(read.toString());
+            epcs.add(read.epc);
+            EpcKey key = EpcKey.of(read.epc);
+            packed.add(key.high == read.epc_high && key.low == read.epc_low && key.length == read.epc_digits);
+        });
+
+        assertThat(numReads).isEqualTo(expected.params.data.size());
+        for (int i = 0; i < numReads; i++) {
+            assertThat(parsed.get(i)).isEqualTo(expected.params.data.get(i).toString());
+        }
+
+        // repeated epcs should come back as the same instance
+        assertThat(epcs.get(10)).isSameAs(epcs.get(0));
+        assertThat(parser.getEpcCache().getMisses()).isEqualTo(10);
+        assertThat(packed).hasSize(numReads).containsOnly(true);
+    }
+
+    @Test
+    public void testUnknownFieldsSkipped() throws Exception {
+        String json = "{\"jsonrpc\":\"2.0\",\"method\":\"inventory_data\",\"extra\":{\"a\":[1,2]}," +
+                "\"params\":{\"new_field\":[{\"x\":1}],\"device_id\":\"RSP-1\",\"data\":[" +
+                "{\"epc\":\"abc\",\"rssi\":-500,\"unknown\":{\"y\":2}}," +
+                "{\"epc\":\"def\",\"antenna_id\":1}]}}";
+
+        List<String> epcs = new ArrayList<>();
+        List<Integer> digits = new ArrayList<>();
+        int numReads = new InventoryDataParser().parse(json.getBytes(), read -> {
+            epcs.add(read.epc + ":" + read.rssi);
+            digits.add(read.epc_digits);
+        });
+        assertThat(numReads).isEqualTo(2);
+        // the reused holder must be reset between reads
+        assertThat(epcs).containsExactly("abc:-500", "def:0");
+        // lower case is not packed
+        assertThat(digits).containsExactly(0, 0);
+    }
+
+}
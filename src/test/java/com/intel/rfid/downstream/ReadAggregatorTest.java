@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.downstream;
+
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.helpers.EnvHelper;
+import com.intel.rfid.helpers.TestStore;
+import com.intel.rfid.sensor.SensorPlatform;
+import com.intel.rfid.tag.TagReadAggregate;
+import com.intel.rfid.tag.TagStats;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class ReadAggregatorTest {
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        EnvHelper.beforeBasicTests();
+    }
+
+    @AfterClass
+    public static void afterClass() { EnvHelper.afterTests(); }
+
+    private static TagRead read(String _epc, int _antenna, long _time, int _rssi) {
+        TagRead read = new TagRead();
+        read.epc = _epc;
+        read.antenna_id = _antenna;
+        read.last_read_on = _time;
+        read.rssi = _rssi;
+        return read;
+    }
+
+    @Test
+    public void testFoldsRepeatedReads() {
+        TestStore store = new TestStore();
+        SensorPlatform rsp1 = store.sensorFront01;
+        SensorPlatform rsp2 = store.sensorFront02;
+        ReadAggregator agg = new ReadAggregator(500);
+        long t = 1000000;
+
+        // the parser reuses its TagRead
+        TagRead reused = new TagRead();
+        for (int i = 0; i < 10; i++) {
+            reused.epc = "EPC000001";
+            reused.antenna_id = 0;
+            reused.last_read_on = t + i * 10;
+            reused.rssi = -600 - i * 10;
+            agg.add(reused, rsp1, t);
+        }
+        agg.add(read("EPC000001", 1, t + 5, -550), rsp1, t);
+        agg.add(read("EPC000001", 0, t + 5, -550), rsp2, t);
+        agg.add(read("EPC000002", 0, t + 300, -500), rsp1, t + 300);
+        assertThat(agg.getNumPending()).isEqualTo(4);
+
+        List<TagRead> out = new ArrayList<>();
+        List<SensorPlatform> from = new ArrayList<>();
+        // not due yet
+        assertThat(agg.flush(t + 499, (r, s) -> out.add(r))).isEqualTo(0);
+
+        assertThat(agg.flush(t + 500, (r, s) -> {
+            out.add(r);
+            from.add(s);
+        })).isEqualTo(3);
+        assertThat(from).containsExactly(rsp1, rsp1, rsp2);
+
+        TagReadAggregate first = (TagReadAggregate) out.get(0);
+        assertThat(first.epc).isEqualTo("EPC000001");
+        assertThat(first.count).isEqualTo(10);
+        assertThat(first.first_read_on).isEqualTo(t);
+        assertThat(first.last_read_on).isEqualTo(t + 90);
+        assertThat(first.rssi_min).isEqualTo(-690);
+        assertThat(first.rssi_max).isEqualTo(-600);
+        assertThat(first.rssi).isEqualTo(-645);
+
+        assertThat(agg.flushAll((r, s) -> out.add(r))).isEqualTo(1);
+        assertThat(agg.getNumPending()).isEqualTo(0);
+        assertThat(agg.getNumIn()).isEqualTo(13);
+        assertThat(agg.getNumOut()).isEqualTo(4);
+        assertThat(agg.getReductionRatio()).isEqualTo(13.0 / 4);
+    }
+
+    @Test
+    public void testWeakReadsNotAggregated() {
+        TestStore store = new TestStore();
+        SensorPlatform rsp = store.sensorFront01;
+        DownstreamManager.DataMsgHandler handler =
+                store.rspController.getMockDownstreamManager().new DataMsgHandler(0, 10, 500);
+        rsp.setMinRssiDbm10X(-600);
+        long t = 1000000;
+        handler.curRsp = rsp;
+        handler.curTime = t;
+        handler.onTagRead(read("EPC000001", 0, t, -500));
+        handler.onTagRead(read("EPC000001", 0, t + 10, -700));
+        handler.onTagRead(read("EPC000002", 0, t + 20, -650));
+
+        List<TagRead> out = new ArrayList<>();
+        handler.getAggregator().flushAll((r, s) -> out.add(r));
+        assertThat(out).hasSize(1);
+        TagReadAggregate agg = (TagReadAggregate) out.get(0);
+        assertThat(agg.epc).isEqualTo("EPC000001");
+        assertThat(agg.count).isEqualTo(1);
+        assertThat(agg.rssi_min).isEqualTo(-500);
+    }
+
+    @Test
+    public void testStatsUpdatedInBulk() {
+        TagReadAggregate agg = new TagReadAggregate();
+        for (int i = 0; i < 5; i++) {
+            agg.add(read("EPC000001", 0, 1000 + i * 100, -500 - i * 50));
+        }
+        TagStats stats = new TagStats();
+        stats.update(read("EPC000001", 0, 500, -600));
+        stats.update(agg);
+
+        TagStats.Results r = stats.inDBM();
+        assertThat(r.n).isEqualTo(6);
+        assertThat(r.lastRead).isEqualTo(1400);
+        assertThat(r.min).isCloseTo(-70.0, within(0.01));
+        assertThat(r.max).isCloseTo(-50.0, within(0.01));
+        // 500 to the first read, then 100 between each
+        assertThat(stats.getReadIntervalMean()).isCloseTo(180.0, within(0.01));
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ListenerRegistryTest {
+
+    @Test
+    public void testDispatch() {
+        ListenerRegistry<Consumer<String>> registry = new ListenerRegistry<>();
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        Consumer<String> l1 = first::add;
+        Consumer<String> l2 = _s -> {
+            second.add(_s);
+            throw new IllegalStateException("listener failed");
+        };
+
+        assertThat(registry.isEmpty()).isTrue();
+        assertThat(registry.add(l1)).isTrue();
+        assertThat(registry.add(l1)).isFalse();
+        assertThat(registry.add(l2)).isTrue();
+        assertThat(registry.size()).isEqualTo(2);
+
+        // a listener that throws does not stop the others
+        registry.dispatch(Consumer::accept, "a");
+        registry.dispatch(Consumer::accept, "b");
+        assertThat(first).containsExactly("a", "b");
+        assertThat(second).containsExactly("a", "b");
+
+        assertThat(registry.remove(l1)).isTrue();
+        assertThat(registry.remove(l1)).isFalse();
+        registry.dispatch(Consumer::accept, "c");
+        assertThat(first).containsExactly("a", "b");
+        assertThat(second).containsExactly("a", "b", "c");
+
+        registry.clear();
+        assertThat(registry.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testAsyncDropsWhenFull() throws InterruptedException {
+        ListenerRegistry<Consumer<String>> registry = new ListenerRegistry<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> received = new ArrayList<>();
+        Consumer<String> slow = _s -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (received) {
+                received.add(_s);
+            }
+        };
+        registry.addAsync(slow, 2);
+
+        // the first is taken off the queue and holds up the listener thread
+        registry.dispatch(Consumer::accept, "0");
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i <= 5; i++) {
+            registry.dispatch(Consumer::accept, String.valueOf(i));
+        }
+        assertThat(registry.getNumDropped()).isEqualTo(3);
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (received) {
+                if (received.size() == 3) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        synchronized (received) {
+            assertThat(received).containsExactly("0", "1", "2");
+        }
+        registry.clear();
+    }
+
+}
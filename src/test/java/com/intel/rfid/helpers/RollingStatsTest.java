@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class RollingStatsTest {
+
+    private void assertSame(RollingStats _rs, DescriptiveStatistics _ds) {
+        double tolerance = Math.abs(_ds.getMean()) * 1e-9;
+        assertThat(_rs.getN()).isEqualTo(_ds.getN());
+        assertThat(_rs.getMean()).isCloseTo(_ds.getMean(), within(tolerance));
+        assertThat(_rs.getStandardDeviation()).isCloseTo(_ds.getStandardDeviation(), within(tolerance));
+        assertThat(_rs.getMin()).isEqualTo(_ds.getMin());
+        assertThat(_rs.getMax()).isEqualTo(_ds.getMax());
+    }
+
+    @Test
+    public void testMatchesDescriptiveStatistics() {
+        Random random = new Random(1234);
+        RollingStats rs = RollingStats.ofDoubles(20);
+        DescriptiveStatistics ds = new DescriptiveStatistics(20);
+
+        // rssi in milliwatts covers several orders of magnitude
+        for (int i = 0; i < 1000; i++) {
+            double v = RfUtils.rssiToMilliwatts(-95 + random.nextInt(40));
+            rs.addValue(v);
+            ds.addValue(v);
+            assertSame(rs, ds);
+        }
+
+        // monotonic values evict the min (or max) on every add
+        for (int i = 0; i < 100; i++) {
+            rs.addValue(i);
+            ds.addValue(i);
+            assertSame(rs, ds);
+        }
+        for (int i = 100; i > 0; i--) {
+            rs.addValue(i);
+            ds.addValue(i);
+            assertSame(rs, ds);
+        }
+    }
+
+    @Test
+    public void testEmptyAndSingle() {
+        RollingStats rs = RollingStats.ofDoubles(5);
+        assertThat(rs.getN()).isEqualTo(0);
+        assertThat(rs.getMean()).isNaN();
+        assertThat(rs.getStandardDeviation()).isNaN();
+        assertThat(rs.getMin()).isNaN();
+
+        rs.addValue(3.0);
+        assertThat(rs.getMean()).isEqualTo(3.0);
+        assertThat(rs.getStandardDeviation()).isEqualTo(0.0);
+        assertThat(rs.getMin()).isEqualTo(3.0);
+        assertThat(rs.getMax()).isEqualTo(3.0);
+
+        rs.clear();
+        assertThat(rs.getN()).isEqualTo(0);
+        rs.addValue(-1.0);
+        assertThat(rs.getMax()).isEqualTo(-1.0);
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class SampleSeriesTest {
+
+    private static double mean(LinkedList<Double> _deque, int _n) {
+        SummaryStatistics stats = new SummaryStatistics();
+        for (int i = 0; i < _n; i++) {
+            stats.addValue(_deque.get(i));
+        }
+        return stats.getMean();
+    }
+
+    @Test
+    public void testMatchesSummaryStatistics() {
+        Random random = new Random(1234);
+        int capacity = 144;
+        SampleSeries series = new SampleSeries(capacity);
+        LinkedList<Double> deque = new LinkedList<>();
+
+        // several times around the ring with the occasional empty sample
+        for (int i = 0; i < capacity * 5 + 7; i++) {
+            double v = (i % 50 == 49) ? Double.NaN : RfUtils.rssiToMilliwatts(-95 + random.nextInt(40));
+            series.add(v);
+            if (deque.size() == capacity) {
+                deque.removeLast();
+            }
+            deque.addFirst(v);
+
+            assertThat(series.size()).isEqualTo(deque.size());
+            for (int n : new int[]{1, 6, capacity / 2, capacity}) {
+                if (n > deque.size()) {
+                    continue;
+                }
+                double expected = mean(deque, n);
+                if (Double.isNaN(expected)) {
+                    assertThat(series.mean(n)).isNaN();
+                } else {
+                    assertThat(series.mean(n)).isCloseTo(expected, within(Math.abs(expected) * 1e-9));
+                }
+            }
+            assertThat(series.get(0)).isEqualTo(deque.getFirst());
+            assertThat(series.get(series.size() - 1)).isEqualTo(deque.getLast());
+        }
+    }
+
+}
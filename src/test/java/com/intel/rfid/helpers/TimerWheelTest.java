@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerWheelTest {
+
+    @Test
+    public void testExpiresAfterDeadline() {
+        long tick = 100;
+        TimerWheel<Long> wheel = new TimerWheel<>(tick, 10, 0);
+        assertThat(wheel.getTickMillis()).isEqualTo(tick);
+
+        // deadlines spread over several turns of the 16 slot wheel,
+        // expired at uneven intervals
+        Random random = new Random(1234);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long deadline = random.nextInt(10000);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        List<Long> expired = new ArrayList<>();
+        long now = 0;
+        long prev = -1;
+        while (now < 11000) {
+            now += 1 + random.nextInt(300);
+            List<Long> batch = new ArrayList<>();
+            wheel.expire(now, batch::add);
+            for (long deadline : batch) {
+                // never early, and not left behind by an earlier call
+                assertThat(deadline).isLessThanOrEqualTo(now);
+                assertThat(deadline).isGreaterThan(prev);
+            }
+            expired.addAll(batch);
+            prev = now;
+        }
+        assertThat(expired).containsExactlyInAnyOrderElementsOf(deadlines);
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testPastDeadlineExpiresAtOnce() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, 1000);
+        List<String> expired = new ArrayList<>();
+
+        wheel.schedule("late", 500);
+        wheel.schedule("soon", 1080);
+        wheel.expire(1050, expired::add);
+        assertThat(expired).containsExactly("late");
+        wheel.expire(1100, expired::add);
+        assertThat(expired).containsExactly("late", "soon");
+
+        wheel.schedule("cleared", 1150);
+        wheel.clear();
+        wheel.expire(5000, expired::add);
+        assertThat(expired).containsExactly("late", "soon");
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.EpcKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpcMapTest {
+
+    @Test
+    public void testKeyPacking() {
+        String[] packable = {"3014ABCDEF0123456789ABCD", "0", "000F",
+                "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF", "0123456789ABCDEF01"};
+        for (String epc : packable) {
+            EpcKey key = EpcKey.of(epc);
+            assertThat(key).as(epc).isNotNull();
+            assertThat(key.toString()).isEqualTo(epc);
+            assertThat(key).isEqualTo(EpcKey.of(new String(epc.toCharArray())));
+            // as in the buffer of the parser
+            char[] buf = ("\"" + epc + "\"").toCharArray();
+            assertThat(EpcKey.isPackable(buf, 1, epc.length())).isTrue();
+            assertThat(EpcKey.high(buf, 1, epc.length())).isEqualTo(key.high);
+            assertThat(EpcKey.low(buf, 1, epc.length())).isEqualTo(key.low);
+        }
+        // leading zeros are significant
+        assertThat(EpcKey.of("00F")).isNotEqualTo(EpcKey.of("0F"));
+
+        String[] unpackable = {"", "3014abcd", "NOT_AN_EPC",
+                "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF0"};
+        for (String epc : unpackable) {
+            assertThat(EpcKey.of(epc)).as(epc).isNull();
+            assertThat(EpcKey.isPackable(epc.toCharArray(), 0, epc.length())).as(epc).isFalse();
+        }
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(7919);
+        EpcMap<String> map = new EpcMap<>();
+        Map<String, String> expected = new HashMap<>();
+        List<String> epcs = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            switch (i % 10) {
+                case 0:
+                    epcs.add(String.format("%X", random.nextInt(4096)));
+                    break;
+                case 1:
+                    epcs.add("3014abc" + i);
+                    break;
+                default:
+                    epcs.add(String.format("3014%020X", random.nextInt(100000)));
+                    break;
+            }
+        }
+
+        for (int i = 0; i < 50000; i++) {
+            String epc = epcs.get(random.nextInt(epcs.size()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertThat(map.remove(epc)).isEqualTo(expected.remove(epc));
+                    break;
+                case 1:
+                    assertThat(map.get(epc)).isEqualTo(expected.get(epc));
+                    break;
+                default:
+                    String value = "v" + i;
+                    assertThat(map.put(epc, value)).isEqualTo(expected.put(epc, value));
+                    break;
+            }
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        for (String epc : epcs) {
+            assertThat(map.get(epc)).isEqualTo(expected.get(epc));
+            EpcKey key = EpcKey.of(epc);
+            if (key != null) {
+                assertThat(map.get(key.high, key.low, key.length)).isEqualTo(expected.get(epc));
+            }
+        }
+        assertThat(map.values()).containsExactlyInAnyOrderElementsOf(expected.values());
+
+        map.clear();
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.get(epcs.get(0))).isNull();
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.helpers.StringHelper;
+import com.intel.rfid.tag.Tag;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EpcQueryTest {
+
+    @Test
+    public void testShapes() {
+        assertThat(EpcQuery.parse(null).shape).isEqualTo(EpcQuery.Shape.ALL);
+        assertThat(EpcQuery.parse("").shape).isEqualTo(EpcQuery.Shape.ALL);
+        assertThat(EpcQuery.parse("*").shape).isEqualTo(EpcQuery.Shape.ALL);
+        assertThat(EpcQuery.parse(".*").shape).isEqualTo(EpcQuery.Shape.ALL);
+        assertThat(EpcQuery.parse("3014ABC").shape).isEqualTo(EpcQuery.Shape.EXACT);
+        assertThat(EpcQuery.parse("3014*").shape).isEqualTo(EpcQuery.Shape.PREFIX);
+        assertThat(EpcQuery.parse("3014.*").literal).isEqualTo("3014");
+        assertThat(EpcQuery.parse("*00FF").shape).isEqualTo(EpcQuery.Shape.SUFFIX);
+        assertThat(EpcQuery.parse("*00FF").literal).isEqualTo("00FF");
+        assertThat(EpcQuery.parse("30*FF").shape).isEqualTo(EpcQuery.Shape.REGEX);
+        assertThat(EpcQuery.parse("3014[0-9]*").shape).isEqualTo(EpcQuery.Shape.REGEX);
+        // invalid patterns have always matched everything
+        assertThat(EpcQuery.parse("3014[").shape).isEqualTo(EpcQuery.Shape.ALL);
+    }
+
+    @Test
+    public void testStoreQueriesMatchRegex() {
+        InventoryStore store = new InventoryStore();
+        for (int i = 0; i < 2000; i++) {
+            String company = (i % 3 == 0) ? "3014" : "3034";
+            store.put(new Tag(String.format("%s%020X", company, i * 7919L)));
+        }
+        store.remove(String.format("3014%020X", 0L));
+
+        String[] patterns = {"3014*", "30340*", "*F", "*00F", "3034*A", "3014[0-9A-F]*1",
+                String.format("3034%020X", 7919L), "NOT_AN_EPC", "*", null};
+        for (String pattern : patterns) {
+            Pattern p = StringHelper.regexWildcard(pattern);
+            List<String> expected = new ArrayList<>();
+            store.forEachSorted(t -> {
+                if (p == null || p.matcher(t.getEPC()).matches()) {
+                    expected.add(t.getEPC());
+                }
+            });
+
+            List<String> actual = new ArrayList<>();
+            store.forEachSorted(EpcQuery.parse(pattern), t -> actual.add(t.getEPC()));
+            assertThat(actual).as(String.valueOf(pattern)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testResumeAfterCursor() {
+        InventoryStore store = new InventoryStore();
+        for (int i = 0; i < 500; i++) {
+            String company = (i % 3 == 0) ? "3014" : "3034";
+            store.put(new Tag(String.format("%s%020X", company, i * 7919L)));
+        }
+
+        String[] patterns = {"3014*", "*F", "3034*A", String.format("3034%020X", 7919L), null};
+        for (String pattern : patterns) {
+            EpcQuery query = EpcQuery.parse(pattern);
+            List<String> expected = new ArrayList<>();
+            store.forEachSorted(query, t -> expected.add(t.getEPC()));
+
+            // pages of 7, each resumed after the last EPC of the one before
+            List<String> actual = new ArrayList<>();
+            String cursor = null;
+            do {
+                List<String> page = new ArrayList<>();
+                store.forEachSortedAfter(query, cursor, t -> {
+                    page.add(t.getEPC());
+                    return page.size() < 7;
+                });
+                actual.addAll(page);
+                cursor = page.size() == 7 ? page.get(6) : null;
+            } while (cursor != null);
+            assertThat(actual).as(String.valueOf(pattern)).isEqualTo(expected);
+        }
+    }
+
+}
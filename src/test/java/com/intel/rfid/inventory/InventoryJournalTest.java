@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InventoryJournalTest {
+
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void after() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private Tag newTag(int _i, TagState _state, String _location, long _lastRead) {
+        Tag.Cached ct = new Tag.Cached();
+        ct.epc = String.format("3014%020X", _i);
+        ct.tid = (_i % 2 == 0) ? null : "E280" + _i;
+        ct.state = _state;
+        ct.location = _location;
+        ct.deviceLocation = "RSP-150000";
+        ct.facility = "SALES_FLOOR";
+        ct.lastRead = _lastRead;
+        return Tag.fromCached(ct);
+    }
+
+    private void assertSameTags(InventoryStore _expected, InventoryStore _actual) {
+        assertThat(_actual.size()).isEqualTo(_expected.size());
+        _expected.forEach(t -> {
+            Tag r = _actual.get(t.getEPC());
+            assertThat(r).isNotNull();
+            assertThat(r.getTID()).isEqualTo(t.getTID());
+            assertThat(r.getState()).isEqualTo(t.getState());
+            assertThat(r.getLocation()).isEqualTo(t.getLocation());
+            assertThat(r.getDeviceLocation()).isEqualTo(t.getDeviceLocation());
+            assertThat(r.getFacility()).isEqualTo(t.getFacility());
+            assertThat(r.getLastRead()).isEqualTo(t.getLastRead());
+        });
+    }
+
+    @Test
+    public void testSnapshotAndReplay() throws IOException {
+        long now = System.currentTimeMillis();
+        InventoryStore store = new InventoryStore();
+        InventoryJournal journal = new InventoryJournal(dir);
+        journal.open();
+
+        for (int i = 0; i < 500; i++) {
+            Tag t = newTag(i, TagState.PRESENT, "RSP-150000-" + (i % 4), now + i);
+            store.put(t);
+            journal.append(t);
+        }
+        assertThat(journal.compact(store)).isEqualTo(500);
+
+        // changes after the snapshot are only in the log
+        for (int i = 0; i < 50; i++) {
+            Tag t = newTag(i, TagState.DEPARTED_EXIT, "RSP-150001-0", now + 1000 + i);
+            store.put(t);
+            journal.append(t);
+        }
+        store.remove(newTag(499, TagState.PRESENT, null, 0).getEPC());
+        journal.appendRemove(newTag(499, TagState.PRESENT, null, 0).getEPC());
+        journal.close();
+
+        InventoryStore restored = new InventoryStore();
+        new InventoryJournal(dir).restore(restored);
+        assertSameTags(store, restored);
+        assertThat(restored.getCounters().getCount(TagState.DEPARTED_EXIT)).isEqualTo(50);
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        long now = System.currentTimeMillis();
+        InventoryStore store = new InventoryStore();
+        InventoryJournal journal = new InventoryJournal(dir);
+        journal.open();
+        for (int i = 0; i < 10; i++) {
+            Tag t = newTag(i, TagState.PRESENT, "RSP-150000-0", now);
+            store.put(t);
+            journal.append(t);
+        }
+        journal.close();
+
+        // a partial record as if the controller lost power mid write
+        Path segment = journal.getSegmentPath(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        Files.write(segment, new byte[]{bytes[0], bytes[1], bytes[2]}, StandardOpenOption.APPEND);
+
+        InventoryStore restored = new InventoryStore();
+        InventoryJournal reopened = new InventoryJournal(dir);
+        reopened.restore(restored);
+        assertSameTags(store, restored);
+
+        // new records go to a new segment after the torn one
+        reopened.open();
+        reopened.append(newTag(10, TagState.PRESENT, "RSP-150000-0", now));
+        reopened.close();
+        restored = new InventoryStore();
+        new InventoryJournal(dir).restore(restored);
+        assertThat(restored.size()).isEqualTo(11);
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        long now = System.currentTimeMillis();
+        InventoryStore store = new InventoryStore();
+        InventoryJournal journal = new InventoryJournal(dir);
+        journal.open();
+        for (int i = 0; i < 3000; i++) {
+            Tag t = newTag(i, TagState.PRESENT, "RSP-150000-" + (i % 4), now);
+            store.put(t);
+            journal.append(t);
+        }
+        journal.compact(store);
+        Tag moved = newTag(7, TagState.EXITING, "RSP-150002-1", now - 1000);
+        store.put(moved);
+        journal.append(moved);
+        String removed = newTag(8, TagState.PRESENT, null, 0).getEPC();
+        store.remove(removed);
+        journal.appendRemove(removed);
+        journal.close();
+
+        InventoryJournalIndex index = new InventoryJournal(dir).index();
+        assertThat(index.remaining()).isEqualTo(2999);
+
+        // taken on demand, keeping the later read time from the snapshot
+        Tag t = index.take(moved.getEPC());
+        assertThat(t.getState()).isEqualTo(TagState.PRESENT);
+        assertThat(t.getLocation()).isEqualTo("RSP-150002-1");
+        assertThat(t.getLastRead()).isEqualTo(now);
+        assertThat(index.take(moved.getEPC())).isNull();
+        assertThat(index.take(removed)).isNull();
+        assertThat(index.take("NOT_AN_EPC")).isNull();
+
+        InventoryStore restored = new InventoryStore();
+        restored.put(t);
+        for (int e = 0; e < index.size(); e++) {
+            String epc = index.epcAt(e);
+            if (epc != null) {
+                restored.put(index.take(e, epc));
+            }
+        }
+        assertThat(index.remaining()).isEqualTo(0);
+        assertThat(restored.size()).isEqualTo(2999);
+        assertThat(restored.get(newTag(2999, TagState.PRESENT, null, 0).getEPC()).getTID())
+                .isEqualTo("E2802999");
+    }
+
+}
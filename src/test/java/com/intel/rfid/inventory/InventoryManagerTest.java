@@ -5,9 +5,12 @@
 package com.intel.rfid.inventory;
 
 import com.intel.rfid.api.data.InventoryEventItem;
+import com.intel.rfid.api.data.InventorySummary;
+import com.intel.rfid.api.data.TagInfo;
 import com.intel.rfid.api.sensor.InventoryDataNotification;
 import com.intel.rfid.api.sensor.TagRead;
 import com.intel.rfid.controller.ConfigManager;
+import com.intel.rfid.controller.Env;
 import com.intel.rfid.controller.MockRspController;
 import com.intel.rfid.helpers.EnvHelper;
 import com.intel.rfid.helpers.EpcHelper;
@@ -25,6 +28,9 @@ import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -271,6 +277,42 @@ public class InventoryManagerTest implements InventoryManager.UpstreamEventListe
         assertThat(tag01.getState()).isEqualTo(TagState.EXITING);
     }
 
+    @Test
+    public void testScheduledDepartures() {
+
+        long now = System.currentTimeMillis();
+        TagRead tagRead01 = store.generateReadData(now - invMgr.getAggregateDepartedThreshold() - 1000);
+        TagRead tagRead02 = store.generateReadData(now);
+
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        for (TagRead tagRead : new TagRead[]{tagRead01, tagRead02}) {
+            tagRead.rssi = store.rssiMin();
+            for (int x = 0; x < 4; x++) {
+                invMgr.processReadData(uie, store.sensorBack01, tagRead);
+            }
+            tagRead.rssi = store.rssiWeak();
+            for (int x = 0; x < 10; x++) {
+                invMgr.processReadData(uie, store.sensorFrontExit, tagRead);
+            }
+        }
+        Tag tag01 = invMgr.inventory.get(tagRead01.epc);
+        Tag tag02 = invMgr.inventory.get(tagRead02.epc);
+        assertThat(tag01.getState()).isEqualTo(TagState.EXITING);
+        assertThat(tag02.getState()).isEqualTo(TagState.EXITING);
+
+        // only the tag past its deadline departs
+        upstreamEvents.clear();
+        invMgr.expireDepartures();
+        assertThat(tag01.getState()).isEqualTo(TagState.DEPARTED_EXIT);
+        assertThat(tag02.getState()).isEqualTo(TagState.EXITING);
+        assertThat(upstreamEvents).hasSize(1);
+        assertThat(upstreamEvents.get(0).data.get(0).epc_code).isEqualTo(tagRead01.epc);
+
+        upstreamEvents.clear();
+        invMgr.expireDepartures();
+        assertThat(upstreamEvents).isEmpty();
+    }
+
     @Test
     public void testTagDepartAndReturnFromExit() {
 
@@ -593,13 +635,152 @@ public class InventoryManagerTest implements InventoryManager.UpstreamEventListe
 
         assertThat(tags).hasSameSizeAs(readData.params.data);
 
-        invMgr.ageout();
+        List<InventoryEventItem> agedOut = new ArrayList<>();
+        InventoryManager.UpstreamEventListener listener = new InventoryManager.UpstreamEventListener() {
+            @Override
+            public void onUpstreamEvent(UpstreamInventoryEventInfo _uie) {}
+
+            @Override
+            public void onAgeout(UpstreamInventoryEventInfo _uie) {
+                agedOut.addAll(_uie.data);
+            }
+        };
+        invMgr.addUpstreamEventListener(listener);
+        assertThat(invMgr.ageout()).isEqualTo(2);
+        invMgr.removeUpstreamEventListener(listener);
+        assertThat(agedOut).hasSize(2)
+                           .allMatch(_item -> _item.event_type.equals(TagEvent.aged_out.toString()));
 
         tags = invMgr.getTags(null);
         assertThat(tags).hasSize(2)
                         .noneMatch(_tag -> _tag.getEPC().equals(EpcHelper.EPC_HOUR_BEFORE))
                         .noneMatch(_tag -> _tag.getEPC().equals(EpcHelper.EPC_DAY_BEFORE));
 
+        // a read moves the tag between last read buckets, even backwards
+        InventoryDataNotification reread = new InventoryDataNotification();
+        TagRead tagRead = new TagRead();
+        tagRead.epc = EpcHelper.EPC_DAY_AFTER;
+        tagRead.last_read_on = expiration - TimeUnit.MINUTES.toMillis(1);
+        reread.params.data.add(tagRead);
+        invMgr.onInventoryData(reread, store.sensorFront03);
+        assertThat(invMgr.ageout()).isEqualTo(1);
+        assertThat(invMgr.getTags(null)).hasSize(1)
+                                         .allMatch(_tag -> _tag.getEPC().equals(EpcHelper.EPC_HOUR_AFTER));
+        assertThat(invMgr.ageout()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCacheImportSurvivesRestart() throws Exception {
+
+        InventoryDataNotification readData = EpcHelper.generateBeforeAfterTime(System.currentTimeMillis());
+        invMgr.onInventoryData(readData, store.sensorFront03);
+        Path export = Files.createTempFile("inventory", ".json");
+        invMgr.exportCache(export);
+
+        // as on the first start after moving from the JSON cache
+        invMgr.unload();
+        invMgr.journal.close();
+        invMgr.journal.reset();
+        Files.move(export, InventoryManager.CACHE_PATH, StandardCopyOption.REPLACE_EXISTING);
+        invMgr.restore();
+        assertThat(invMgr.inventory.size()).isEqualTo(readData.params.data.size());
+
+        // nothing journaled after the import, as if it crashed right away
+        InventoryStore restored = new InventoryStore();
+        new InventoryJournal(Env.getCachePath()).restore(restored);
+        assertThat(restored.size()).isEqualTo(readData.params.data.size());
+
+        invMgr.journal.close();
+        invMgr.unload();
+    }
+
+    @Test
+    public void testSummaryCounters() {
+
+        long now = System.currentTimeMillis();
+        TagRead tagRead01 = store.generateReadData(now);
+        TagRead tagRead02 = store.generateReadData(now - TimeUnit.MINUTES.toMillis(10));
+        TagRead tagRead03 = store.generateReadData(now - TimeUnit.HOURS.toMillis(2));
+
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        invMgr.processReadData(uie, store.sensorBack01, tagRead01);
+        invMgr.processReadData(uie, store.sensorBack01, tagRead02);
+        invMgr.processReadData(uie, store.sensorBack01, tagRead03);
+
+        InventorySummary summary = new InventorySummary();
+        invMgr.getSummary(summary);
+        assertThat(summary.tag_state_summary.PRESENT).isEqualTo(3);
+        assertThat(summary.tag_read_summary.within_last_01_min).isEqualTo(1);
+        assertThat(summary.tag_read_summary.from_05_to_30_min).isEqualTo(1);
+        assertThat(summary.tag_read_summary.from_60_min_to_24_hr).isEqualTo(1);
+
+        // state changes made directly on the tag are counted as well
+        invMgr.inventory.get(tagRead02.epc).setState(TagState.DEPARTED_EXIT, now);
+        // a newer read moves the tag to a more recent bucket
+        tagRead03.last_read_on = now;
+        invMgr.processReadData(uie, store.sensorBack01, tagRead03);
+
+        summary = new InventorySummary();
+        invMgr.getSummary(summary);
+        assertThat(summary.tag_state_summary.PRESENT).isEqualTo(2);
+        assertThat(summary.tag_state_summary.DEPARTED_EXIT).isEqualTo(1);
+        assertThat(summary.tag_read_summary.within_last_01_min).isEqualTo(2);
+        assertThat(summary.tag_read_summary.from_60_min_to_24_hr).isEqualTo(0);
+
+        invMgr.inventory.remove(tagRead01.epc);
+        summary = new InventorySummary();
+        invMgr.getSummary(summary);
+        assertThat(summary.tag_state_summary.PRESENT).isEqualTo(1);
+        assertThat(summary.tag_read_summary.within_last_01_min).isEqualTo(1);
+
+        invMgr.unload();
+        assertThat(invMgr.inventory.getCounters().getTotal()).isEqualTo(0);
+        assertThat(invMgr.inventory.getCounters().getCount(TagState.DEPARTED_EXIT)).isEqualTo(0);
+    }
+
+    @Test
+    public void testSecondaryIndexes() {
+
+        long now = System.currentTimeMillis();
+        TagRead tagRead01 = store.generateReadData(now);
+        TagRead tagRead02 = store.generateReadData(now);
+        TagRead tagRead03 = store.generateReadData(now);
+
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        invMgr.processReadData(uie, store.sensorBack01, tagRead01);
+        invMgr.processReadData(uie, store.sensorBack01, tagRead02);
+        invMgr.processReadData(uie, store.sensorBack01, tagRead03);
+
+        String back = store.sensorBack01.getFacilityId();
+        String front = store.sensorFront01.getFacilityId();
+        assertThat(invMgr.getTagInfoByFacility(back)).hasSize(3);
+        assertThat(invMgr.getTagInfoByLocation(store.sensorBack01.asLocation())).hasSize(3);
+
+        // move tag01 to the front facility
+        tagRead01.rssi = store.rssiStrong();
+        for (int x = 0; x < 4; x++) {
+            invMgr.processReadData(uie, store.sensorFront01, tagRead01);
+        }
+        List<TagInfo> infos = invMgr.getTagInfoByFacility(front);
+        assertThat(infos).hasSize(1);
+        assertThat(infos.get(0).epc).isEqualTo(tagRead01.epc);
+        assertThat(invMgr.getTagInfoByLocation(store.sensorFront01.asLocation())).hasSize(1);
+        assertThat(invMgr.getTagInfoByFacility(back)).hasSize(2);
+        assertThat(invMgr.getTagInfoByLocation(store.sensorBack01.asLocation())).hasSize(2);
+
+        invMgr.inventory.get(tagRead02.epc).setState(TagState.DEPARTED_EXIT, now);
+        infos = invMgr.getTagInfoByState(TagState.DEPARTED_EXIT);
+        assertThat(infos).hasSize(1);
+        assertThat(infos.get(0).epc).isEqualTo(tagRead02.epc);
+        assertThat(invMgr.getTagInfoByState(TagState.PRESENT)).hasSize(2);
+
+        invMgr.inventory.remove(tagRead03.epc);
+        assertThat(invMgr.getTagInfoByFacility(back)).hasSize(1);
+        assertThat(invMgr.getTagInfoByFacility("NOT_A_FACILITY")).isEmpty();
+
+        invMgr.unload();
+        assertThat(invMgr.inventory.getIndexes().getFacilities()).isEmpty();
+        assertThat(invMgr.getTagInfoByState(TagState.PRESENT)).isEmpty();
     }
 
 }
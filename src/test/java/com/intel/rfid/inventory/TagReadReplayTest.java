@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.inventory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.TagRead;
+import com.intel.rfid.controller.Env;
+import com.intel.rfid.helpers.EnvHelper;
+import com.intel.rfid.helpers.Jackson;
+import com.intel.rfid.helpers.TestStore;
+import com.intel.rfid.sensor.SensorPlatform;
+import com.intel.rfid.tag.Tag;
+import com.intel.rfid.tag.TagState;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TagReadReplayTest {
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        EnvHelper.beforeBasicTests();
+    }
+
+    @AfterClass
+    public static void afterClass() { EnvHelper.afterTests(); }
+
+    private final ObjectMapper mapper = Jackson.getMapper();
+    private final TestStore store = new TestStore();
+
+    private String message(SensorPlatform _rsp, String _epc, long _time) throws IOException {
+        InventoryDataNotification data = new InventoryDataNotification();
+        data.params.device_id = _rsp.getDeviceId();
+        data.params.sent_on = _time;
+        TagRead read = store.generateReadData(_time);
+        read.epc = _epc;
+        data.params.data.add(read);
+        return mapper.writeValueAsString(data);
+    }
+
+    private static void write(Path _path, String... _lines) throws IOException {
+        OutputStream os = Files.newOutputStream(_path);
+        if (_path.toString().endsWith(".gz")) {
+            os = new GZIPOutputStream(os);
+        }
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+            for (String line : _lines) {
+                pw.println(line);
+            }
+        }
+    }
+
+    @Test
+    public void testReplayOnVirtualClock() throws Exception {
+        MockInventoryManager invMgr = store.rspController.getMockInventoryManager();
+        invMgr.unload();
+
+        // a day ago, so only the virtual clock can have the tag depart
+        long t0 = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        Path dir = Files.createDirectories(Env.resolveTagRead("replay"));
+        write(dir.resolve("tagreads-2019-03-01_14.json.gz"),
+              message(store.sensorFrontExit, "EPC_EXITING", t0),
+              "not an inventory message",
+              message(store.sensorFrontExit, "EPC_EXITING", t0 + 1000));
+        write(dir.resolve("tagreads.json"),
+              // a sensor with its clock a year off must not move the clock
+              message(store.sensorFront02, "EPC_SKEWED", t0 + TimeUnit.DAYS.toMillis(365)),
+              message(store.sensorFront01, "EPC_PRESENT", t0 + 120000));
+
+        List<Path> archives = TagReadReplay.findArchives(dir);
+        assertThat(archives).hasSize(2);
+        assertThat(archives.get(1).getFileName().toString()).isEqualTo("tagreads.json");
+
+        TagReadReplay replay = new TagReadReplay(store.rspController.getMockSensorManager(),
+                                                  store.rspController.getMockDownstreamManager(),
+                                                  invMgr, 0);
+        TagReadReplay.Results results = replay.replay(archives);
+
+        assertThat(results.numMessages).isEqualTo(3);
+        assertThat(results.numReads).isEqualTo(3);
+        assertThat(results.numSkipped).isEqualTo(1);
+        assertThat(results.numSkewed).isEqualTo(1);
+        assertThat(results.numSensors).isEqualTo(2);
+        assertThat(results.virtualMillis).isEqualTo(120000);
+        assertThat(results.events).containsEntry("arrival", 2L).containsEntry("departed", 1L);
+        assertThat(replay.getClock().getAsLong()).isEqualTo(t0 + 120000);
+
+        // departed on the tick after the threshold passed, in virtual time
+        Tag departed = invMgr.inventory.get("EPC_EXITING");
+        assertThat(departed.getState()).isEqualTo(TagState.DEPARTED_EXIT);
+        long deadline = t0 + 1000 + invMgr.getAggregateDepartedThreshold();
+        assertThat(departed.getLastDeparted())
+                .isBetween(deadline, deadline + InventoryManager.DEPARTED_TICK_MILLIS);
+        assertThat(invMgr.inventory.get("EPC_PRESENT").getState()).isEqualTo(TagState.PRESENT);
+        assertThat(invMgr.inventory.get("EPC_SKEWED")).isNull();
+
+        invMgr.setClock(System::currentTimeMillis);
+        invMgr.unload();
+    }
+
+    @Test
+    public void testGapInArchives() throws Exception {
+        MockInventoryManager invMgr = store.rspController.getMockInventoryManager();
+        invMgr.unload();
+
+        long t0 = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        long t1 = t0 + TimeUnit.HOURS.toMillis(3);
+        Path dir = Files.createDirectories(Env.resolveTagRead("gap"));
+        write(dir.resolve("tagreads.json"),
+              message(store.sensorFront01, "EPC_BEFORE", t0),
+              // the controller was down, every sensor comes back hours later
+              message(store.sensorFront01, "EPC_AFTER_1", t1),
+              message(store.sensorFront02, "EPC_AFTER_2", t1 + 1000));
+
+        TagReadReplay replay = new TagReadReplay(store.rspController.getMockSensorManager(),
+                                                  store.rspController.getMockDownstreamManager(),
+                                                  invMgr, 0);
+        TagReadReplay.Results results = replay.replay(TagReadReplay.findArchives(dir));
+
+        // the first message after the gap is held, then replayed once the
+        // next one confirms the gap
+        assertThat(results.numSkewed).isEqualTo(0);
+        assertThat(results.numMessages).isEqualTo(3);
+        assertThat(replay.getClock().getAsLong()).isEqualTo(t1 + 1000);
+        assertThat(invMgr.inventory.get("EPC_AFTER_1")).isNotNull();
+        assertThat(invMgr.inventory.get("EPC_AFTER_2")).isNotNull();
+
+        invMgr.setClock(System::currentTimeMillis);
+        invMgr.unload();
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.mqtt;
+
+import com.intel.rfid.api.data.Connection;
+import com.intel.rfid.helpers.EnvHelper;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MqttOutboundTest {
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        EnvHelper.beforeBasicTests();
+    }
+
+    @AfterClass
+    public static void afterClass() { EnvHelper.afterTests(); }
+
+    // acknowledges every publish after a fixed broker round trip
+    private static class DelayedAckClient extends MqttAsyncClient {
+
+        final ScheduledExecutorService broker = Executors.newScheduledThreadPool(4);
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+
+        DelayedAckClient() throws MqttException {
+            super("tcp://localhost:1883", "test", new MemoryPersistence());
+        }
+
+        @Override
+        public IMqttDeliveryToken publish(String _topic, MqttMessage _msg,
+                                          Object _userContext, IMqttActionListener _listener) {
+            int n = outstanding.incrementAndGet();
+            maxOutstanding.accumulateAndGet(n, Math::max);
+            MqttDeliveryToken token = new MqttDeliveryToken("test");
+            token.setUserContext(_userContext);
+            broker.schedule(() -> {
+                outstanding.decrementAndGet();
+                _listener.onSuccess(token);
+            }, 20, TimeUnit.MILLISECONDS);
+            return token;
+        }
+    }
+
+    private static class TestMqtt extends Mqtt {
+        TestMqtt(MqttAsyncClient _client) {
+            client = _client;
+            connectionState = Connection.State.CONNECTED;
+        }
+    }
+
+    @Test
+    public void testPipelinedWindow() throws Exception {
+        DelayedAckClient client = new DelayedAckClient();
+        TestMqtt mqtt = new TestMqtt(client);
+        Thread publisher = new Thread(mqtt.getOutboundTask());
+        publisher.start();
+
+        int numMessages = 200;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < numMessages; i++) {
+            mqtt.publish("test/topic", new byte[]{(byte) i}, Mqtt.QOS.AT_LEAST_ONCE);
+        }
+        while (mqtt.getNumPublished() < numMessages && System.currentTimeMillis() - start < 10000) {
+            Thread.sleep(10);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        publisher.interrupt();
+        client.broker.shutdown();
+
+        assertThat(mqtt.getNumPublished()).isEqualTo(numMessages);
+        assertThat(mqtt.getNumDropped()).isEqualTo(0);
+        assertThat(mqtt.getNumInflight()).isEqualTo(0);
+        assertThat(client.maxOutstanding.get()).isLessThanOrEqualTo(Mqtt.DEFAULT_OUTBOUND_INFLIGHT);
+        assertThat(client.maxOutstanding.get()).isGreaterThan(1);
+        // one at a time would take 200 round trips of 20 ms
+        assertThat(elapsed).isLessThan(numMessages * 20 / 2);
+        assertThat(mqtt.getPublishLatencyMean()).isGreaterThanOrEqualTo(19.0);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.mqtt;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MqttSpoolTest {
+
+    private static final String TOPIC = "rfid/controller/events";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private Path dir;
+
+    @Before
+    public void before() throws IOException {
+        dir = Files.createTempDirectory("spool");
+    }
+
+    @After
+    public void after() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static byte[] payload(int _i) {
+        return ("{\"event\":" + _i + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int take(MqttSpool _spool) {
+        MqttSpool.Record rec = _spool.peek();
+        assertThat(rec).isNotNull();
+        assertThat(rec.topic).isEqualTo(TOPIC);
+        _spool.advance();
+        return value(rec);
+    }
+
+    @Test
+    public void testOrderAcrossSegmentsAndRestart() throws IOException {
+        long now = System.currentTimeMillis();
+        MqttSpool spool = new MqttSpool(dir, 1024, 1024 * 1024, HOUR);
+        spool.open();
+        for (int i = 0; i < 500; i++) {
+            spool.append(TOPIC, payload(i), now);
+        }
+        assertThat(spool.size()).isEqualTo(500);
+        for (int i = 0; i < 200; i++) {
+            assertThat(take(spool)).isEqualTo(i);
+        }
+        // peeked but not advanced is still there after a restart
+        assertThat(spool.peek()).isNotNull();
+        spool.close();
+
+        spool = new MqttSpool(dir, 1024, 1024 * 1024, HOUR);
+        spool.open();
+        assertThat(spool.size()).isEqualTo(300);
+        spool.append(TOPIC, payload(500), now);
+        for (int i = 200; i <= 500; i++) {
+            assertThat(take(spool)).isEqualTo(i);
+        }
+        assertThat(spool.peek()).isNull();
+        assertThat(spool.isEmpty()).isTrue();
+        spool.close();
+    }
+
+    private static int value(MqttSpool.Record _rec) {
+        String s = new String(_rec.payload, StandardCharsets.UTF_8);
+        return Integer.parseInt(s.substring(s.indexOf(':') + 1, s.length() - 1));
+    }
+
+    @Test
+    public void testAdvanceOnDelivery() throws IOException {
+        long now = System.currentTimeMillis();
+        MqttSpool spool = new MqttSpool(dir, 1024, 1024 * 1024, HOUR);
+        spool.open();
+        for (int i = 0; i < 10; i++) {
+            spool.append(TOPIC, payload(i), now);
+        }
+        MqttSpool.Record r0 = spool.next();
+        MqttSpool.Record r1 = spool.next();
+        MqttSpool.Record r2 = spool.next();
+        assertThat(value(r2)).isEqualTo(2);
+        assertThat(spool.getNumOutstanding()).isEqualTo(3);
+
+        // acknowledged out of order, the others failed
+        spool.advance(r1);
+        assertThat(spool.size()).isEqualTo(9);
+        spool.rewind();
+        MqttSpool.Record again = spool.next();
+        assertThat(value(again)).isEqualTo(0);
+        assertThat(value(spool.next())).isEqualTo(2);
+
+        // a late acknowledgement of the first send counts once
+        spool.advance(r0);
+        spool.advance(again);
+        assertThat(spool.size()).isEqualTo(8);
+        assertThat(spool.getNumReplayed()).isEqualTo(2);
+        spool.close();
+
+        spool = new MqttSpool(dir, 1024, 1024 * 1024, HOUR);
+        spool.open();
+        assertThat(spool.size()).isEqualTo(8);
+        assertThat(take(spool)).isEqualTo(2);
+        spool.close();
+    }
+
+    @Test
+    public void testLimits() throws IOException {
+        long now = System.currentTimeMillis();
+        MqttSpool spool = new MqttSpool(dir, 1024, 4096, HOUR);
+        spool.open();
+        // too old to replay
+        for (int i = 0; i < 10; i++) {
+            spool.append(TOPIC, payload(i), now - 2 * HOUR);
+        }
+        for (int i = 10; i < 1000; i++) {
+            spool.append(TOPIC, payload(i), now);
+        }
+        assertThat(spool.getBytes()).isLessThanOrEqualTo(4096);
+        assertThat(spool.getNumDropped() + spool.getNumExpired()).isGreaterThan(0);
+
+        // what is left is the newest, in order
+        int prev = take(spool);
+        int n = 1;
+        while (spool.peek() != null) {
+            int i = take(spool);
+            assertThat(i).isEqualTo(prev + 1);
+            prev = i;
+            n++;
+        }
+        assertThat(prev).isEqualTo(999);
+        assertThat(spool.getNumReplayed()).isEqualTo(n);
+        assertThat(spool.getNumReplayed() + spool.getNumDropped() + spool.getNumExpired()).isEqualTo(1000);
+        spool.close();
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.sim;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.rfid.api.JsonRequest;
+import com.intel.rfid.api.sensor.ApplyBehaviorRequest;
+import com.intel.rfid.api.sensor.Behavior;
+import com.intel.rfid.api.sensor.ConnectResponse;
+import com.intel.rfid.api.sensor.GetStateRequest;
+import com.intel.rfid.api.sensor.InventoryDataNotification;
+import com.intel.rfid.api.sensor.SetFacilityIdRequest;
+import com.intel.rfid.downstream.MqttDownstream;
+import com.intel.rfid.helpers.Jackson;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SimSensorTest {
+
+    private final ObjectMapper mapper = Jackson.getMapper();
+
+    // what the sensor published, as the controller would parse it
+    private final List<String> topics = new ArrayList<>();
+    private final List<JsonNode> msgs = new ArrayList<>();
+
+    private final SimSensor.Link link = (topic, msg) -> {
+        topics.add(topic);
+        msgs.add(mapper.valueToTree(msg));
+        return true;
+    };
+
+    private JsonNode tree(Object _msg) {
+        return mapper.valueToTree(_msg);
+    }
+
+    private JsonNode last() {
+        return msgs.get(msgs.size() - 1);
+    }
+
+    @Test
+    public void testProtocol() {
+        SimSensor rsp = new SimSensor(0, 150000, link);
+        assertThat(rsp.getDeviceId()).isEqualTo("RSP-150000");
+
+        rsp.connect();
+        assertThat(topics).containsExactly(MqttDownstream.CONNECT_TOPIC);
+        assertThat(last().path("method").asText()).isEqualTo("connect");
+        assertThat(last().path("params").path("hostname").asText()).isEqualTo("RSP-150000");
+        assertThat(last().path("params").path("hwaddress").asText()).isEqualTo("98:4f:ee:02:49:f0");
+        assertThat(rsp.isConnected()).isFalse();
+
+        String connectId = last().path("id").asText();
+        rsp.onConnectResponse(tree(new ConnectResponse(connectId, "front", 0, null, null, null)));
+        assertThat(rsp.isConnected()).isTrue();
+        assertThat(rsp.getFacilityId()).isEqualTo("front");
+        assertThat(topics.get(1)).isEqualTo(MqttDownstream.RSP_STATUS_TOPIC + "/RSP-150000");
+        assertThat(last().path("params").path("status").asText()).isEqualTo("ready");
+
+        // every command is answered on the response topic with its id
+        JsonRequest req = new ApplyBehaviorRequest(ApplyBehaviorRequest.Action.START, new Behavior());
+        rsp.onCommand(tree(req));
+        assertThat(topics.get(2)).isEqualTo(MqttDownstream.RESPONSE_TOPIC + "/RSP-150000");
+        assertThat(last().path("id").asText()).isEqualTo(req.getId());
+        assertThat(last().path("result").asBoolean()).isTrue();
+        assertThat(rsp.isReading()).isTrue();
+
+        req = new GetStateRequest();
+        rsp.onCommand(tree(req));
+        assertThat(last().path("id").asText()).isEqualTo(req.getId());
+        assertThat(last().path("result").path("num_physical_ports").asInt()).isEqualTo(SimSensor.NUM_PORTS);
+
+        rsp.onCommand(tree(new SetFacilityIdRequest("back")));
+        assertThat(rsp.getFacilityId()).isEqualTo("back");
+
+        // stopping completes the inventory
+        rsp.onCommand(tree(new ApplyBehaviorRequest(ApplyBehaviorRequest.Action.STOP, new Behavior())));
+        assertThat(rsp.isReading()).isFalse();
+        assertThat(last().path("method").asText()).isEqualTo("inventory_complete");
+
+        rsp.heartbeat();
+        assertThat(last().path("method").asText()).isEqualTo("heartbeat");
+        assertThat(last().path("params").path("facility_id").asText()).isEqualTo("back");
+
+        rsp.shutdown();
+        assertThat(rsp.isConnected()).isFalse();
+        assertThat(last().path("params").path("status").asText()).isEqualTo("shutting_down");
+        int n = msgs.size();
+        rsp.heartbeat();
+        assertThat(msgs).hasSize(n);
+    }
+
+    @Test
+    public void testReadsTheTagsInView() {
+        TagPopulation tags = new TagPopulation(10, 2, TagPopulation.Movement.STATIC, 0, 1);
+        SimSensor rsp = new SimSensor(1, 150001, link);
+
+        // tags 1, 3, 5, 7 and 9 are in view, read 3 at a time round the list
+        Set<String> epcs = new HashSet<>();
+        InventoryDataNotification data = rsp.read(tags, 3, 1000);
+        assertThat(data.params.device_id).isEqualTo("RSP-150001");
+        assertThat(data.params.data).hasSize(3);
+        data.params.data.forEach(r -> epcs.add(r.epc));
+        data = rsp.read(tags, 3, 2000);
+        data.params.data.forEach(r -> epcs.add(r.epc));
+        assertThat(epcs).hasSize(5).contains(tags.getEpc(1), tags.getEpc(9));
+        assertThat(data.params.data.get(0).last_read_on).isEqualTo(2000);
+
+        assertThat(rsp.send(data)).isTrue();
+        assertThat(topics).containsExactly(MqttDownstream.DATA_TOPIC + "/RSP-150001");
+    }
+
+    @Test
+    public void testTagsMove() {
+        int numTags = 1000;
+        int numSensors = 4;
+        TagPopulation conveyor = new TagPopulation(numTags, numSensors, TagPopulation.Movement.CONVEYOR, 10000, 1);
+        conveyor.start(0);
+        conveyor.advance(9999);
+        assertThat(conveyor.getNumMoves()).isEqualTo(numTags - 1);
+        conveyor.advance(10000);
+        // everyone has moved on by one
+        assertThat(conveyor.getNumMoves()).isEqualTo(numTags);
+        assertThat(conveyor.getLocation(0)).isEqualTo(1);
+        assertThat(conveyor.tagsAt(1)).hasSize(numTags / numSensors).contains(0);
+
+        TagPopulation wander = new TagPopulation(numTags, numSensors, TagPopulation.Movement.WANDER, 10000, 1);
+        wander.start(0);
+        wander.advance(10000);
+        // one move per tag in a dwell time on average
+        assertThat(wander.getNumMoves()).isBetween(850L, 1150L);
+        int total = 0;
+        for (int s = 0; s < numSensors; s++) {
+            total += wander.tagsAt(s).length;
+        }
+        assertThat(total).isEqualTo(numTags);
+    }
+
+    @Test
+    public void testOptions() {
+        LoadGenerator.Options o = LoadGenerator.Options.parse(new String[]{
+                "--sensors", "300", "--movement", "conveyor", "--dwell", "5", "--no-probe", "--rate", "100"});
+        assertThat(o.numSensors).isEqualTo(300);
+        assertThat(o.movement).isEqualTo(TagPopulation.Movement.CONVEYOR);
+        assertThat(o.dwellMillis).isEqualTo(5000);
+        assertThat(o.probe).isFalse();
+        assertThat(o.startRate).isEqualTo(100.0);
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 Intel Corporation
+ * SPDX-License-Identifier: BSD-3-Clause
+ */
+package com.intel.rfid.upstream;
+
+import com.intel.rfid.api.data.InventoryEventItem;
+import com.intel.rfid.tag.TagEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UpstreamEventBatcherTest {
+
+    private List<UpstreamInventoryEventInfo> batches = new ArrayList<>();
+
+    private UpstreamInventoryEventInfo event(String _epc, String _facility, String _location,
+                                             TagEvent _event, long _time) {
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        uie.add(_epc, null, _location, _facility, _event, _time);
+        return uie;
+    }
+
+    @Test
+    public void testCoalesceMoves() {
+        // long window, only flushed explicitly
+        UpstreamEventBatcher batcher = new UpstreamEventBatcher(batches::add, 60000, 100);
+
+        batcher.add(event("EPC1", "FRONT", "RSP-1", TagEvent.arrival, 1));
+        batcher.add(event("EPC1", "FRONT", "RSP-2", TagEvent.moved, 2));
+        batcher.add(event("EPC2", "FRONT", "RSP-1", TagEvent.moved, 3));
+        batcher.add(event("EPC1", "FRONT", "RSP-3", TagEvent.moved, 4));
+        batcher.add(event("EPC2", "FRONT", "RSP-4", TagEvent.moved, 5));
+        // a facility change is a departure plus an arrival, never merged
+        batcher.add(event("EPC1", "FRONT", "RSP-3", TagEvent.departed, 6));
+        batcher.add(event("EPC1", "BACK", "RSP-9", TagEvent.arrival, 7));
+        batcher.add(event("EPC1", "BACK", "RSP-8", TagEvent.moved, 8));
+        assertThat(batches).isEmpty();
+
+        batcher.flush();
+        assertThat(batches).hasSize(1);
+        List<InventoryEventItem> items = batches.get(0).data;
+        assertThat(items).hasSize(4);
+
+        // an arrival keeps its time, a move takes the latest
+        assertThat(items.get(0).event_type).isEqualTo(TagEvent.arrival.toString());
+        assertThat(items.get(0).location).isEqualTo("RSP-3");
+        assertThat(items.get(0).timestamp).isEqualTo(1);
+        assertThat(items.get(1).epc_code).isEqualTo("EPC2");
+        assertThat(items.get(1).location).isEqualTo("RSP-4");
+        assertThat(items.get(1).timestamp).isEqualTo(5);
+        assertThat(items.get(2).event_type).isEqualTo(TagEvent.departed.toString());
+        assertThat(items.get(3).event_type).isEqualTo(TagEvent.arrival.toString());
+        assertThat(items.get(3).location).isEqualTo("RSP-8");
+
+        assertThat(batcher.getNumItemsIn()).isEqualTo(8);
+        assertThat(batcher.getNumItemsOut()).isEqualTo(4);
+    }
+
+    @Test
+    public void testCoalesceIntoReturned() {
+        UpstreamEventBatcher batcher = new UpstreamEventBatcher(batches::add, 60000, 100);
+        batcher.add(event("EPC1", "FRONT", "RSP-1", TagEvent.returned, 10));
+        batcher.add(event("EPC1", "FRONT", "RSP-2", TagEvent.moved, 20));
+        batcher.flush();
+
+        assertThat(batches.get(0).data).hasSize(1);
+        InventoryEventItem item = batches.get(0).data.get(0);
+        assertThat(item.event_type).isEqualTo(TagEvent.returned.toString());
+        assertThat(item.location).isEqualTo("RSP-2");
+        assertThat(item.timestamp).isEqualTo(10);
+    }
+
+    @Test
+    public void testBlockedSinkDoesNotBlockAdd() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<UpstreamInventoryEventInfo> published = new CopyOnWriteArrayList<>();
+        UpstreamEventBatcher batcher = new UpstreamEventBatcher(_batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            published.add(_batch);
+        }, 60000, 1);
+        batcher.start();
+        try {
+            // every add fills a batch, none of them wait for the sink
+            for (int i = 0; i < 5; i++) {
+                batcher.add(event("EPC" + i, "FRONT", "RSP-1", TagEvent.arrival, i));
+            }
+            assertThat(published).isEmpty();
+        } finally {
+            release.countDown();
+            batcher.stop();
+        }
+        assertThat(published).hasSize(5);
+        for (int i = 0; i < 5; i++) {
+            assertThat(published.get(i).data.get(0).epc_code).isEqualTo("EPC" + i);
+        }
+    }
+
+    @Test
+    public void testBatchSize() {
+        UpstreamEventBatcher batcher = new UpstreamEventBatcher(batches::add, 60000, 10);
+        UpstreamInventoryEventInfo uie = new UpstreamInventoryEventInfo();
+        for (int i = 0; i < 25; i++) {
+            uie.add("EPC" + i, null, "RSP-1", "FRONT", TagEvent.arrival, i);
+        }
+        batcher.add(uie);
+        assertThat(batches).hasSize(3);
+        assertThat(batches.get(0).data).hasSize(10);
+        assertThat(batches.get(2).data).hasSize(5);
+        batcher.flush();
+        assertThat(batches).hasSize(3);
+
+        // no window is a straight pass through
+        batches.clear();
+        batcher = new UpstreamEventBatcher(batches::add, 0, 10);
+        batcher.add(event("EPC1", "FRONT", "RSP-1", TagEvent.arrival, 1));
+        batcher.add(event("EPC1", "FRONT", "RSP-2", TagEvent.moved, 2));
+        assertThat(batches).hasSize(2);
+    }
+
+    @Test
+    public void testFilterForDeltaSubscription() {
+        // no window, passed straight through
+        UpstreamEventBatcher batcher = new UpstreamEventBatcher(batches::add, 0, 100);
+        UpstreamEventFilter filter = new UpstreamEventFilter("FRONT", "3014*", batcher);
+
+        UpstreamInventoryEventInfo uie = event("3014AA", "FRONT", "RSP-1", TagEvent.arrival, 1);
+        uie.add("3014BB", null, "RSP-9", "BACK", TagEvent.arrival, 2);
+        uie.add("3034CC", null, "RSP-1", "FRONT", TagEvent.arrival, 3);
+        filter.onUpstreamEvent(uie);
+        filter.onUpstreamEvent(event("3034DD", "FRONT", "RSP-1", TagEvent.moved, 4));
+        filter.onAgeout(event("3014EE", "FRONT", "RSP-2", TagEvent.aged_out, 5));
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0).data).hasSize(1);
+        assertThat(batches.get(0).data.get(0).epc_code).isEqualTo("3014AA");
+        assertThat(batches.get(1).data.get(0).event_type).isEqualTo(TagEvent.aged_out.toString());
+    }
+
+}